@@ -29,6 +29,8 @@ import inspector.imondb.collector.model.config.DatabaseConfiguration;
 import inspector.imondb.collector.model.config.GeneralConfiguration;
 import inspector.imondb.collector.view.ProgressReporter;
 import inspector.imondb.convert.thermo.ThermoRawFileExtractor;
+import inspector.imondb.io.AsyncIMonDBWriter;
+import inspector.imondb.io.IMonDBQuery;
 import inspector.imondb.io.IMonDBReader;
 import inspector.imondb.io.IMonDBWriter;
 import inspector.imondb.model.CV;
@@ -46,10 +48,7 @@ import javax.swing.*;
 import java.io.File;
 import java.io.IOException;
 import java.sql.Timestamp;
-import java.util.Collection;
-import java.util.Date;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.*;
 
 public class CollectorTask extends SwingWorker<Void, Integer> {
@@ -62,6 +61,7 @@ public class CollectorTask extends SwingWorker<Void, Integer> {
     private Configuration configuration;
 
     private ExecutorService threadPool;
+    private AsyncIMonDBWriter asyncWriter;
 
     public CollectorTask(DatabaseController databaseController, Configuration configuration) {
         this.databaseController = databaseController;
@@ -81,7 +81,7 @@ public class CollectorTask extends SwingWorker<Void, Integer> {
             GeneralConfiguration genConfig = configuration.getGeneralConfiguration();
             int nrOfThreads = genConfig.getNumberOfThreads();
             threadPool = Executors.newFixedThreadPool(nrOfThreads);
-            CompletionService<Timestamp> pool = new ExecutorCompletionService<>(threadPool);
+            CompletionService<CompletableFuture<Timestamp>> pool = new ExecutorCompletionService<>(threadPool);
 
             // create database connection
             DatabaseConfiguration dbConfig = configuration.getDatabaseConfiguration();
@@ -89,6 +89,11 @@ public class CollectorTask extends SwingWorker<Void, Integer> {
                     dbConfig.getUserName(), dbConfig.getPassword());
             IMonDBReader dbReader = databaseController.getReader();
             IMonDBWriter dbWriter = databaseController.getWriter();
+            // write the runs in the background to keep the extraction threads busy
+            // multiple writer threads write their batches concurrently
+            // optionally the runs are inserted without the overhead of a persistence context, in which case pre-existing properties and cv's are not updated
+            asyncWriter = new AsyncIMonDBWriter(dbWriter, AsyncIMonDBWriter.DEFAULT_QUEUE_CAPACITY, AsyncIMonDBWriter.DEFAULT_BATCH_SIZE,
+                    genConfig.getInsertOnly(), genConfig.getNumberOfWriters());
 
             // read the general information from the config file
             Timestamp newestTimestamp = genConfig.getStartDate() != null ? genConfig.getStartDate() : new Timestamp(new Date(0).getTime());
@@ -98,13 +103,16 @@ public class CollectorTask extends SwingWorker<Void, Integer> {
 
             // browse the start directory and underlying directories to find new raw files
             File startDir = new File(genConfig.getDirectory());
-            int threadsSubmitted = submitTasks(startDir, pool, dbReader, dbWriter, newestTimestamp);
+            int threadsSubmitted = submitTasks(startDir, pool, dbReader, asyncWriter, new KnownRuns(dbReader), newestTimestamp);
 
-            // process all the submitted threads and retrieve the sample dates
+            // process all the submitted threads
+            List<CompletableFuture<Timestamp>> writeResults = new ArrayList<>(threadsSubmitted);
             for(int i = 0; i < threadsSubmitted; i++) {
                 LOGGER.info("Processing file {} out of a total of {} queued files", i + 1, threadsSubmitted);
-                Timestamp runTimestamp = retrieveTask(pool);
-                newestTimestamp = runTimestamp != null && newestTimestamp.before(runTimestamp) ? runTimestamp : newestTimestamp;
+                CompletableFuture<Timestamp> writeResult = retrieveTask(pool);
+                if(writeResult != null) {
+                    writeResults.add(writeResult);
+                }
                 // update progress
                 publish((i+1) * 100 / threadsSubmitted);
             }
@@ -113,6 +121,14 @@ public class CollectorTask extends SwingWorker<Void, Integer> {
             threadPool.shutdown();
             // wait until all child threads have finished
             threadPool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            // wait until all runs have been written
+            asyncWriter.close();
+
+            // retrieve the sample dates of the successfully written runs
+            for(CompletableFuture<Timestamp> writeResult : writeResults) {
+                Timestamp runTimestamp = retrieveWriteResult(writeResult);
+                newestTimestamp = runTimestamp != null && newestTimestamp.before(runTimestamp) ? runTimestamp : newestTimestamp;
+            }
 
             // save the date of the newest processed file to the config file
             genConfig.setStartDate(newestTimestamp);
@@ -124,6 +140,10 @@ public class CollectorTask extends SwingWorker<Void, Integer> {
         } catch(InterruptedException e) {
             LOGGER.error("Thread execution was interrupted: {}", e.getMessage(), e);
         } finally {
+            // finish writing the runs before closing the database connection
+            if(asyncWriter != null) {
+                asyncWriter.close();
+            }
             // close the database connection
             databaseController.disconnect();
         }
@@ -137,8 +157,7 @@ public class CollectorTask extends SwingWorker<Void, Integer> {
         for(InstrumentMap instrumentMap : instrumentMaps) {
             // check if the instrument already exists in the database
             Map<String, String> parameters = ImmutableMap.of("name", instrumentMap.getKey());
-            String query = "SELECT COUNT(inst) FROM Instrument inst WHERE inst.name = :name";
-            boolean exists = reader.getFromCustomQuery(query, Long.class, parameters).get(0).equals(1L);
+            boolean exists = reader.getFromNamedQuery(IMonDBQuery.INSTRUMENT_COUNT_BY_NAME, parameters).get(0).equals(1L);
 
             // else, add it to the database
             if(!exists) {
@@ -150,8 +169,8 @@ public class CollectorTask extends SwingWorker<Void, Integer> {
         }
     }
 
-    private int submitTasks(File startDir, CompletionService<Timestamp> pool,
-                            IMonDBReader dbReader, IMonDBWriter dbWriter, Timestamp newestTimestamp) {
+    private int submitTasks(File startDir, CompletionService<CompletableFuture<Timestamp>> pool,
+                            IMonDBReader dbReader, AsyncIMonDBWriter dbWriter, KnownRuns knownRuns, Timestamp newestTimestamp) {
         int threadsSubmitted = 0;
         try {
             LOGGER.debug("Process directory <{}>", startDir.getCanonicalPath());
@@ -183,7 +202,7 @@ public class CollectorTask extends SwingWorker<Void, Integer> {
                 } else {
                     InstrumentMap instrumentMap = applicableInstruments.get(0);
                     LOGGER.trace("Add file <{}> for instrument <{}> to the thread pool", file.getCanonicalPath(), instrumentMap.getKey());
-                    pool.submit(new FileProcessor(dbReader, dbWriter, extractor, file, instrumentMap, forceUnique, metadataMapper));
+                    pool.submit(new FileProcessor(dbReader, dbWriter, knownRuns, extractor, file, instrumentMap, forceUnique, metadataMapper));
                     threadsSubmitted++;
                 }
             }
@@ -194,7 +213,7 @@ public class CollectorTask extends SwingWorker<Void, Integer> {
         return threadsSubmitted;
     }
 
-    private Timestamp retrieveTask(CompletionService<Timestamp> pool) throws InterruptedException {
+    private CompletableFuture<Timestamp> retrieveTask(CompletionService<CompletableFuture<Timestamp>> pool) throws InterruptedException {
         try {
             return pool.take().get();
         } catch(ExecutionException e) {
@@ -205,6 +224,16 @@ public class CollectorTask extends SwingWorker<Void, Integer> {
         return null;
     }
 
+    private Timestamp retrieveWriteResult(CompletableFuture<Timestamp> writeResult) throws InterruptedException {
+        try {
+            return writeResult.get();
+        } catch(ExecutionException e) {
+            // catch the exceptions that were thrown while writing this individual run to correctly continue processing the other runs
+            LOGGER.error("Error while writing a run: {}", e.getMessage(), e);
+        }
+        return null;
+    }
+
     @Override
     protected void done() {
         if(progressReporter != null) {
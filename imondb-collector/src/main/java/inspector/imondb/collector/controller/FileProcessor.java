@@ -20,13 +20,12 @@ package inspector.imondb.collector.controller;
  * #L%
  */
 
-import com.google.common.collect.ImmutableMap;
 import inspector.imondb.collector.model.InstrumentMap;
 import inspector.imondb.collector.model.MetadataMap;
 import inspector.imondb.collector.model.RegexMapper;
 import inspector.imondb.convert.thermo.ThermoRawFileExtractor;
 import inspector.imondb.io.IMonDBReader;
-import inspector.imondb.io.IMonDBWriter;
+import inspector.imondb.io.AsyncIMonDBWriter;
 import inspector.imondb.model.Instrument;
 import inspector.imondb.model.Metadata;
 import inspector.imondb.model.Run;
@@ -39,20 +38,21 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.sql.Timestamp;
-import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 /**
- * Processes a raw file by extracting the instrument data and storing the resulting {@link Run} in the database.
+ * Processes a raw file by extracting the instrument data and submitting the resulting {@link Run} to be stored in the database.
  *
  * Can be executed in its own thread.
  */
-public class FileProcessor implements Callable<Timestamp> {
+public class FileProcessor implements Callable<CompletableFuture<Timestamp>> {
 
     private static final Logger LOGGER = LogManager.getLogger(FileProcessor.class);
 
     private IMonDBReader dbReader;
-    private IMonDBWriter dbWriter;
+    private AsyncIMonDBWriter dbWriter;
+    private KnownRuns knownRuns;
     private ThermoRawFileExtractor extractor;
     private File file;
     private InstrumentMap instrumentMap;
@@ -62,18 +62,20 @@ public class FileProcessor implements Callable<Timestamp> {
     /**
      * Processes a file by extracting the instrument data from it and storing the resulting run in the database.
      *
-     * @param dbReader  the {@link IMonDBReader} used to verify the current file is not present in the database yet
-     * @param dbWriter  the {@link IMonDBWriter} used to write the new {@link Run} to the database
+     * @param dbReader  the {@link IMonDBReader} used to retrieve the instrument from the database
+     * @param dbWriter  the {@link AsyncIMonDBWriter} used to write the new {@link Run} to the database
+     * @param knownRuns  the {@link KnownRuns} used to verify the current file is not present in the database yet
      * @param extractor  the {@link ThermoRawFileExtractor} used to extract the instrument data from the raw file
      * @param file  the raw file that will be processed
      * @param instrumentMap  the information for the instrument on which the run was performed
      * @param forceUnique  flag which indicates whether run names have to be made unique explicitly
      * @param metadataMapper  mapping to apply metadata based on the file information
      */
-    public FileProcessor(IMonDBReader dbReader, IMonDBWriter dbWriter, ThermoRawFileExtractor extractor,
+    public FileProcessor(IMonDBReader dbReader, AsyncIMonDBWriter dbWriter, KnownRuns knownRuns, ThermoRawFileExtractor extractor,
                          File file, InstrumentMap instrumentMap, boolean forceUnique, RegexMapper<MetadataMap> metadataMapper) {
         this.dbReader = dbReader;
         this.dbWriter = dbWriter;
+        this.knownRuns = knownRuns;
         this.extractor = extractor;
         this.file = file;
         this.instrumentMap = instrumentMap;
@@ -82,7 +84,7 @@ public class FileProcessor implements Callable<Timestamp> {
     }
 
     @Override
-    public Timestamp call() {
+    public CompletableFuture<Timestamp> call() {
         LOGGER.info("Process file <{}>", file.getAbsolutePath());
 
         String runName = FilenameUtils.getBaseName(file.getName());
@@ -100,30 +102,40 @@ public class FileProcessor implements Callable<Timestamp> {
             }
         }
 
-        // check if this run already exists in the database for the given instrument
-        Map<String, String> parameters = ImmutableMap.of("runName", runName, "instName", instrumentMap.getKey());
-        String runExistQuery = "SELECT COUNT(run) FROM Run run WHERE run.name = :runName AND run.instrument.name = :instName";
-        boolean exists = dbReader.getFromCustomQuery(runExistQuery, Long.class, parameters).get(0).equals(1L);
+        // check if this run already exists in the database for the given instrument or was already submitted
+        // and register it as pending otherwise
+        boolean isNew = knownRuns.add(instrumentMap.getKey(), runName);
 
-        if(!exists) {
-            Instrument instrument = dbReader.getInstrument(instrumentMap.getKey());
-            Run run = extractor.extractInstrumentData(file.getAbsolutePath(), runName, instrument);
-
-            // apply metadata
-            for(MetadataMap metadataMap : metadataMapper.getApplicableMaps(file)) {
-                new Metadata(metadataMap.getKey(), metadataMap.getValue(), run);
-            }
-
-            // write the run to the database
-            synchronized(FileProcessor.class) {
-                dbWriter.writeRun(run);
+        if(isNew) {
+            CompletableFuture<Run> written;
+            try {
+                Instrument instrument = dbReader.getInstrument(instrumentMap.getKey());
+                Run run = extractor.extractInstrumentData(file.getAbsolutePath(), runName, instrument);
+
+                // apply metadata
+                for(MetadataMap metadataMap : metadataMapper.getApplicableMaps(file)) {
+                    new Metadata(metadataMap.getKey(), metadataMap.getValue(), run);
+                }
+
+                // write the run to the database asynchronously
+                written = dbWriter.submitRun(run);
+            } catch(RuntimeException e) {
+                knownRuns.remove(instrumentMap.getKey(), runName);
+                throw e;
             }
 
-            // return the run's sample date
-            return run.getSampleDate();
+            // the run is no longer pending if it couldn't be written, so it is retried by a subsequent scan
+            String pendingRunName = runName;
+            written.whenComplete((run, e) -> {
+                if(e != null) {
+                    knownRuns.remove(instrumentMap.getKey(), pendingRunName);
+                }
+            });
+            // the run's sample date is returned once it has been written successfully
+            return written.thenApply(Run::getSampleDate);
         } else {
             LOGGER.trace("Run <{}> already found in the database; skipping...", runName);
-            return null;
+            return CompletableFuture.completedFuture(null);
         }
     }
 }
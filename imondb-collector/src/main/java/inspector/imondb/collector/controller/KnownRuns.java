@@ -0,0 +1,119 @@
+package inspector.imondb.collector.controller;
+
+/*
+ * #%L
+ * iMonDB Collector
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableMap;
+import inspector.imondb.io.IMonDBQuery;
+import inspector.imondb.io.IMonDBReader;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the names of the {@link inspector.imondb.model.Run}s that are already present in the database for each {@link inspector.imondb.model.Instrument}.
+ *
+ * The names of all {@code Run}s of an {@code Instrument} are retrieved once, after which all checks are answered from memory without querying the database.
+ * Newly submitted {@code Run}s are registered immediately, so a file that is encountered multiple times during a single scan is only submitted once.
+ * If a submitted {@code Run} can't be written, it should be unregistered again.
+ *
+ * This class is thread-safe.
+ */
+public class KnownRuns {
+
+    private static final Logger LOGGER = LogManager.getLogger(KnownRuns.class);
+
+    private final IMonDBReader dbReader;
+
+    /** the names of the present and pending runs per instrument name */
+    private final Map<String, Set<String>> runNames;
+
+    /**
+     * Creates a {@code KnownRuns} which retrieves the run names using the given {@link IMonDBReader}.
+     *
+     * @param dbReader  the {@code IMonDBReader} used to retrieve the run names from the database, not {@code null}
+     */
+    public KnownRuns(IMonDBReader dbReader) {
+        if(dbReader == null) {
+            LOGGER.error("The IMonDBReader is not allowed to be <null>");
+            throw new NullPointerException("The IMonDBReader is not allowed to be <null>");
+        }
+
+        this.dbReader = dbReader;
+        this.runNames = new HashMap<>();
+    }
+
+    /**
+     * Checks whether a {@link inspector.imondb.model.Run} with the given name is already present or pending for the {@link inspector.imondb.model.Instrument} with the given name.
+     *
+     * @param instrumentName  the name of the {@code Instrument} on which the {@code Run} was performed
+     * @param runName  the name of the {@code Run}
+     * @return {@code true} if the {@code Run} is present in the database or has been submitted to be written, {@code false} if not
+     */
+    public boolean contains(String instrumentName, String runName) {
+        return getRunNames(instrumentName).contains(runName);
+    }
+
+    /**
+     * Registers a new {@link inspector.imondb.model.Run} for the {@link inspector.imondb.model.Instrument} with the given name.
+     *
+     * The {@code Run} should be registered before it is submitted to be written to the database, so it isn't submitted again by a concurrent check.
+     *
+     * @param instrumentName  the name of the {@code Instrument} on which the {@code Run} was performed
+     * @param runName  the name of the {@code Run}
+     * @return {@code true} if the {@code Run} was registered, {@code false} if it was already present or pending
+     */
+    public boolean add(String instrumentName, String runName) {
+        return getRunNames(instrumentName).add(runName);
+    }
+
+    /**
+     * Unregisters a pending {@link inspector.imondb.model.Run} for the {@link inspector.imondb.model.Instrument} with the given name, because it couldn't be written.
+     *
+     * @param instrumentName  the name of the {@code Instrument} on which the {@code Run} was performed
+     * @param runName  the name of the {@code Run}
+     */
+    public void remove(String instrumentName, String runName) {
+        getRunNames(instrumentName).remove(runName);
+    }
+
+    /**
+     * Returns the run names for the given instrument, the run names are retrieved from the database if required.
+     */
+    private synchronized Set<String> getRunNames(String instrumentName) {
+        Set<String> names = runNames.get(instrumentName);
+        if(names == null) {
+            LOGGER.debug("Retrieve the run names for instrument <{}>", instrumentName);
+
+            List<String> existing = dbReader.getFromNamedQuery(IMonDBQuery.RUN_NAMES_BY_INSTRUMENT, ImmutableMap.of("instName", instrumentName));
+            names = ConcurrentHashMap.newKeySet(existing.size());
+            names.addAll(existing);
+            runNames.put(instrumentName, names);
+
+            LOGGER.trace("{} run names retrieved for instrument <{}>", existing.size(), instrumentName);
+        }
+        return names;
+    }
+}
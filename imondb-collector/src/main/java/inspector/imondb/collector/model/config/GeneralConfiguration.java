@@ -35,7 +35,9 @@ public class GeneralConfiguration {
 
     private static final String REGEX_DEFAULT = "^.*\\.raw$";
     private static final int NR_OF_THREADS_DEFAULT = 1;
+    private static final int NR_OF_WRITERS_DEFAULT = 1;
     private static final boolean UNIQUE_DEFAULT = false;
+    private static final boolean INSERT_ONLY_DEFAULT = false;
 
     private Map<String, Object> rootMap;
 
@@ -101,6 +103,18 @@ public class GeneralConfiguration {
         generalMap.put("num_threads", numberOfThreads > 0 ? numberOfThreads : NR_OF_THREADS_DEFAULT);
     }
 
+    public int getNumberOfWriters() {
+        @SuppressWarnings("unchecked")
+        Integer result = ((Map<String, Integer>) rootMap.get("general")).get("num_writers");
+        return result != null && result > 0 ? result : NR_OF_WRITERS_DEFAULT;
+    }
+
+    public void setNumberOfWriters(int numberOfWriters) {
+        @SuppressWarnings("unchecked")
+        Map<String, Integer> generalMap = (Map<String, Integer>) rootMap.get("general");
+        generalMap.put("num_writers", numberOfWriters > 0 ? numberOfWriters : NR_OF_WRITERS_DEFAULT);
+    }
+
     public boolean getUniqueFileNames() {
         @SuppressWarnings("unchecked")
         Boolean result = ((Map<String, Boolean>) rootMap.get("general")).get("force_unique");
@@ -112,4 +126,16 @@ public class GeneralConfiguration {
         Map<String, Boolean> generalMap = (Map<String, Boolean>) rootMap.get("general");
         generalMap.put("force_unique", unique);
     }
+
+    public boolean getInsertOnly() {
+        @SuppressWarnings("unchecked")
+        Boolean result = ((Map<String, Boolean>) rootMap.get("general")).get("insert_only");
+        return result != null ? result : INSERT_ONLY_DEFAULT;
+    }
+
+    public void setInsertOnly(boolean insertOnly) {
+        @SuppressWarnings("unchecked")
+        Map<String, Boolean> generalMap = (Map<String, Boolean>) rootMap.get("general");
+        generalMap.put("insert_only", insertOnly);
+    }
 }
@@ -23,6 +23,7 @@ package inspector.imondb;
 import inspector.imondb.convert.thermo.ThermoRawFileExtractor;
 import inspector.imondb.io.IMonDBManagerFactory;
 import inspector.imondb.io.IMonDBReader;
+import inspector.imondb.io.IMonDBSchemaManager;
 import inspector.imondb.io.IMonDBWriter;
 import inspector.imondb.model.Instrument;
 import inspector.imondb.model.Run;
@@ -104,18 +105,23 @@ public class CLI {
                     pass = cmd.getOptionValue("pw");
                 }
 
+                // maintenance tasks instead of storing a raw file
+                boolean migrate = cmd.hasOption("m");
+                boolean rebuildRollups = cmd.hasOption("rr");
+                boolean maintenance = migrate || rebuildRollups;
+
                 // raw file information
                 String rawFile = null;
                 String instrumentName = null;
                 if(cmd.hasOption("f")) {
                     rawFile = cmd.getOptionValue("f");
-                } else {
+                } else if(!maintenance) {
                     error = true;
                     LOGGER.fatal("No raw file provided");
                 }
                 if(cmd.hasOption("i")) {
                     instrumentName = cmd.getOptionValue("i");
-                } else {
+                } else if(!maintenance) {
                     error = true;
                     LOGGER.fatal("No instrument name provided");
                 }
@@ -126,10 +132,21 @@ public class CLI {
                     IMonDBReader reader = new IMonDBReader(emf);
                     IMonDBWriter writer = new IMonDBWriter(emf);
 
-                    // store raw file in the database
-                    Instrument instrument = reader.getInstrument(instrumentName);
-                    Run run = new ThermoRawFileExtractor().extractInstrumentData(rawFile, null, instrument);
-                    writer.writeRun(run);
+                    if(maintenance) {
+                        // upgrade the schema before the rollups are recomputed
+                        if(migrate) {
+                            new IMonDBSchemaManager(emf).migrate();
+                        }
+                        // recompute the rollups of the values that are already in the database
+                        if(rebuildRollups) {
+                            writer.rebuildRollups();
+                        }
+                    } else {
+                        // store raw file in the database
+                        Instrument instrument = reader.getInstrument(instrumentName);
+                        Run run = new ThermoRawFileExtractor().extractInstrumentData(rawFile, null, instrument);
+                        writer.writeRun(run);
+                    }
                 } else {
                     new HelpFormatter().printHelp("iMonDB-core", options, true);
                 }
@@ -162,6 +179,9 @@ public class CLI {
         // raw file options
         options.addOption(new Option("f", "file", true, "the raw file to store in the iMonDB"));
         options.addOption(new Option("i", "instrument", true, "the name of the instrument on which the raw file was obtained (this instrument should be in the iMonDB already)"));
+        // maintenance options
+        options.addOption(new Option("m", "migrate", false, "upgrade the iMonDB schema to the latest version instead of storing a raw file"));
+        options.addOption(new Option("rr", "rebuild-rollups", false, "recompute the daily and weekly rollups of all values in the iMonDB instead of storing a raw file"));
 
         return options;
     }
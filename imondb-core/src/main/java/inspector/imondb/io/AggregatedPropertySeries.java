@@ -0,0 +1,186 @@
+package inspector.imondb.io;
+
+/*
+ * #%L
+ * iMonDB Core
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+
+/**
+ * A columnar time series of the aggregated summary statistics of a {@link inspector.imondb.model.Property}'s {@link inspector.imondb.model.Value}s per {@link TimeBucket}.
+ *
+ * Each index corresponds to a single period: its start (in milliseconds since the epoch), the number of {@code Value}s in the period,
+ * the minimum of their minima, the minimum of their first quartiles, the mean of their medians, the maximum of their third quartiles and the maximum of their maxima.
+ * Missing statistics are represented by {@link Double#NaN}.
+ *
+ * For efficiency, the arrays are not copied and should not be modified.
+ */
+public class AggregatedPropertySeries {
+
+    /** initial capacity if the number of periods is unknown */
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final TimeBucket bucket;
+
+    private int size;
+    private long[] times;
+    private long[] count;
+    private double[] min;
+    private double[] q1;
+    private double[] median;
+    private double[] q3;
+    private double[] max;
+
+    /** number of non-missing medians per period, only used while the series is being built */
+    private long[] medianCount;
+
+    /**
+     * Creates an empty {@code AggregatedPropertySeries}.
+     *
+     * @param bucket  the period in which the {@code Value}s are aggregated
+     */
+    AggregatedPropertySeries(TimeBucket bucket) {
+        this.bucket = bucket;
+        size = 0;
+        times = new long[DEFAULT_CAPACITY];
+        count = new long[DEFAULT_CAPACITY];
+        min = new double[DEFAULT_CAPACITY];
+        q1 = new double[DEFAULT_CAPACITY];
+        median = new double[DEFAULT_CAPACITY];
+        q3 = new double[DEFAULT_CAPACITY];
+        max = new double[DEFAULT_CAPACITY];
+        medianCount = new long[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Adds partially aggregated statistics to the series.
+     *
+     * The statistics must be added in chronological order.
+     * If they belong to the same period as the previously added statistics, both are combined.
+     */
+    void add(long time, long valueCount, Double minValue, Double q1Value, Double medianSum, long medianValueCount, Double q3Value, Double maxValue) {
+        long start = bucket.truncate(time);
+        if(size > 0 && times[size - 1] == start) {
+            int i = size - 1;
+            count[i] += valueCount;
+            min[i] = combine(min[i], minValue, true);
+            q1[i] = combine(q1[i], q1Value, true);
+            median[i] += medianSum != null ? medianSum : 0;
+            medianCount[i] += medianValueCount;
+            q3[i] = combine(q3[i], q3Value, false);
+            max[i] = combine(max[i], maxValue, false);
+        } else {
+            if(size == times.length) {
+                int capacity = times.length * 2;
+                times = Arrays.copyOf(times, capacity);
+                count = Arrays.copyOf(count, capacity);
+                min = Arrays.copyOf(min, capacity);
+                q1 = Arrays.copyOf(q1, capacity);
+                median = Arrays.copyOf(median, capacity);
+                q3 = Arrays.copyOf(q3, capacity);
+                max = Arrays.copyOf(max, capacity);
+                medianCount = Arrays.copyOf(medianCount, capacity);
+            }
+
+            times[size] = start;
+            count[size] = valueCount;
+            min[size] = toPrimitive(minValue);
+            q1[size] = toPrimitive(q1Value);
+            median[size] = medianSum != null ? medianSum : 0;
+            medianCount[size] = medianValueCount;
+            q3[size] = toPrimitive(q3Value);
+            max[size] = toPrimitive(maxValue);
+            size++;
+        }
+    }
+
+    /**
+     * Computes the mean medians and trims the arrays to the number of periods in the series.
+     */
+    void trim() {
+        for(int i = 0; i < size; i++) {
+            median[i] = medianCount[i] > 0 ? median[i] / medianCount[i] : Double.NaN;
+        }
+        medianCount = null;
+
+        if(size < times.length) {
+            times = Arrays.copyOf(times, size);
+            count = Arrays.copyOf(count, size);
+            min = Arrays.copyOf(min, size);
+            q1 = Arrays.copyOf(q1, size);
+            median = Arrays.copyOf(median, size);
+            q3 = Arrays.copyOf(q3, size);
+            max = Arrays.copyOf(max, size);
+        }
+    }
+
+    private static double combine(double current, Double value, boolean minimum) {
+        if(value == null) {
+            return current;
+        } else if(Double.isNaN(current)) {
+            return value;
+        } else {
+            return minimum ? Math.min(current, value) : Math.max(current, value);
+        }
+    }
+
+    private static double toPrimitive(Double value) {
+        return value != null ? value : Double.NaN;
+    }
+
+    public TimeBucket getBucket() {
+        return bucket;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long[] getTimes() {
+        return times;
+    }
+
+    public long[] getCount() {
+        return count;
+    }
+
+    public double[] getMin() {
+        return min;
+    }
+
+    public double[] getQ1() {
+        return q1;
+    }
+
+    public double[] getMedian() {
+        return median;
+    }
+
+    public double[] getQ3() {
+        return q3;
+    }
+
+    public double[] getMax() {
+        return max;
+    }
+}
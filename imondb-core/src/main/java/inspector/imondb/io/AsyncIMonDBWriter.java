@@ -0,0 +1,301 @@
+package inspector.imondb.io;
+
+/*
+ * #%L
+ * iMonDB Core
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import inspector.imondb.model.Run;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An asynchronous write-behind facade for an {@link IMonDBWriter}.
+ *
+ * Submitted {@link Run}s are placed in a bounded queue, which is drained by one or more dedicated writer threads.
+ * Each writer thread writes all queued {@code Run}s it takes from the queue (up to a maximum batch size) in a single transaction.
+ * Multiple writer threads write their batches concurrently (see {@link IMonDBWriter}).
+ * If the queue is full, submitting a new {@code Run} blocks until the writer threads have caught up.
+ *
+ * Optionally, the {@code Run}s are written in insert-only mode (see {@link IMonDBWriter#insertRuns(java.util.Collection)}).
+ *
+ * If a batch of {@code Run}s can't be written, each {@code Run} of the batch is written individually, so a single invalid {@code Run} doesn't affect the other {@code Run}s.
+ * If an unexpected error occurs while writing a batch, the futures of all {@code Run}s in the batch are completed exceptionally and the writer thread continues.
+ *
+ * The {@code AsyncIMonDBWriter} has to be closed after use to make sure all submitted {@code Run}s are written and the writer threads are stopped.
+ *
+ * This class is thread-safe.
+ */
+public class AsyncIMonDBWriter implements AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger(AsyncIMonDBWriter.class);
+
+    /** default maximum number of {@link Run}s that are waiting to be written */
+    public static final int DEFAULT_QUEUE_CAPACITY = 32;
+    /** default maximum number of {@link Run}s that are written in a single transaction */
+    public static final int DEFAULT_BATCH_SIZE = 16;
+    /** default number of writer threads */
+    public static final int DEFAULT_WRITER_COUNT = 1;
+
+    /** queue entry that signals the writer threads to stop */
+    private static final PendingRun POISON_PILL = new PendingRun(null);
+
+    /** the writer used to write the {@link Run}s to the database */
+    private final IMonDBWriter writer;
+
+    /** the {@link Run}s that are waiting to be written */
+    private final BlockingQueue<PendingRun> queue;
+    /** the maximum number of {@link Run}s that are written in a single transaction */
+    private final int batchSize;
+    /** flag which indicates whether the {@link Run}s are written in insert-only mode */
+    private final boolean insertOnly;
+
+    /** the threads that write the queued {@link Run}s */
+    private final List<Thread> writerThreads;
+    /** flag which indicates whether new {@link Run}s are no longer accepted */
+    private boolean closed;
+    /** lock to make sure no new {@link Run}s are queued after the writer is closed */
+    private final ReadWriteLock closeLock;
+
+    /**
+     * Creates an {@code AsyncIMonDBWriter} for the given {@link IMonDBWriter} with the default queue capacity, batch size, and number of writer threads.
+     *
+     * @param writer  the {@code IMonDBWriter} used to write the {@link Run}s to the database, not {@code null}
+     */
+    public AsyncIMonDBWriter(IMonDBWriter writer) {
+        this(writer, DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE, false);
+    }
+
+    /**
+     * Creates an {@code AsyncIMonDBWriter} for the given {@link IMonDBWriter} with the default number of writer threads.
+     *
+     * @param writer  the {@code IMonDBWriter} used to write the {@link Run}s to the database, not {@code null}
+     * @param queueCapacity  the maximum number of {@code Run}s that are waiting to be written, strictly positive
+     * @param batchSize  the maximum number of {@code Run}s that are written in a single transaction, strictly positive
+     * @param insertOnly  flag which indicates whether the {@code Run}s are written in insert-only mode, in which case pre-existing reference data is not updated
+     */
+    public AsyncIMonDBWriter(IMonDBWriter writer, int queueCapacity, int batchSize, boolean insertOnly) {
+        this(writer, queueCapacity, batchSize, insertOnly, DEFAULT_WRITER_COUNT);
+    }
+
+    /**
+     * Creates an {@code AsyncIMonDBWriter} for the given {@link IMonDBWriter}.
+     *
+     * @param writer  the {@code IMonDBWriter} used to write the {@link Run}s to the database, not {@code null}
+     * @param queueCapacity  the maximum number of {@code Run}s that are waiting to be written, strictly positive
+     * @param batchSize  the maximum number of {@code Run}s that are written in a single transaction, strictly positive
+     * @param insertOnly  flag which indicates whether the {@code Run}s are written in insert-only mode, in which case pre-existing reference data is not updated
+     * @param writerCount  the number of threads that write the {@code Run}s concurrently, strictly positive
+     */
+    public AsyncIMonDBWriter(IMonDBWriter writer, int queueCapacity, int batchSize, boolean insertOnly, int writerCount) {
+        if(writer == null) {
+            LOGGER.error("The IMonDBWriter is not allowed to be <null>");
+            throw new NullPointerException("The IMonDBWriter is not allowed to be <null>");
+        } else if(queueCapacity <= 0) {
+            LOGGER.error("The queue capacity must be strictly positive");
+            throw new IllegalArgumentException("The queue capacity must be strictly positive");
+        } else if(batchSize <= 0) {
+            LOGGER.error("The batch size must be strictly positive");
+            throw new IllegalArgumentException("The batch size must be strictly positive");
+        } else if(writerCount <= 0) {
+            LOGGER.error("The number of writer threads must be strictly positive");
+            throw new IllegalArgumentException("The number of writer threads must be strictly positive");
+        }
+
+        this.writer = writer;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.insertOnly = insertOnly;
+        this.closed = false;
+        this.closeLock = new ReentrantReadWriteLock();
+
+        writerThreads = new ArrayList<>(writerCount);
+        for(int i = 0; i < writerCount; i++) {
+            Thread writerThread = new Thread(this::processQueue, "iMonDB-writer-" + i);
+            writerThreads.add(writerThread);
+            writerThread.start();
+        }
+    }
+
+    /**
+     * Submits the given {@link Run} to be written to the database.
+     *
+     * If the queue is full, this method blocks until the {@code Run} can be queued.
+     *
+     * @param run  the {@code Run} that will be written to the database, not {@code null}
+     * @return a {@code CompletableFuture} that is completed with the {@code Run} after it has been written to the database,
+     *         or that is completed exceptionally with the cause if the {@code Run} couldn't be written (see {@link IMonDBWriter#writeRun(Run)})
+     */
+    public CompletableFuture<Run> submitRun(Run run) {
+        if(run == null) {
+            LOGGER.error("Unable to submit <null> run");
+            throw new NullPointerException("Unable to submit <null> run");
+        }
+
+        closeLock.readLock().lock();
+        try {
+            if(closed) {
+                LOGGER.error("Unable to submit run <{}>: the writer is closed", run.getName());
+                throw new IllegalStateException("Unable to submit run <" + run.getName() + ">: the writer is closed");
+            }
+
+            PendingRun pending = new PendingRun(run);
+            try {
+                queue.put(pending);
+            } catch(InterruptedException e) {
+                LOGGER.debug("Interrupted while submitting run <{}>", run.getName());
+                Thread.currentThread().interrupt();
+                pending.future.completeExceptionally(e);
+            }
+            return pending.future;
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stops accepting new {@link Run}s and waits until all queued {@code Run}s have been written to the database.
+     */
+    @Override
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            if(closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+
+        LOGGER.debug("Wait until all queued runs have been written");
+        try {
+            // each writer thread puts the poison pill back before it stops
+            queue.put(POISON_PILL);
+            for(Thread writerThread : writerThreads) {
+                writerThread.join();
+            }
+        } catch(InterruptedException e) {
+            LOGGER.warn("Interrupted while waiting for the queued runs to be written");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the queued {@link Run}s until the poison pill is encountered.
+     *
+     * The poison pill is put back in the queue, so the other writer threads stop as well.
+     */
+    private void processQueue() {
+        List<PendingRun> batch = new ArrayList<>(batchSize);
+        boolean stop = false;
+        while(!stop) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+            } catch(InterruptedException e) {
+                LOGGER.warn("The writer thread was interrupted; continue writing until the writer is closed");
+            }
+
+            stop = batch.remove(POISON_PILL);
+            if(!batch.isEmpty()) {
+                try {
+                    writeBatch(batch);
+                } catch(Throwable t) {
+                    LOGGER.error("Unexpected error while writing a batch of {} runs: {}", batch.size(), t.getMessage(), t);
+                    for(PendingRun pending : batch) {
+                        pending.future.completeExceptionally(t);
+                    }
+                }
+                batch.clear();
+            }
+        }
+
+        // no new runs are queued after the poison pill, so there is room to put it back
+        if(!queue.offer(POISON_PILL)) {
+            LOGGER.debug("Unable to put the poison pill back in the queue");
+        }
+    }
+
+    /**
+     * Writes the given {@link Run}s in a single transaction and completes their futures.
+     *
+     * If the {@code Run}s can't be written in a single transaction, each {@code Run} is written individually.
+     *
+     * @param batch  the {@code Run}s that will be written
+     */
+    private void writeBatch(List<PendingRun> batch) {
+        LOGGER.debug("Write a batch of {} runs", batch.size());
+
+        List<Run> runs = new ArrayList<>(batch.size());
+        for(PendingRun pending : batch) {
+            runs.add(pending.run);
+        }
+
+        try {
+            if(insertOnly) {
+                writer.insertRuns(runs);
+            } else {
+                writer.writeRuns(runs);
+            }
+            for(PendingRun pending : batch) {
+                pending.future.complete(pending.run);
+            }
+        } catch(RuntimeException e) {
+            if(batch.size() > 1) {
+                LOGGER.debug("Unable to write the batch of runs, write each run individually: {}", e.getMessage());
+                for(PendingRun pending : batch) {
+                    try {
+                        if(insertOnly) {
+                            writer.insertRun(pending.run);
+                        } else {
+                            writer.writeRun(pending.run);
+                        }
+                        pending.future.complete(pending.run);
+                    } catch(RuntimeException re) {
+                        pending.future.completeExceptionally(re);
+                    }
+                }
+            } else {
+                batch.get(0).future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * A {@link Run} that is waiting to be written.
+     */
+    private static class PendingRun {
+
+        private final Run run;
+        private final CompletableFuture<Run> future;
+
+        private PendingRun(Run run) {
+            this.run = run;
+            this.future = new CompletableFuture<>();
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package inspector.imondb.io;
+
+/*
+ * #%L
+ * iMonDB Core
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+import inspector.imondb.model.EventAttachment;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import java.io.*;
+import java.sql.*;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Content-addressed store for the binary content of {@link inspector.imondb.model.Event} attachments.
+ *
+ * Each distinct content is stored only once, identified by its SHA-256 hash, so identical attachments of multiple {@code Event}s share the same {@link EventAttachment}.
+ * The content is compressed and split in chunks which are stored in separate rows, so it is never held in memory as a whole while it is written or read.
+ *
+ * All methods operate within the transaction of the given {@link EntityManager}.
+ */
+class AttachmentStore {
+
+    private static final Logger LOGGER = LogManager.getLogger(AttachmentStore.class);
+
+    /** maximum size (in bytes) of a single chunk of compressed content; well below the default MySQL {@code max_allowed_packet} */
+    private static final int CHUNK_SIZE = 512 * 1024;
+
+    /**
+     * Stores the given content, unless identical content is already present in the database.
+     *
+     * The content is compressed to a temporary file while its hash is computed, and is subsequently written to the database in chunks.
+     * An active transaction is required.
+     *
+     * @param content  the content of the attachment, not {@code null}; the stream is consumed but not closed
+     * @param entityManager  the {@code EntityManager} used to connect to the database
+     * @return the (new or pre-existing) {@code EventAttachment} that contains the given content
+     * @throws IOException  if the content can't be read
+     */
+    public EventAttachment store(InputStream content, EntityManager entityManager) throws IOException {
+        File temp = File.createTempFile("imondb-attachment_", ".deflate");
+        try {
+            // compress the content while computing its hash
+            HashingInputStream hashingIn = new HashingInputStream(Hashing.sha256(), content);
+            long size;
+            try(OutputStream out = new DeflaterOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                size = ByteStreams.copy(hashingIn, out);
+            }
+            String hash = hashingIn.hash().toString();
+
+            // reuse identical content
+            Long id = findId(hash, entityManager);
+            if(id != null) {
+                LOGGER.debug("Attachment content <{}> is already stored with id <{}>", hash, id);
+            } else {
+                id = insert(hash, size, temp, entityManager);
+                if(id == null) {
+                    // the same content has been stored concurrently
+                    id = findId(hash, entityManager);
+                    if(id == null) {
+                        LOGGER.error("Unable to store attachment content <{}>", hash);
+                        throw new IllegalStateException("Unable to store attachment content <" + hash + ">");
+                    }
+                }
+            }
+
+            return entityManager.getReference(EventAttachment.class, id);
+        } finally {
+            if(!temp.delete()) {
+                LOGGER.debug("Unable to delete temporary file <{}>", temp.getAbsolutePath());
+                temp.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Retrieves the id of the {@link EventAttachment} with the given hash.
+     *
+     * @param hash  the SHA-256 hash of the attachment content
+     * @param entityManager  the {@code EntityManager} used to connect to the database
+     * @return the id of the {@code EventAttachment} with the given hash if present, else {@code null}
+     */
+    private Long findId(String hash, EntityManager entityManager) {
+        TypedQuery<Long> query = entityManager.createQuery("SELECT attachment.id FROM EventAttachment attachment WHERE attachment.hash = :hash", Long.class);
+        query.setParameter("hash", hash);
+        List<Long> result = query.getResultList();
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * Inserts a new {@link EventAttachment} and its compressed content.
+     *
+     * @param hash  the SHA-256 hash of the attachment content
+     * @param size  the uncompressed size of the attachment content
+     * @param compressed  the file containing the compressed attachment content
+     * @param entityManager  the {@code EntityManager} used to connect to the database
+     * @return the id of the new {@code EventAttachment}, or {@code null} if an {@code EventAttachment} with the same hash already exists
+     * @throws IOException  if the compressed content can't be read
+     */
+    private Long insert(String hash, long size, File compressed, EntityManager entityManager) throws IOException {
+        try(InputStream in = new BufferedInputStream(new FileInputStream(compressed))) {
+            return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+                long id;
+                try(PreparedStatement statement = connection.prepareStatement("INSERT INTO imon_event_attachment (sha256, size) VALUES (?, ?)", Statement.RETURN_GENERATED_KEYS)) {
+                    statement.setString(1, hash);
+                    statement.setLong(2, size);
+                    statement.executeUpdate();
+                    try(ResultSet keys = statement.getGeneratedKeys()) {
+                        keys.next();
+                        id = keys.getLong(1);
+                    }
+                } catch(SQLException e) {
+                    // integrity constraint violation (SQLSTATE class 23): duplicate hash
+                    if(e.getSQLState() != null && e.getSQLState().startsWith("23")) {
+                        LOGGER.debug("Attachment content <{}> has been stored concurrently: {}", hash, e.getMessage());
+                        return null;
+                    }
+                    throw e;
+                }
+
+                // store the compressed content in chunks
+                try(PreparedStatement statement = connection.prepareStatement("INSERT INTO imon_event_attachment_chunk (l_imon_attachment_id, chunk_index, data) VALUES (?, ?, ?)")) {
+                    byte[] buffer = new byte[CHUNK_SIZE];
+                    int index = 0;
+                    int length;
+                    while((length = ByteStreams.read(in, buffer, 0, buffer.length)) > 0) {
+                        statement.setLong(1, id);
+                        statement.setInt(2, index++);
+                        statement.setBinaryStream(3, new ByteArrayInputStream(buffer, 0, length), length);
+                        statement.executeUpdate();
+                    }
+                    LOGGER.debug("Attachment content <{}> stored with id <{}> in {} chunks", hash, id, index);
+                } catch(IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+
+                return id;
+            });
+        } catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Writes the content of the {@link EventAttachment} with the given id to the given stream.
+     *
+     * The content is retrieved from the database one chunk at a time.
+     *
+     * @param id  the id of the {@code EventAttachment}
+     * @param out  the stream to which the (uncompressed) content is written; the stream is not closed
+     * @param entityManager  the {@code EntityManager} used to connect to the database
+     * @throws IOException  if the content can't be written to the given stream
+     */
+    public void read(long id, OutputStream out, EntityManager entityManager) throws IOException {
+        try {
+            entityManager.unwrap(Session.class).doWork(connection -> {
+                try(PreparedStatement statement = connection.prepareStatement("SELECT data FROM imon_event_attachment_chunk WHERE l_imon_attachment_id = ? AND chunk_index = ?")) {
+                    ChunkEnumeration chunks = new ChunkEnumeration(statement, id);
+                    if(!chunks.hasMoreElements()) {
+                        // empty content
+                        return;
+                    }
+                    try(InputStream in = new InflaterInputStream(new SequenceInputStream(chunks))) {
+                        ByteStreams.copy(in, out);
+                    } catch(IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Removes the {@link EventAttachment}s with the given id's if they are no longer used by any {@link inspector.imondb.model.Event}.
+     *
+     * An active transaction is required.
+     *
+     * @param ids  the id's of the {@code EventAttachment}s that might no longer be used
+     * @param entityManager  the {@code EntityManager} used to connect to the database
+     */
+    public void removeUnused(Collection<Long> ids, EntityManager entityManager) {
+        if(ids.isEmpty()) {
+            return;
+        }
+
+        TypedQuery<Long> query = entityManager.createQuery("SELECT attachment.id FROM EventAttachment attachment WHERE attachment.id IN :ids " +
+                "AND NOT EXISTS (SELECT event.id FROM Event event WHERE event.attachment = attachment)", Long.class);
+        query.setParameter("ids", ids);
+        List<Long> unused = query.getResultList();
+
+        if(!unused.isEmpty()) {
+            LOGGER.debug("Remove {} unused attachments", unused.size());
+
+            // only the chunks are affected, so the second-level cache doesn't have to be evicted entirely
+            Query deleteChunks = entityManager.createNativeQuery("DELETE FROM imon_event_attachment_chunk WHERE l_imon_attachment_id IN (:ids)");
+            deleteChunks.unwrap(SQLQuery.class).addSynchronizedQuerySpace("imon_event_attachment_chunk");
+            deleteChunks.setParameter("ids", unused).executeUpdate();
+            entityManager.createQuery("DELETE FROM EventAttachment attachment WHERE attachment.id IN :ids")
+                    .setParameter("ids", unused).executeUpdate();
+        }
+    }
+
+    /**
+     * Lazily retrieves the consecutive chunks of an attachment's compressed content.
+     */
+    private static class ChunkEnumeration implements Enumeration<InputStream> {
+
+        private final PreparedStatement statement;
+        private final long id;
+        private int index;
+        private InputStream next;
+
+        private ChunkEnumeration(PreparedStatement statement, long id) {
+            this.statement = statement;
+            this.id = id;
+            this.index = 0;
+        }
+
+        @Override
+        public boolean hasMoreElements() {
+            if(next == null) {
+                next = fetch();
+            }
+            return next != null;
+        }
+
+        @Override
+        public InputStream nextElement() {
+            if(!hasMoreElements()) {
+                throw new NoSuchElementException();
+            }
+            InputStream chunk = next;
+            next = null;
+            return chunk;
+        }
+
+        private InputStream fetch() {
+            try {
+                statement.setLong(1, id);
+                statement.setInt(2, index);
+                try(ResultSet resultSet = statement.executeQuery()) {
+                    if(resultSet.next()) {
+                        index++;
+                        return new ByteArrayInputStream(resultSet.getBytes(1));
+                    } else {
+                        return null;
+                    }
+                }
+            } catch(SQLException e) {
+                throw new UncheckedIOException(new IOException("Unable to retrieve chunk <" + index + "> of attachment <" + id + ">", e));
+            }
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package inspector.imondb.io;
+
+/*
+ * #%L
+ * iMonDB Core
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import inspector.imondb.model.Metadata;
+import inspector.imondb.model.Run;
+import inspector.imondb.model.Value;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.IdentifierGenerator;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * An iMonDB bulk loader to quickly write large numbers of {@link Run}s to a MySQL database.
+ *
+ * The {@code Run} and {@link Metadata} rows are inserted through a Hibernate {@link StatelessSession},
+ * after which the {@link Value} rows are written directly using JDBC, skipping JPA entirely.
+ * Depending on the {@link Mode}, the {@code Value}s are written as multi-row {@code INSERT} statements
+ * or streamed from an in-memory buffer using {@code LOAD DATA LOCAL INFILE}.
+ * Alternatively, all {@code Value}s of a {@code Run} can be stored as a single compressed columnar blob instead of individual rows.
+ *
+ * The bulk loader is intended for large historical backfills of new {@code Run}s.
+ * Contrary to the {@link IMonDBWriter}, pre-existing {@link inspector.imondb.model.Property}s and {@link inspector.imondb.model.CV}s are not updated.
+ *
+ * This class is thread-safe.
+ */
+public class IMonDBBulkLoader {
+
+    private static final Logger LOGGER = LogManager.getLogger(IMonDBBulkLoader.class);
+
+    /** maximum number of {@link Value} rows in a single multi-row {@code INSERT} statement */
+    private static final int ROWS_PER_STATEMENT = 500;
+
+    /** the {@link Value} columns, in the order in which they are written */
+    private static final String VALUE_COLUMNS = "id, firstvalue, n, n_diffvalues, min, max, mean, median, sd, q1, q3, l_imon_property_id, l_imon_run_id, sampledate";
+    private static final int NR_OF_VALUE_COLUMNS = 14;
+
+    /**
+     * The method that is used to write the {@link Value} rows.
+     */
+    public enum Mode {
+        /** write the {@code Value}s using multi-row {@code INSERT} statements */
+        MULTI_ROW_INSERT,
+        /** stream the {@code Value}s from an in-memory buffer using {@code LOAD DATA LOCAL INFILE} (requires {@code local_infile} to be enabled on the MySQL server) */
+        LOAD_DATA_LOCAL_INFILE,
+        /**
+         * store the {@code Value}s of each {@link Run} as a single compressed columnar blob instead of individual rows (see {@link ValueBlobStore});
+         * these {@code Value}s are retrieved by {@link IMonDBReader#getRun(String, String)} and the {@code getPropertySeries} methods of the {@link IMonDBReader},
+         * and they are included in the rollups and the snapshot of the latest {@code Value}s;
+         * they are invisible to all queries on the {@code Value} entities, such as {@link IMonDBReader#getProperty(String, Timestamp, Timestamp)},
+         * {@link IMonDBReader#getValues(String, String, PageKey, int)}, the {@code getAggregatedPropertySeries} methods, and custom queries
+         * (e.g. {@link IMonDBReader#streamFromCustomQuery(String, Class, Map)})
+         */
+        VALUE_BLOB
+    }
+
+    /** {@link EntityManagerFactory} used to set up connections to the database */
+    private EntityManagerFactory emf;
+
+    /** writer used to prepare the reference data */
+    private final IMonDBWriter writer;
+    /** store for the rollups of the values per period */
+    private final RollupStore rollupStore;
+    /** store for the snapshot of the most recent runs and values */
+    private final LatestValueStore latestValueStore;
+    /** store for the values that are stored as blobs */
+    private final ValueBlobStore valueBlobStore;
+
+    /** the method that is used to write the {@link Value} rows */
+    private final Mode mode;
+
+    /**
+     * Creates an {@code IMonDBBulkLoader} specified by the given {@link EntityManagerFactory} that uses multi-row {@code INSERT} statements.
+     *
+     * @param emf  the {@code EntityManagerFactory} used to set up the connection to the database, not {@code null}
+     */
+    public IMonDBBulkLoader(EntityManagerFactory emf) {
+        this(emf, Mode.MULTI_ROW_INSERT);
+    }
+
+    /**
+     * Creates an {@code IMonDBBulkLoader} specified by the given {@link EntityManagerFactory} that uses the given {@link Mode}.
+     *
+     * @param emf  the {@code EntityManagerFactory} used to set up the connection to the database, not {@code null}
+     * @param mode  the method that is used to write the {@link Value} rows, not {@code null}
+     */
+    public IMonDBBulkLoader(EntityManagerFactory emf, Mode mode) {
+        if(emf == null) {
+            LOGGER.error("The EntityManagerFactory is not allowed to be <null>");
+            throw new NullPointerException("The EntityManagerFactory is not allowed to be <null>");
+        } else if(mode == null) {
+            LOGGER.error("The bulk load mode is not allowed to be <null>");
+            throw new NullPointerException("The bulk load mode is not allowed to be <null>");
+        } else {
+            this.emf = emf;
+            this.writer = new IMonDBWriter(emf);
+            this.rollupStore = new RollupStore();
+            this.latestValueStore = new LatestValueStore();
+            this.valueBlobStore = new ValueBlobStore();
+            this.mode = mode;
+        }
+    }
+
+    /**
+     * Creates an {@link EntityManager} to set up a connection to the database.
+     *
+     * @return an {@code EntityManager} to connect to the database
+     */
+    private EntityManager createEntityManager() {
+        try {
+            return emf.createEntityManager();
+        } catch(Exception e) {
+            LOGGER.error("Error while creating the EntityManager to connect to the database: {}", e.getMessage());
+            throw new IllegalStateException("Couldn't connect to the database: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Load the given new {@link Run} into the database.
+     *
+     * @param run  the {@code Run} that will be written to the database, not {@code null}
+     * @see #loadRuns(Collection)
+     */
+    public void loadRun(Run run) {
+        if(run != null) {
+            loadRuns(Collections.singletonList(run));
+        } else {
+            LOGGER.error("Unable to load <null> run");
+            throw new NullPointerException("Unable to load <null> run");
+        }
+    }
+
+    /**
+     * Load the given new {@link Run}s into the database in a single transaction.
+     *
+     * If the {@link inspector.imondb.model.Instrument} on which one of the {@code Run}s is performed is not present in the database, an {@link IllegalStateException} will be thrown.
+     * If a {@code Run} with the same name performed on the same {@code Instrument} was already present in the database, or is included multiple times, an {@link IllegalArgumentException} will be thrown.
+     *
+     * All child {@link Value}s and {@link Metadata} will be written to the database as well.
+     * New {@link inspector.imondb.model.Property}s and {@link inspector.imondb.model.CV}s are stored in the database, but pre-existing items will <em>not</em> be updated.
+     *
+     * @param runs  the {@code Run}s that will be written to the database, not {@code null} and not containing {@code null}
+     */
+    public void loadRuns(Collection<Run> runs) {
+        if(runs != null && !runs.contains(null)) {
+            LOGGER.debug("Bulk load {} runs", runs.size());
+
+            if(runs.isEmpty()) {
+                return;
+            }
+
+            EntityManager entityManager = createEntityManager();
+            StatelessSession session = null;
+            Transaction transaction = null;
+
+            try {
+                writer.prepareReferenceData(runs, entityManager);
+
+                session = entityManager.unwrap(Session.class).getSessionFactory().openStatelessSession();
+                transaction = session.beginTransaction();
+
+                // insert the runs and metadata to generate their id's
+                for(Run run : runs) {
+                    LOGGER.trace("Load run <{}> for instrument <{}>", run.getName(), run.getInstrument().getName());
+                    session.insert(run);
+                    for(Iterator<Metadata> it = run.getMetadataIterator(); it.hasNext(); ) {
+                        session.insert(it.next());
+                    }
+                }
+
+                // insert the values directly
+                Connection connection = ((SessionImplementor) session).connection();
+                if(mode == Mode.VALUE_BLOB) {
+                    valueBlobStore.write(runs, connection);
+                } else {
+                    List<Object[]> rows = createValueRows(runs, session);
+                    if(mode == Mode.LOAD_DATA_LOCAL_INFILE) {
+                        loadDataLocalInfile(rows, connection);
+                    } else {
+                        insertMultiRow(rows, connection);
+                    }
+                }
+                rollupStore.add(runs, connection);
+                latestValueStore.update(runs, connection);
+
+                transaction.commit();
+            } catch(HibernateException | SQLException e) {
+                LOGGER.error("Unable to load the runs: {}", e.getMessage());
+
+                if(transaction != null) {
+                    try {
+                        transaction.rollback();
+                    } catch(HibernateException p) {
+                        LOGGER.debug("Unable to rollback the runs: {}", p.getMessage(), p);
+                    }
+                }
+
+                throw new IllegalArgumentException("Unable to load the runs", e);
+            } finally {
+                if(session != null) {
+                    session.close();
+                }
+                entityManager.close();
+            }
+        } else {
+            LOGGER.error("Unable to load <null> runs");
+            throw new NullPointerException("Unable to load <null> runs");
+        }
+    }
+
+    /**
+     * Creates the database rows for all {@link Value}s of the given {@link Run}s.
+     *
+     * The {@code Value} id's are taken from the same id generator that is used by JPA.
+     *
+     * @param runs  the {@code Run}s with the {@code Value}s, the {@code Run}s and their {@code Property}s need to have an id
+     * @param session  the session used to generate the id's
+     * @return a row with the values for all {@link #VALUE_COLUMNS} for each {@code Value}
+     */
+    private List<Object[]> createValueRows(Collection<Run> runs, StatelessSession session) {
+        SessionImplementor sessionImplementor = (SessionImplementor) session;
+        IdentifierGenerator idGenerator = sessionImplementor.getFactory().getIdentifierGenerator(Value.class.getName());
+
+        List<Object[]> rows = new ArrayList<>();
+        for(Run run : runs) {
+            for(Iterator<Value> it = run.getValueIterator(); it.hasNext(); ) {
+                Value value = it.next();
+                rows.add(new Object[] { idGenerator.generate(sessionImplementor, value), value.getFirstValue(), value.getN(), value.getNDiffValues(),
+                        value.getMin(), value.getMax(), value.getMean(), value.getMedian(), value.getSd(), value.getQ1(), value.getQ3(),
+                        value.getDefiningProperty().getId(), run.getId(), value.getSampleDate() });
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Writes the given {@link Value} rows using multi-row {@code INSERT} statements.
+     *
+     * @param rows  the {@code Value} rows
+     * @param connection  the JDBC connection with an active transaction
+     * @throws SQLException  if the rows couldn't be inserted
+     */
+    private void insertMultiRow(List<Object[]> rows, Connection connection) throws SQLException {
+        PreparedStatement fullStatement = null;
+        try {
+            for(int start = 0; start < rows.size(); start += ROWS_PER_STATEMENT) {
+                List<Object[]> chunk = rows.subList(start, Math.min(start + ROWS_PER_STATEMENT, rows.size()));
+
+                if(chunk.size() == ROWS_PER_STATEMENT) {
+                    // reuse the statement for all full chunks
+                    if(fullStatement == null) {
+                        fullStatement = connection.prepareStatement(createInsertSql(ROWS_PER_STATEMENT));
+                    }
+                    bindRows(fullStatement, chunk);
+                    fullStatement.executeUpdate();
+                } else {
+                    try(PreparedStatement statement = connection.prepareStatement(createInsertSql(chunk.size()))) {
+                        bindRows(statement, chunk);
+                        statement.executeUpdate();
+                    }
+                }
+            }
+        } finally {
+            if(fullStatement != null) {
+                fullStatement.close();
+            }
+        }
+    }
+
+    private String createInsertSql(int nrOfRows) {
+        String rowPlaceholders = "(" + String.join(", ", Collections.nCopies(NR_OF_VALUE_COLUMNS, "?")) + ")";
+        return "INSERT INTO imon_value (" + VALUE_COLUMNS + ") VALUES " + String.join(", ", Collections.nCopies(nrOfRows, rowPlaceholders));
+    }
+
+    private void bindRows(PreparedStatement statement, List<Object[]> rows) throws SQLException {
+        int index = 1;
+        for(Object[] row : rows) {
+            for(Object column : row) {
+                if(column == null) {
+                    statement.setNull(index++, Types.NULL);
+                } else {
+                    statement.setObject(index++, column);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the given {@link Value} rows using {@code LOAD DATA LOCAL INFILE}, streamed from an in-memory buffer.
+     *
+     * @param rows  the {@code Value} rows
+     * @param connection  the JDBC connection with an active transaction
+     * @throws SQLException  if the rows couldn't be loaded
+     */
+    private void loadDataLocalInfile(List<Object[]> rows, Connection connection) throws SQLException {
+        if(rows.isEmpty()) {
+            return;
+        }
+
+        // tab-separated rows, using the MySQL defaults for escaping and NULL values
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(rows.size() * 128);
+        StringBuilder line = new StringBuilder(128);
+        for(Object[] row : rows) {
+            line.setLength(0);
+            for(int i = 0; i < row.length; i++) {
+                if(i > 0) {
+                    line.append('\t');
+                }
+                if(row[i] == null) {
+                    line.append("\\N");
+                } else {
+                    escape(row[i].toString(), line);
+                }
+            }
+            line.append('\n');
+            byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+            buffer.write(bytes, 0, bytes.length);
+        }
+
+        try(Statement statement = connection.createStatement()) {
+            // the file name is ignored when an input stream is provided
+            statement.unwrap(com.mysql.jdbc.Statement.class).setLocalInfileInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+            statement.execute("LOAD DATA LOCAL INFILE 'imon_value.tsv' INTO TABLE imon_value CHARACTER SET utf8 (" + VALUE_COLUMNS + ")");
+        }
+    }
+
+    private void escape(String value, StringBuilder builder) {
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch(c) {
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+    }
+}
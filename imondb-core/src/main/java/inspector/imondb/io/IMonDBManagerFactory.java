@@ -66,7 +66,10 @@ public class IMonDBManagerFactory {
         // add connection-specific properties
         Map<String, String> properties = new HashMap<>();
         properties.put("javax.persistence.jdbc.driver", "com.mysql.jdbc.Driver");
-        String url = "jdbc:mysql://" + (host == null ? "localhost" : host) + ":" + (port == null ? "3306" : port) + "/" + db;
+        String url = "jdbc:mysql://" + (host == null ? "localhost" : host) + ":" + (port == null ? "3306" : port) + "/" + db +
+                "?rewriteBatchedStatements=true" +    // send batched inserts as multi-row statements
+                "&useCursorFetch=true" +    // retrieve the results of queries with a fetch size incrementally
+                "&useServerPrepStmts=true&cachePrepStmts=true";    // prepare statements once on the server and reuse them
         properties.put("javax.persistence.jdbc.url", url);
         properties.put("javax.persistence.jdbc.user", user);
         if(password != null) {
@@ -0,0 +1,319 @@
+package inspector.imondb.io;
+
+/*
+ * #%L
+ * iMonDB Core
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Partitions the {@link inspector.imondb.model.Value}s in an iMonDB database by the year of their sample date.
+ *
+ * The {@code Value}s are stored in a separate MySQL {@code RANGE} partition per year, and a final partition for all {@code Value}s after the last year.
+ * Queries with a time range only read the partitions that overlap with the time range (see {@link IMonDBReader}),
+ * and the {@code Value}s of a whole year can be archived or dropped instantly, without deleting the individual rows.
+ *
+ * MySQL doesn't support foreign keys on partitioned tables, and requires the sample date to be part of each unique key.
+ * Therefore the foreign keys of the {@code Value}s are removed and the sample date is added to their primary key and unique (property, run) key
+ * when the {@code Value}s are partitioned. As the sample date is determined by the originating {@link inspector.imondb.model.Run}, this doesn't alter the unique constraint.
+ * The non-unique indexes of the {@code Value}s, such as the (property, sample date, id) index used to browse the {@code Value}s of a {@code Property}, are retained.
+ *
+ * Partitions should not be modified while other iMonDB applications are writing to the database.
+ */
+public class IMonDBPartitionManager {
+
+    private static final Logger LOGGER = LogManager.getLogger(IMonDBPartitionManager.class);
+
+    /** the partition that contains all {@link inspector.imondb.model.Value}s after the last yearly partition */
+    private static final String FUTURE_PARTITION = "pfuture";
+
+    /** {@link EntityManagerFactory} used to set up connections to the database */
+    private EntityManagerFactory emf;
+
+    /**
+     * Creates an {@code IMonDBPartitionManager} specified by the given {@link EntityManagerFactory}.
+     *
+     * @param emf  the {@code EntityManagerFactory} used to set up the connection to the database, not {@code null}
+     */
+    public IMonDBPartitionManager(EntityManagerFactory emf) {
+        if(emf != null) {
+            this.emf = emf;
+        } else {
+            LOGGER.error("The EntityManagerFactory is not allowed to be <null>");
+            throw new NullPointerException("The EntityManagerFactory is not allowed to be <null>");
+        }
+    }
+
+    /**
+     * Creates an {@link EntityManager} to set up a connection to the database.
+     *
+     * @return an {@code EntityManager} to connect to the database
+     */
+    private EntityManager createEntityManager() {
+        try {
+            return emf.createEntityManager();
+        } catch(Exception e) {
+            LOGGER.error("Error while creating the EntityManager to connect to the database: {}", e.getMessage());
+            throw new IllegalStateException("Couldn't connect to the database: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the years for which a separate partition exists.
+     *
+     * @return the partitioned years in chronological order, empty if the {@code Value}s are not partitioned
+     */
+    public List<Integer> getPartitionYears() {
+        EntityManager entityManager = createEntityManager();
+
+        try {
+            return entityManager.unwrap(Session.class).doReturningWork(this::readPartitionYears);
+        } catch(PersistenceException | HibernateException e) {
+            LOGGER.error("Unable to retrieve the partitions: {}", e.getMessage());
+            throw new IllegalStateException("Unable to retrieve the partitions: " + e.getMessage(), e);
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Partitions the {@code Value}s by year.
+     *
+     * A partition is created for each year in the given range, the first partition contains the {@code Value}s of all preceding years as well.
+     * All existing {@code Value}s are copied into the partitions, which might take a considerable time for a large database.
+     *
+     * <em>All foreign keys on the {@code Value}s are dropped</em>, including the references to their originating {@link inspector.imondb.model.Run}s
+     * and defining {@link inspector.imondb.model.Property}s, because MySQL doesn't support foreign keys on partitioned tables.
+     * Afterwards the database no longer verifies that the originating {@code Run} and defining {@code Property} of a {@code Value} exist,
+     * and removing a {@code Run} or {@code Property} directly from the database leaves its {@code Value}s behind.
+     *
+     * @param firstYear  the first year that is stored in a separate partition
+     * @param lastYear  the last year that is stored in a separate partition, not before the first year
+     */
+    public void partitionByYear(int firstYear, int lastYear) {
+        if(firstYear > lastYear) {
+            LOGGER.error("The first year <{}> must not be after the last year <{}>", firstYear, lastYear);
+            throw new IllegalArgumentException("The first year <" + firstYear + "> must not be after the last year <" + lastYear + ">");
+        } else if(!getPartitionYears().isEmpty()) {
+            LOGGER.error("The values are already partitioned");
+            throw new IllegalStateException("The values are already partitioned");
+        }
+
+        LOGGER.info("Partition the values by year from <{}> until <{}>", firstYear, lastYear);
+
+        execute("partition the values", connection -> {
+            List<String> foreignKeys = new ArrayList<>();
+            try(Statement statement = connection.createStatement();
+                ResultSet results = statement.executeQuery("SELECT CONSTRAINT_NAME FROM information_schema.TABLE_CONSTRAINTS " +
+                        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'imon_value' AND CONSTRAINT_TYPE = 'FOREIGN KEY'")) {
+                while(results.next()) {
+                    foreignKeys.add(results.getString(1));
+                }
+            }
+
+            if(!foreignKeys.isEmpty()) {
+                LOGGER.warn("Drop all foreign keys of the values, including the run and property references: {}", foreignKeys);
+            }
+            List<String> statements = new ArrayList<>();
+            for(String foreignKey : foreignKeys) {
+                statements.add("ALTER TABLE imon_value DROP FOREIGN KEY " + foreignKey);
+            }
+            statements.add("ALTER TABLE imon_value DROP PRIMARY KEY, ADD PRIMARY KEY (id, sampledate), " +
+                    "DROP KEY imon_value_property_run, ADD UNIQUE KEY imon_value_property_run (l_imon_property_id, l_imon_run_id, sampledate)");
+            statements.add("ALTER TABLE imon_value PARTITION BY RANGE COLUMNS (sampledate) (" + createPartitions(firstYear, lastYear) + ")");
+            return statements;
+        });
+    }
+
+    /**
+     * Adds a separate partition for each year after the last partitioned year up to and including the given year.
+     *
+     * The new partitions are split off from the final partition, so the {@code Value}s in the final partition are copied.
+     * New partitions should therefore be added before the {@code Value}s of the new year are written.
+     *
+     * @param year  the last year that is stored in a separate partition, after the last partitioned year
+     */
+    public void addYear(int year) {
+        List<Integer> years = getPartitionYears();
+        if(years.isEmpty()) {
+            LOGGER.error("The values are not partitioned");
+            throw new IllegalStateException("The values are not partitioned");
+        }
+        int lastYear = years.get(years.size() - 1);
+        if(year <= lastYear) {
+            LOGGER.error("The year <{}> must be after the last partitioned year <{}>", year, lastYear);
+            throw new IllegalArgumentException("The year <" + year + "> must be after the last partitioned year <" + lastYear + ">");
+        }
+
+        LOGGER.info("Add partitions for the years from <{}> until <{}>", lastYear + 1, year);
+
+        execute("add partitions", connection -> {
+            List<String> statements = new ArrayList<>();
+            statements.add("ALTER TABLE imon_value REORGANIZE PARTITION " + FUTURE_PARTITION + " INTO (" + createPartitions(lastYear + 1, year) + ")");
+            return statements;
+        });
+    }
+
+    /**
+     * Moves the {@code Value}s of the given year to a separate table, named {@code imon_value_<year>}, and removes the year's partition.
+     *
+     * The partition is exchanged with the new table, so no {@code Value}s are copied.
+     * The archive table can subsequently be exported and dropped using the regular MySQL tools.
+     * The {@code Run}s from which the archived {@code Value}s originate are retained, as well as the rollups of the {@code Value}s.
+     *
+     * @param year  the partitioned year that is archived
+     * @return the name of the archive table
+     */
+    public String archiveYear(int year) {
+        checkPartitioned(year);
+
+        String table = "imon_value_" + year;
+        LOGGER.info("Archive the values of year <{}> to table <{}>", year, table);
+
+        execute("archive year " + year, connection -> {
+            List<String> statements = new ArrayList<>();
+            statements.add("CREATE TABLE " + table + " LIKE imon_value");
+            statements.add("ALTER TABLE " + table + " REMOVE PARTITIONING");
+            statements.add("ALTER TABLE imon_value EXCHANGE PARTITION p" + year + " WITH TABLE " + table);
+            statements.add("ALTER TABLE imon_value DROP PARTITION p" + year);
+            return statements;
+        });
+
+        return table;
+    }
+
+    /**
+     * Removes the {@code Value}s of the given year by dropping the year's partition.
+     *
+     * The {@code Run}s from which the removed {@code Value}s originate are retained, as well as the rollups of the {@code Value}s.
+     *
+     * @param year  the partitioned year that is dropped
+     */
+    public void dropYear(int year) {
+        checkPartitioned(year);
+
+        LOGGER.info("Drop the values of year <{}>", year);
+
+        execute("drop year " + year, connection -> {
+            List<String> statements = new ArrayList<>();
+            statements.add("ALTER TABLE imon_value DROP PARTITION p" + year);
+            return statements;
+        });
+    }
+
+    /**
+     * Verifies whether a separate partition exists for the given year.
+     *
+     * @param year  the year that should be partitioned
+     */
+    private void checkPartitioned(int year) {
+        if(!getPartitionYears().contains(year)) {
+            LOGGER.error("No partition exists for year <{}>", year);
+            throw new IllegalArgumentException("No partition exists for year <" + year + ">");
+        }
+    }
+
+    /**
+     * Creates the partition definitions for the given years, followed by the final partition.
+     *
+     * @param firstYear  the first year for which a partition is defined
+     * @param lastYear  the last year for which a partition is defined
+     * @return the partition definitions
+     */
+    private static String createPartitions(int firstYear, int lastYear) {
+        StringBuilder partitions = new StringBuilder();
+        for(int year = firstYear; year <= lastYear; year++) {
+            partitions.append("PARTITION p").append(year).append(" VALUES LESS THAN ('").append(year + 1).append("-01-01'), ");
+        }
+        partitions.append("PARTITION ").append(FUTURE_PARTITION).append(" VALUES LESS THAN (MAXVALUE)");
+        return partitions.toString();
+    }
+
+    /**
+     * Reads the years for which a separate partition exists.
+     *
+     * @param connection  the JDBC connection to the database
+     * @return the partitioned years in chronological order
+     * @throws SQLException  if the partitions can't be read
+     */
+    private List<Integer> readPartitionYears(Connection connection) throws SQLException {
+        List<Integer> years = new ArrayList<>();
+        try(Statement statement = connection.createStatement();
+            ResultSet results = statement.executeQuery("SELECT PARTITION_NAME FROM information_schema.PARTITIONS " +
+                    "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'imon_value' AND PARTITION_NAME IS NOT NULL ORDER BY PARTITION_ORDINAL_POSITION")) {
+            while(results.next()) {
+                String name = results.getString(1);
+                if(!FUTURE_PARTITION.equals(name)) {
+                    years.add(Integer.valueOf(name.substring(1)));
+                }
+            }
+        }
+        return years;
+    }
+
+    /**
+     * Executes the statements that are created by the given {@link StatementsWork}.
+     *
+     * Note that MySQL implicitly commits each statement that alters the partitions, so the statements can't be rolled back.
+     *
+     * @param description  a description of the operation, used in error messages
+     * @param work  creates the statements that will be executed
+     */
+    private void execute(String description, StatementsWork work) {
+        EntityManager entityManager = createEntityManager();
+
+        try {
+            entityManager.unwrap(Session.class).doWork(connection -> {
+                try(Statement statement = connection.createStatement()) {
+                    for(String sql : work.createStatements(connection)) {
+                        LOGGER.trace("Execute statement: {}", sql);
+                        statement.execute(sql);
+                    }
+                }
+            });
+        } catch(PersistenceException | HibernateException e) {
+            LOGGER.error("Unable to {}: {}", description, e.getMessage());
+            throw new IllegalStateException("Unable to " + description + ": " + e.getMessage(), e);
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Creates the SQL statements that alter the partitions.
+     */
+    @FunctionalInterface
+    private interface StatementsWork {
+
+        List<String> createStatements(Connection connection) throws SQLException;
+    }
+}
@@ -0,0 +1,97 @@
+package inspector.imondb.io;
+
+/*
+ * #%L
+ * iMonDB Core
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableMap;
+import inspector.imondb.model.Metadata;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A named query, with its result type and the types of its named parameters.
+ *
+ * The JPQL statements of the named queries are defined on the entities,
+ * so they are parsed and validated once when the {@link javax.persistence.EntityManagerFactory} is created.
+ * Use {@link IMonDBReader#getFromNamedQuery(IMonDBQuery, Map)} to execute a named query.
+ *
+ * @param <T>  the type of the query result
+ */
+public final class IMonDBQuery<T> {
+
+    /** the number of {@code Instrument}s with the given name (0 or 1) */
+    public static final IMonDBQuery<Long> INSTRUMENT_COUNT_BY_NAME = new IMonDBQuery<>(
+            "Instrument.countByName", Long.class, ImmutableMap.<String, Class<?>>of("name", String.class));
+    /** the names of all {@code Instrument}s in alphabetical order */
+    public static final IMonDBQuery<String> INSTRUMENT_NAMES = new IMonDBQuery<>(
+            "Instrument.findAllNames", String.class, Collections.emptyMap());
+    /** the number of {@code Run}s with the given name performed on the {@code Instrument} with the given name (0 or 1) */
+    public static final IMonDBQuery<Long> RUN_COUNT_BY_NAME = new IMonDBQuery<>(
+            "Run.countByName", Long.class, ImmutableMap.<String, Class<?>>of("runName", String.class, "instName", String.class));
+    /** the names of all {@code Run}s performed on the {@code Instrument} with the given name */
+    public static final IMonDBQuery<String> RUN_NAMES_BY_INSTRUMENT = new IMonDBQuery<>(
+            "Run.findNamesByInstrument", String.class, ImmutableMap.<String, Class<?>>of("instName", String.class));
+    /** all {@code Metadata} of the {@code Run}s performed on the {@code Instrument} with the given name */
+    public static final IMonDBQuery<Metadata> METADATA_BY_INSTRUMENT = new IMonDBQuery<>(
+            "Metadata.findByInstrument", Metadata.class, ImmutableMap.<String, Class<?>>of("instName", String.class));
+
+    /** default query timeout in milliseconds */
+    public static final int DEFAULT_TIMEOUT = 30000;
+
+    private final String name;
+    private final Class<T> resultClass;
+    private final Map<String, Class<?>> parameterTypes;
+
+    /**
+     * Creates an {@code IMonDBQuery} for the named query with the given name.
+     *
+     * @param name  the name of the named query as defined on the entity
+     * @param resultClass  the class type of the query result
+     * @param parameterTypes  the class type of each named parameter of the query
+     */
+    private IMonDBQuery(String name, Class<T> resultClass, Map<String, Class<?>> parameterTypes) {
+        this.name = name;
+        this.resultClass = resultClass;
+        this.parameterTypes = parameterTypes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Class<T> getResultClass() {
+        return resultClass;
+    }
+
+    /**
+     * Returns the class type of each named parameter of the query.
+     *
+     * @return an unmodifiable {@code Map} with the names of the parameters as keys and their class types as values
+     */
+    public Map<String, Class<?>> getParameterTypes() {
+        return Collections.unmodifiableMap(parameterTypes);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
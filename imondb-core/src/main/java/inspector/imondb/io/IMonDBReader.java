@@ -20,29 +20,67 @@ package inspector.imondb.io;
  * #L%
  */
 
+import inspector.imondb.io.ValueBlobCodec.ValueColumns;
 import inspector.imondb.model.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.annotations.QueryHints;
 
+import javax.persistence.EntityGraph;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.NoResultException;
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * An iMonDB input reader to read from an RDBMS.
+ *
+ * Reference data ({@link Instrument}s, {@link Property}s, and {@link CV}s) is retrieved from a second-level cache that is shared by all readers and writers using the same {@link EntityManagerFactory}.
+ * Modifications made by other applications become visible after the cached reference data expires.
  */
 public class IMonDBReader {
 
     private static final Logger LOGGER = LogManager.getLogger(IMonDBReader.class);
 
+    /** the columns that have to be selected to retrieve a {@link PropertySeries} */
+    public static final String PROPERTY_SERIES_SELECT = "SELECT val.originatingRun.sampleDate, val.min, val.q1, val.median, val.q3, val.max, val.mean, val.sd";
+    /** number of rows that are fetched from the database at once when scrolling through large results */
+    private static final int FETCH_SIZE = 1000;
+
     /** {@link EntityManagerFactory} used to set up connections to the database */
     private EntityManagerFactory emf;
 
+    /** content-addressed store for the event attachments */
+    private final AttachmentStore attachmentStore;
+    /** store for the values that are stored as blobs */
+    private final ValueBlobStore valueBlobStore;
+
     /**
      * Creates an {@code IMonDBReader} specified by the given {@link EntityManagerFactory}.
      *
@@ -51,6 +89,8 @@ public class IMonDBReader {
     public IMonDBReader(EntityManagerFactory emf) {
         if(emf != null) {
             this.emf = emf;
+            this.attachmentStore = new AttachmentStore();
+            this.valueBlobStore = new ValueBlobStore();
         } else {
             LOGGER.error("The EntityManagerFactory is not allowed to be <null>");
             throw new NullPointerException("The EntityManagerFactory is not allowed to be <null>");
@@ -80,7 +120,7 @@ public class IMonDBReader {
      * @return the {@code Instrument} specified by the given name if it is present in the database, else {@code null}
      */
     public Instrument getInstrument(String name) {
-        return getInstrument(name, false, false);
+        return getInstrument(name, InstrumentFetchPlan.summary());
     }
 
     /**
@@ -95,20 +135,55 @@ public class IMonDBReader {
      * @return the {@code Instrument} specified by the given name if it is present in the database, else {@code null}
      */
     public Instrument getInstrument(String name, boolean includeEvents, boolean includeProperties) {
-        LOGGER.debug("Retrieve instrument <{}>", name);
+        InstrumentFetchPlan plan = InstrumentFetchPlan.summary();
+        plan = includeEvents ? plan.andEvents() : plan;
+        plan = includeProperties ? plan.andProperties() : plan;
+        return getInstrument(name, plan);
+    }
+
+    /**
+     * Retrieves the {@link Instrument} specified by the given name from the database, including the associations specified by the given {@link InstrumentFetchPlan}.
+     *
+     * The {@link Event}s are retrieved together with the {@code Instrument} in a single query.
+     * The {@link Property}s are retrieved from the second-level cache if possible.
+     * The {@link Run}s in the requested time range are retrieved together with their {@link Metadata} in a single additional query.
+     *
+     * @param name  the name of the requested {@code Instrument}
+     * @param plan  the {@code InstrumentFetchPlan} specifying which associations are retrieved, not {@code null}
+     * @return the {@code Instrument} specified by the given name if it is present in the database, else {@code null}
+     */
+    public Instrument getInstrument(String name, InstrumentFetchPlan plan) {
+        if(plan == null) {
+            LOGGER.error("The fetch plan is not allowed to be <null>");
+            throw new NullPointerException("The fetch plan is not allowed to be <null>");
+        }
+
+        LOGGER.debug("Retrieve instrument <{}> using fetch plan {}", name, plan);
 
         EntityManager entityManager = createEntityManager();
 
         try {
-            TypedQuery<Instrument> query = entityManager.createQuery("SELECT inst FROM Instrument inst WHERE inst.name = :name", Instrument.class);
+            TypedQuery<Instrument> query = entityManager.createNamedQuery("Instrument.findByName", Instrument.class);
             query.setParameter("name", name);
 
+            if(plan.includesEvents()) {
+                // fetch the events in the same query, which can't be served from the query cache
+                EntityGraph<Instrument> graph = entityManager.createEntityGraph(Instrument.class);
+                graph.addAttributeNodes("events");
+                query.setHint("javax.persistence.fetchgraph", graph);
+                query.setHint(QueryHints.CACHEABLE, false);
+            }
+
             // get the instrument
             Instrument instrument = query.getSingleResult();
             LOGGER.debug("Instrument <{}> retrieved from the database", name);
 
-            // lazy-load the requested elements
-            instrument.initializeContainers(includeEvents, includeProperties);
+            // the properties are cached as a collection
+            instrument.initializeContainers(false, plan.includesProperties());
+
+            if(plan.includesRuns()) {
+                fetchRuns(instrument, plan.getRunsFrom(), plan.getRunsTo(), entityManager);
+            }
 
             return instrument;
         } catch(NoResultException e) {
@@ -119,9 +194,44 @@ public class IMonDBReader {
         }
     }
 
+    /**
+     * Initializes the {@link Run}s of the given {@link Instrument} with the {@code Run}s that were performed in the given time range, including their {@link Metadata}.
+     *
+     * @param instrument  the {@code Instrument} for which the {@code Run}s are retrieved, attached to the given {@code EntityManager} and detached afterwards
+     * @param from  the earliest sample date of the {@code Run}s (inclusive), {@code null} for no lower bound
+     * @param to  the latest sample date of the {@code Run}s (inclusive), {@code null} for no upper bound
+     * @param entityManager  the connection to the database, not {@code null}
+     */
+    private void fetchRuns(Instrument instrument, Timestamp from, Timestamp to, EntityManager entityManager) {
+        StringBuilder queryStr = new StringBuilder("SELECT DISTINCT run FROM Run run LEFT JOIN FETCH run.metadata WHERE run.instrument.id = :instId");
+        if(from != null) {
+            queryStr.append(" AND run.sampleDate >= :from");
+        }
+        if(to != null) {
+            queryStr.append(" AND run.sampleDate <= :to");
+        }
+
+        TypedQuery<Run> query = entityManager.createQuery(queryStr.toString(), Run.class);
+        query.setParameter("instId", instrument.getId());
+        if(from != null) {
+            query.setParameter("from", from);
+        }
+        if(to != null) {
+            query.setParameter("to", to);
+        }
+        List<Run> runs = query.getResultList();
+
+        // the runs are assigned explicitly, so the collection is initialized even if no runs were performed in the time range
+        entityManager.detach(instrument);
+        instrument.initializeRuns(runs);
+        LOGGER.debug("{} runs performed on instrument <{}> between <{}> and <{}> retrieved from the database", runs.size(), instrument.getName(), from, to);
+    }
+
     /**
      * Retrieves the {@link Run} specified by the given name and performed on the {@link Instrument} with the given name from the database.
      *
+     * If the {@link Value}s of the {@code Run} are stored as a blob (see {@link IMonDBBulkLoader.Mode#VALUE_BLOB}), they are decoded into regular {@code Value}s.
+     *
      * @param runName  the name of the requested {@code Run}
      * @param instrumentName  the name of the {@code Instrument} on which the {@code Run} was performed
      * @return the {@code Run} specified by the given name and performed on the given {@code Instrument} if present in the database, else {@code null}
@@ -132,7 +242,7 @@ public class IMonDBReader {
         EntityManager entityManager = createEntityManager();
 
         try {
-            TypedQuery<Run> query = entityManager.createQuery("SELECT run FROM Run run WHERE run.name = :runName AND run.instrument.name = :instName", Run.class);
+            TypedQuery<Run> query = entityManager.createNamedQuery("Run.findByName", Run.class);
             query.setParameter("runName", runName);
             query.setParameter("instName", instrumentName);
 
@@ -142,6 +252,10 @@ public class IMonDBReader {
 
             // explicitly load all values and associated properties (lazy loading)
             run.initializeContainers();
+            if(!run.getValueIterator().hasNext()) {
+                // the values might be stored as a blob instead
+                addBlobValues(run, entityManager);
+            }
 
             // explicitly load the run's instrument
             LOGGER.debug("Load the instrument on which run <{}> was performed", runName);
@@ -156,34 +270,262 @@ public class IMonDBReader {
         }
     }
 
+    /**
+     * Adds the {@link Value}s of the given {@link Run} that are stored as a blob to the {@code Run}, if present.
+     *
+     * @param run  the {@code Run} to which the {@code Value}s are added, attached to the given {@code EntityManager}
+     * @param entityManager  the connection to the database, not {@code null}
+     */
+    private void addBlobValues(Run run, EntityManager entityManager) {
+        ValueColumns columns = entityManager.unwrap(Session.class).doReturningWork(connection -> valueBlobStore.read(run.getId(), connection));
+        if(columns == null || columns.size() == 0) {
+            return;
+        }
+
+        List<Long> propertyIds = new ArrayList<>(columns.size());
+        for(int i = 0; i < columns.size(); i++) {
+            propertyIds.add(columns.getPropertyId(i));
+        }
+        Map<Long, Property> properties = new HashMap<>();
+        TypedQuery<Property> query = entityManager.createQuery("SELECT prop FROM Property prop WHERE prop.id IN :ids", Property.class);
+        query.setParameter("ids", propertyIds);
+        for(Property property : query.getResultList()) {
+            properties.put(property.getId(), property);
+        }
+
+        for(int i = 0; i < columns.size(); i++) {
+            columns.toValue(i, properties.get(columns.getPropertyId(i)), run);
+        }
+        LOGGER.debug("{} values of run <{}> decoded from the value blob", columns.size(), run.getName());
+    }
+
+    /**
+     * Retrieves a page of the {@link Run}s performed on the {@link Instrument} with the given name, in chronological order.
+     *
+     * The {@link Value}s of the {@code Run}s are not retrieved from the database (lazy loading).
+     *
+     * @param instrumentName  the name of the {@code Instrument} on which the {@code Run}s were performed
+     * @param after  the position after which the requested page starts (see {@link Page#getNextKey()}), {@code null} for the first page
+     * @param pageSize  the maximum number of {@code Run}s on the page, strictly positive
+     * @return a {@link Page} containing the {@code Run}s that were performed on the given {@code Instrument} after the given position
+     */
+    public Page<Run> getRuns(String instrumentName, PageKey after, int pageSize) {
+        LOGGER.debug("Retrieve a page of runs for instrument <{}> after <{}>", instrumentName, after);
+
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("instName", instrumentName);
+
+        return getPage("SELECT run FROM Run run JOIN FETCH run.instrument inst WHERE inst.name = :instName",
+                "run.sampleDate", "run.id", parameters, after, pageSize, Run.class,
+                run -> new PageKey(run.getSampleDate(), run.getId()));
+    }
+
+    /**
+     * Retrieves a page of the {@link Value}s for the {@link Property} with the given accession,
+     * which originate from {@link Run}s performed on the {@link Instrument} with the given name, in chronological order.
+     *
+     * The originating {@code Run} and the defining {@code Property} of the {@code Value}s are retrieved as well.
+     * The position is resolved on the sample date of the {@code Value}s, so only the partitions from that date onwards are read (see {@link IMonDBPartitionManager}).
+     * {@code Value}s that are stored as blobs (see {@link IMonDBBulkLoader.Mode#VALUE_BLOB}) are not included.
+     *
+     * @param instrumentName  the name of the {@code Instrument} on which the {@code Run}s were performed
+     * @param accession  the accession of the {@code Property}
+     * @param after  the position after which the requested page starts (see {@link Page#getNextKey()}), {@code null} for the first page
+     * @param pageSize  the maximum number of {@code Value}s on the page, strictly positive
+     * @return a {@link Page} containing the {@code Value}s for the given {@code Property} and {@code Instrument} after the given position
+     */
+    public Page<Value> getValues(String instrumentName, String accession, PageKey after, int pageSize) {
+        LOGGER.debug("Retrieve a page of values for property <{}> and instrument <{}> after <{}>", accession, instrumentName, after);
+
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("instName", instrumentName);
+        parameters.put("accession", accession);
+
+        return getPage("SELECT val FROM Value val JOIN FETCH val.originatingRun run JOIN FETCH val.definingProperty prop " +
+                        "WHERE run.instrument.name = :instName AND prop.accession = :accession",
+                "val.sampleDate", "val.id", parameters, after, pageSize, Value.class,
+                val -> new PageKey(val.getSampleDate(), val.getId()));
+    }
+
+    /**
+     * Retrieves a page of results using keyset pagination.
+     *
+     * The results are ordered by the given sample date and id, and only results positioned after the given {@link PageKey} are retrieved.
+     * In contrast to an offset, the position can be resolved using an index, so deep pages are retrieved as fast as the first page.
+     *
+     * @param queryStr  the query used to retrieve the results, including a {@code WHERE} clause and excluding the {@code ORDER BY} clause
+     * @param datePath  the path of the sample date on which the results are ordered
+     * @param idPath  the path of the id on which results with an identical sample date are ordered
+     * @param parameters  a {@code Map} of named parameters and their values
+     * @param after  the position after which the requested page starts, {@code null} for the first page
+     * @param pageSize  the maximum number of results on the page, strictly positive
+     * @param clss  the class type of the results
+     * @param keyExtractor  function to create the {@code PageKey} of a result
+     * @param <T>  the type of the results
+     * @return a {@link Page} containing the results after the given position
+     */
+    private <T> Page<T> getPage(String queryStr, String datePath, String idPath, Map<String, Object> parameters,
+                                PageKey after, int pageSize, Class<T> clss, Function<T, PageKey> keyExtractor) {
+        if(pageSize <= 0) {
+            LOGGER.error("The page size must be strictly positive");
+            throw new IllegalArgumentException("The page size must be strictly positive");
+        }
+
+        StringBuilder pageQueryStr = new StringBuilder(queryStr);
+        if(after != null) {
+            pageQueryStr.append(" AND (").append(datePath).append(" > :afterDate OR (")
+                    .append(datePath).append(" = :afterDate AND ").append(idPath).append(" > :afterId))");
+            parameters.put("afterDate", after.getSampleDate());
+            parameters.put("afterId", after.getId());
+        }
+        pageQueryStr.append(" ORDER BY ").append(datePath).append(", ").append(idPath);
+
+        EntityManager entityManager = createEntityManager();
+
+        try {
+            TypedQuery<T> query = entityManager.createQuery(pageQueryStr.toString(), clss);
+            for(Map.Entry<String, Object> entry : parameters.entrySet()) {
+                query.setParameter(entry.getKey(), entry.getValue());
+            }
+            // retrieve one additional result to determine whether a next page exists
+            query.setMaxResults(pageSize + 1);
+
+            List<T> items = query.getResultList();
+            if(items.size() > pageSize) {
+                items = items.subList(0, pageSize);
+                return new Page<>(new ArrayList<>(items), keyExtractor.apply(items.get(pageSize - 1)));
+            } else {
+                return new Page<>(items, null);
+            }
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Retrieves the attachment content of the {@link Event} that occurred on the {@link Instrument} with the given name on the given date from the database.
+     *
+     * The attachment content is not retrieved together with its {@code Event}, and has to be requested explicitly.
+     * This method holds the complete attachment content in memory, use {@link #readEventAttachmentContent(String, Timestamp, OutputStream)} for large attachments instead.
+     *
+     * @param instrumentName  the name of the {@code Instrument} on which the {@code Event} occurred
+     * @param eventDate  the date on which the {@code Event} occurred
+     * @return the binary content of the attachment of the specified {@code Event} if present in the database, else {@code null}
+     */
+    public byte[] getEventAttachmentContent(String instrumentName, Timestamp eventDate) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            return readEventAttachmentContent(instrumentName, eventDate, out) ? out.toByteArray() : null;
+        } catch(IOException e) {
+            // can't occur for a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes the attachment content of the {@link Event} that occurred on the {@link Instrument} with the given name on the given date to the given stream.
+     *
+     * The attachment content is streamed from the database, and is never held in memory as a whole.
+     *
+     * @param instrumentName  the name of the {@code Instrument} on which the {@code Event} occurred
+     * @param eventDate  the date on which the {@code Event} occurred
+     * @param out  the stream to which the attachment content is written, not {@code null}; the stream is not closed
+     * @return {@code true} if the attachment content was written to the given stream, {@code false} if the specified {@code Event} or its attachment is not present in the database
+     * @throws IOException  if the attachment content can't be written to the given stream
+     */
+    public boolean readEventAttachmentContent(String instrumentName, Timestamp eventDate, OutputStream out) throws IOException {
+        LOGGER.debug("Retrieve the attachment of event <{}> for instrument <{}>", eventDate, instrumentName);
+
+        EntityManager entityManager = createEntityManager();
+
+        try {
+            TypedQuery<Long> query = entityManager.createQuery("SELECT event.attachment.id FROM Event event WHERE event.date = :date AND event.instrument.name = :instName AND event.attachment IS NOT NULL", Long.class);
+            query.setParameter("date", eventDate);
+            query.setParameter("instName", instrumentName);
+            Long attachmentId = query.getSingleResult();
+
+            attachmentStore.read(attachmentId, out, entityManager);
+            return true;
+        } catch(NoResultException e) {
+            LOGGER.debug("No attachment found for event <{}> for instrument <{}> in the database", eventDate, instrumentName, e);
+            return false;
+        } finally {
+            entityManager.close();
+        }
+    }
+
     /**
      * Retrieves the {@link Property} specified by the given accession.
      *
+     * All {@link Value}s for the {@code Property} are retrieved as well, including their originating {@link Run}s and the {@link Instrument}s on which these were performed.
+     * {@code Value}s that are stored as blobs (see {@link IMonDBBulkLoader.Mode#VALUE_BLOB}) are not included.
+     *
      * @param accession  the accession of the requested {@code Property}
      * @return the {@code Property} specified by the given accession if found, else {@code null}
      */
     public Property getProperty(String accession) {
-        LOGGER.debug("Retrieve property <{}>", accession);
+        return getProperty(accession, null, null);
+    }
+
+    /**
+     * Retrieves the {@link Property} specified by the given accession.
+     *
+     * The {@link Value}s for the {@code Property} that originate from {@link Run}s performed within the given time range are retrieved as well,
+     * including their originating {@code Run}s and the {@link Instrument}s on which these were performed.
+     * All data is retrieved using a fixed number of queries, independent of the number of {@code Value}s.
+     * {@code Value}s that are stored as blobs (see {@link IMonDBBulkLoader.Mode#VALUE_BLOB}) are not included.
+     *
+     * @param accession  the accession of the requested {@code Property}
+     * @param from  the earliest sample date of the {@code Run}s (inclusive), {@code null} for no lower bound
+     * @param to  the latest sample date of the {@code Run}s (inclusive), {@code null} for no upper bound
+     * @return the {@code Property} specified by the given accession if found, else {@code null}
+     */
+    public Property getProperty(String accession, Timestamp from, Timestamp to) {
+        LOGGER.debug("Retrieve property <{}> with values between <{}> and <{}>", accession, from, to);
+
+        StringBuilder runRange = new StringBuilder();
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("accession", accession);
+        if(from != null) {
+            runRange.append(" AND run.sampleDate >= :from");
+            parameters.put("from", from);
+        }
+        if(to != null) {
+            runRange.append(" AND run.sampleDate <= :to");
+            parameters.put("to", to);
+        }
+        StringBuilder valueRange = new StringBuilder();
+        appendDateRange(valueRange, "run.sampleDate", "val.sampleDate", from, to, parameters);
 
         EntityManager entityManager = createEntityManager();
 
         try {
-            TypedQuery<Property> query = entityManager.createQuery("SELECT prop FROM Property prop WHERE prop.accession = :accession", Property.class);
-            query.setParameter("accession", accession);
+            // load the runs including their metadata and instrument upfront, so they don't have to be loaded individually for each value
+            TypedQuery<Run> runQuery = entityManager.createQuery("SELECT DISTINCT run FROM Run run JOIN FETCH run.instrument LEFT JOIN FETCH run.metadata " +
+                    "WHERE run.id IN (SELECT val.originatingRun.id FROM Value val WHERE val.definingProperty.accession = :accession)" + runRange, Run.class);
+            // load the property and its values, which refer to the previously loaded runs
+            TypedQuery<Property> propertyQuery = entityManager.createQuery("SELECT DISTINCT prop FROM Property prop " +
+                    "LEFT JOIN FETCH prop.propertyValues val LEFT JOIN FETCH val.originatingRun run WHERE prop.accession = :accession" + valueRange, Property.class);
+            for(Map.Entry<String, Object> entry : parameters.entrySet()) {
+                runQuery.setParameter(entry.getKey(), entry.getValue());
+                propertyQuery.setParameter(entry.getKey(), entry.getValue());
+            }
 
-            // get the property
-            Property property = query.getSingleResult();
-            LOGGER.debug("Property <{}> retrieved from the database", accession);
+            List<Run> runs = runQuery.getResultList();
+            LOGGER.debug("Load {} runs associated to a value for property <{}>", runs.size(), accession);
 
-            // explicitly retrieve all runs and instruments associated to a value for the property
-            property.initializeContainers();
-            LOGGER.debug("Load all values and associated runs for property <{}>", accession);
-            for(Iterator<Value> valIt = property.getValueIterator(); valIt.hasNext(); ) {
-                Run run = valIt.next().getOriginatingRun();
-                run.getInstrument().initializeContainers(false, false);
-                LOGGER.trace("Value and run <{}> retrieved", run.getName());
+            List<Property> result = propertyQuery.getResultList();
+            if(!result.isEmpty()) {
+                LOGGER.debug("Property <{}> retrieved from the database", accession);
+                return result.get(0);
             }
 
+            // no values in the time range
+            TypedQuery<Property> query = entityManager.createNamedQuery("Property.findByAccession", Property.class);
+            query.setParameter("accession", accession);
+            Property property = query.getSingleResult();
+            LOGGER.debug("Property <{}> without values retrieved from the database", accession);
+
             return property;
         } catch(NoResultException e) {
             LOGGER.debug("Property <{}> not found in the database", accession, e);
@@ -193,14 +535,716 @@ public class IMonDBReader {
         }
     }
 
+    /**
+     * Retrieves the summary statistics of all {@link Value}s for the {@link Property} with the given accession,
+     * which originate from {@link Run}s performed on the {@link Instrument} with the given name, in chronological order.
+     *
+     * Only the required columns are retrieved from the database, no {@code Value} entities are created.
+     * {@code Value}s that are stored as blobs (see {@link IMonDBBulkLoader.Mode#VALUE_BLOB}) are included.
+     *
+     * @param instrumentName  the name of the {@code Instrument} on which the {@code Run}s were performed
+     * @param accession  the accession of the {@code Property}
+     * @param from  the earliest sample date of the {@code Run}s (inclusive), {@code null} for no lower bound
+     * @param to  the latest sample date of the {@code Run}s (inclusive), {@code null} for no upper bound
+     * @return a {@link PropertySeries} containing the sample dates and summary statistics of the {@code Value}s
+     */
+    public PropertySeries getPropertySeries(String instrumentName, String accession, Timestamp from, Timestamp to) {
+        LOGGER.debug("Retrieve the values for property <{}> and instrument <{}>", accession, instrumentName);
+
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("instName", instrumentName);
+        parameters.put("accession", accession);
+
+        Function<EntityManager, Query> queryCreator;
+        if(from == null && to == null) {
+            // all values of the property are requested frequently, use the precompiled query
+            queryCreator = entityManager -> entityManager.createNamedQuery("Value.findPropertySeries");
+        } else {
+            StringBuilder queryStr = new StringBuilder(PROPERTY_SERIES_SELECT + " FROM Value val " +
+                    "WHERE val.originatingRun.instrument.name = :instName AND val.definingProperty.accession = :accession");
+            appendDateRange(queryStr, "val.originatingRun.sampleDate", "val.sampleDate", from, to, parameters);
+            queryStr.append(" ORDER BY val.originatingRun.sampleDate");
+            queryCreator = entityManager -> entityManager.createQuery(queryStr.toString());
+        }
+
+        EntityManager entityManager = createEntityManager();
+
+        try {
+            Map<String, PropertySeries> result = new HashMap<>();
+            result.put(accession, readPropertySeries(entityManager, queryCreator, parameters));
+
+            mergeBlobSeries(instrumentName, result, from, to, entityManager);
+            return result.get(accession);
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Retrieves the summary statistics of all {@link Value}s for each of the {@link Property}s with the given accessions,
+     * which originate from {@link Run}s performed on the {@link Instrument} with the given name, in chronological order.
+     *
+     * The {@code Value}s of all {@code Property}s are retrieved in a single query.
+     * {@code Value}s that are stored as blobs (see {@link IMonDBBulkLoader.Mode#VALUE_BLOB}) are included.
+     *
+     * @param instrumentName  the name of the {@code Instrument} on which the {@code Run}s were performed
+     * @param accessions  the accessions of the {@code Property}s, not {@code null}
+     * @param from  the earliest sample date of the {@code Run}s (inclusive), {@code null} for no lower bound
+     * @param to  the latest sample date of the {@code Run}s (inclusive), {@code null} for no upper bound
+     * @return a {@code Map} with the requested accessions as keys (in iteration order of the given accessions) and a {@link PropertySeries} of the {@code Value}s as values,
+     *         the {@code PropertySeries} is empty if no {@code Value}s are present for a {@code Property}
+     */
+    public Map<String, PropertySeries> getPropertySeries(String instrumentName, Collection<String> accessions, Timestamp from, Timestamp to) {
+        if(accessions == null) {
+            LOGGER.error("The property accessions are not allowed to be <null>");
+            throw new NullPointerException("The property accessions are not allowed to be <null>");
+        }
+
+        LOGGER.debug("Retrieve the values for {} properties and instrument <{}>", accessions.size(), instrumentName);
+
+        Map<String, PropertySeries> result = new LinkedHashMap<>();
+        for(String accession : accessions) {
+            result.put(accession, new PropertySeries());
+        }
+
+        if(!result.isEmpty()) {
+            StringBuilder queryStr = new StringBuilder("SELECT val.definingProperty.accession, " + PROPERTY_SERIES_SELECT.substring("SELECT ".length()) +
+                    " FROM Value val WHERE val.originatingRun.instrument.name = :instName AND val.definingProperty.accession IN (:accessions)");
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put("instName", instrumentName);
+            parameters.put("accessions", new ArrayList<>(result.keySet()));
+            appendDateRange(queryStr, "val.originatingRun.sampleDate", "val.sampleDate", from, to, parameters);
+            queryStr.append(" ORDER BY val.originatingRun.sampleDate");
+
+            EntityManager entityManager = createEntityManager();
+
+            try {
+                scrollRows(entityManager, em -> em.createQuery(queryStr.toString()), parameters,
+                        row -> addSeriesRow(result.get((String) row[0]), row, 1));
+
+                mergeBlobSeries(instrumentName, result, from, to, entityManager);
+            } finally {
+                entityManager.close();
+            }
+        }
+
+        result.values().forEach(PropertySeries::trim);
+        return result;
+    }
+
+    /**
+     * Merges the summary statistics of the {@link Value}s that are stored as blobs into the given {@link PropertySeries}.
+     *
+     * The blobs are only read if the {@code Instrument} has blobs in the time range, which is checked upfront using a single lookup.
+     * The blobs of all {@link Run}s in the time range are decoded in parallel (see {@link ValueBlobStore}).
+     *
+     * @param instrumentName  the name of the {@code Instrument} on which the {@code Run}s were performed
+     * @param seriesMap  the {@code PropertySeries} per accession, which are replaced by the merged {@code PropertySeries}
+     * @param from  the earliest sample date of the {@code Run}s (inclusive), {@code null} for no lower bound
+     * @param to  the latest sample date of the {@code Run}s (inclusive), {@code null} for no upper bound
+     * @param entityManager  the connection to the database, not {@code null}
+     */
+    private void mergeBlobSeries(String instrumentName, Map<String, PropertySeries> seriesMap, Timestamp from, Timestamp to, EntityManager entityManager) {
+        Map<String, PropertySeries> blobSeries = entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            StringBuilder condition = new StringBuilder(" FROM imon_value_blob valblob JOIN imon_run run ON valblob.l_imon_run_id = run.id " +
+                    "JOIN imon_instrument inst ON run.l_imon_instrument_id = inst.id WHERE inst.name = ?");
+            if(from != null) {
+                condition.append(" AND run.sampledate >= ?");
+            }
+            if(to != null) {
+                condition.append(" AND run.sampledate <= ?");
+            }
+
+            Map<String, PropertySeries> result = new HashMap<>();
+
+            // most instruments don't have any blobs
+            try(PreparedStatement existsStatement = connection.prepareStatement("SELECT EXISTS(SELECT 1" + condition + ")")) {
+                setBlobParameters(existsStatement, instrumentName, from, to);
+                try(ResultSet results = existsStatement.executeQuery()) {
+                    if(!results.next() || !results.getBoolean(1)) {
+                        return result;
+                    }
+                }
+            }
+
+            // resolve the requested properties
+            Map<Long, PropertySeries> seriesPerProperty = new HashMap<>();
+            StringBuilder propertySql = new StringBuilder("SELECT id, accession FROM imon_property WHERE accession IN (");
+            propertySql.append(String.join(", ", Collections.nCopies(seriesMap.size(), "?"))).append(")");
+            try(PreparedStatement propertyStatement = connection.prepareStatement(propertySql.toString())) {
+                int propertyIndex = 1;
+                for(String accession : seriesMap.keySet()) {
+                    propertyStatement.setString(propertyIndex++, accession);
+                }
+                try(ResultSet results = propertyStatement.executeQuery()) {
+                    while(results.next()) {
+                        PropertySeries series = new PropertySeries();
+                        seriesPerProperty.put(results.getLong(1), series);
+                        result.put(results.getString(2), series);
+                    }
+                }
+            }
+            if(seriesPerProperty.isEmpty()) {
+                return result;
+            }
+
+            try(PreparedStatement statement = connection.prepareStatement("SELECT run.l_imon_instrument_id, run.sampledate, valblob.data" + condition + " ORDER BY run.sampledate")) {
+                setBlobParameters(statement, instrumentName, from, to);
+
+                valueBlobStore.scan(statement, (instrumentId, time, columns) -> {
+                    for(Map.Entry<Long, PropertySeries> entry : seriesPerProperty.entrySet()) {
+                        int i = columns.indexOf(entry.getKey());
+                        if(i >= 0) {
+                            columns.addTo(entry.getValue(), time, i);
+                        }
+                    }
+                });
+            }
+            return result;
+        });
+
+        for(Map.Entry<String, PropertySeries> entry : blobSeries.entrySet()) {
+            if(!entry.getValue().isEmpty()) {
+                LOGGER.trace("{} values for property <{}> decoded from value blobs", entry.getValue().size(), entry.getKey());
+                seriesMap.put(entry.getKey(), PropertySeries.merge(seriesMap.get(entry.getKey()), entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Sets the instrument name and the bounds of the time range as parameters of a query on the value blobs.
+     *
+     * @param statement  the query on the value blobs
+     * @param instrumentName  the name of the {@code Instrument} on which the {@code Run}s were performed
+     * @param from  the earliest sample date of the {@code Run}s (inclusive), {@code null} for no lower bound
+     * @param to  the latest sample date of the {@code Run}s (inclusive), {@code null} for no upper bound
+     * @throws SQLException  if a parameter can't be set
+     */
+    private static void setBlobParameters(PreparedStatement statement, String instrumentName, Timestamp from, Timestamp to) throws SQLException {
+        int index = 1;
+        statement.setString(index++, instrumentName);
+        if(from != null) {
+            statement.setTimestamp(index++, from);
+        }
+        if(to != null) {
+            statement.setTimestamp(index, to);
+        }
+    }
+
+    /**
+     * Retrieves the summary statistics of the {@link Value}s for the {@link Property} with the given accession,
+     * which originate from {@link Run}s performed on the {@link Instrument} with the given name, aggregated per period.
+     *
+     * The period is chosen automatically as the smallest {@link TimeBucket} that divides the time range in at most the given number of periods.
+     * {@code Value}s that are stored as blobs (see {@link IMonDBBulkLoader.Mode#VALUE_BLOB}) are not included.
+     *
+     * @param instrumentName  the name of the {@code Instrument} on which the {@code Run}s were performed
+     * @param accession  the accession of the {@code Property}
+     * @param from  the earliest sample date of the {@code Run}s (inclusive), not {@code null}
+     * @param to  the latest sample date of the {@code Run}s (inclusive), not {@code null}
+     * @param targetPoints  the maximum number of periods, strictly positive
+     * @return an {@link AggregatedPropertySeries} containing the aggregated summary statistics per period in chronological order
+     */
+    public AggregatedPropertySeries getAggregatedPropertySeries(String instrumentName, String accession, Timestamp from, Timestamp to, int targetPoints) {
+        if(from == null || to == null) {
+            LOGGER.error("The time range is not allowed to be <null>");
+            throw new NullPointerException("The time range is not allowed to be <null>");
+        } else if(from.after(to)) {
+            LOGGER.error("The start of the time range <{}> must not be after its end <{}>", from, to);
+            throw new IllegalArgumentException("The start of the time range <" + from + "> must not be after its end <" + to + ">");
+        } else if(targetPoints <= 0) {
+            LOGGER.error("The target number of points must be strictly positive");
+            throw new IllegalArgumentException("The target number of points must be strictly positive");
+        }
+
+        return getAggregatedPropertySeries(instrumentName, accession, from, to, TimeBucket.forRange(from.getTime(), to.getTime(), targetPoints));
+    }
+
+    /**
+     * Retrieves the summary statistics of the {@link Value}s for the {@link Property} with the given accession,
+     * which originate from {@link Run}s performed on the {@link Instrument} with the given name, aggregated per period.
+     *
+     * The {@code Value}s are aggregated by the database, so only a single row per month ({@link TimeBucket#MONTH}) or per day (otherwise) is transferred.
+     * {@code Value}s that are stored as blobs (see {@link IMonDBBulkLoader.Mode#VALUE_BLOB}) are not included.
+     *
+     * @param instrumentName  the name of the {@code Instrument} on which the {@code Run}s were performed
+     * @param accession  the accession of the {@code Property}
+     * @param from  the earliest sample date of the {@code Run}s (inclusive), {@code null} for no lower bound
+     * @param to  the latest sample date of the {@code Run}s (inclusive), {@code null} for no upper bound
+     * @param bucket  the period in which the {@code Value}s are aggregated, not {@code null}
+     * @return an {@link AggregatedPropertySeries} containing the aggregated summary statistics per period in chronological order
+     */
+    public AggregatedPropertySeries getAggregatedPropertySeries(String instrumentName, String accession, Timestamp from, Timestamp to, TimeBucket bucket) {
+        if(bucket == null) {
+            LOGGER.error("The time bucket is not allowed to be <null>");
+            throw new NullPointerException("The time bucket is not allowed to be <null>");
+        }
+
+        LOGGER.debug("Retrieve the values per {} for property <{}> and instrument <{}>", bucket, accession, instrumentName);
+
+        // months can be grouped directly, days and weeks are grouped per day and combined afterwards
+        // because the definition of a week differs between databases
+        String groupBy = bucket == TimeBucket.MONTH ? "YEAR(run.sampleDate), MONTH(run.sampleDate)" :
+                "YEAR(run.sampleDate), MONTH(run.sampleDate), DAY(run.sampleDate)";
+
+        StringBuilder queryStr = new StringBuilder("SELECT MIN(run.sampleDate), COUNT(val.id), MIN(val.min), MIN(val.q1), SUM(val.median), COUNT(val.median), MAX(val.q3), MAX(val.max) " +
+                "FROM Value val JOIN val.originatingRun run " +
+                "WHERE run.instrument.name = :instName AND val.definingProperty.accession = :accession");
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("instName", instrumentName);
+        parameters.put("accession", accession);
+        appendDateRange(queryStr, "run.sampleDate", "val.sampleDate", from, to, parameters);
+        queryStr.append(" GROUP BY ").append(groupBy).append(" ORDER BY ").append(groupBy);
+
+        AggregatedPropertySeries series = new AggregatedPropertySeries(bucket);
+        scrollRows(entityManager -> entityManager.createQuery(queryStr.toString()), parameters,
+                row -> series.add(((Timestamp) row[0]).getTime(), (Long) row[1], (Double) row[2], (Double) row[3], (Double) row[4], (Long) row[5], (Double) row[6], (Double) row[7]));
+        LOGGER.trace("{} periods retrieved from the database", series.size());
+
+        series.trim();
+        return series;
+    }
+
+    /**
+     * Appends the bounds of the given time range to the {@code WHERE} clause of a query on {@link Value}s.
+     *
+     * The bounds are applied to the sample date of the originating {@link Run}s, which is used to scan the {@code Run}s in chronological order,
+     * as well as to the denormalized sample date of the {@code Value}s, so only the partitions that overlap with the time range are read
+     * if the {@code Value}s are partitioned by date (see {@link IMonDBPartitionManager}).
+     *
+     * @param queryStr  the query including a {@code WHERE} clause
+     * @param runDatePath  the path of the sample date of the {@code Run}s
+     * @param valueDatePath  the path of the sample date of the {@code Value}s
+     * @param from  the earliest sample date (inclusive), {@code null} for no lower bound
+     * @param to  the latest sample date (inclusive), {@code null} for no upper bound
+     * @param parameters  the query parameters to which the bounds are added
+     */
+    private static void appendDateRange(StringBuilder queryStr, String runDatePath, String valueDatePath, Timestamp from, Timestamp to, Map<String, Object> parameters) {
+        if(from != null) {
+            queryStr.append(" AND ").append(runDatePath).append(" >= :from AND ").append(valueDatePath).append(" >= :from");
+            parameters.put("from", from);
+        }
+        if(to != null) {
+            queryStr.append(" AND ").append(runDatePath).append(" <= :to AND ").append(valueDatePath).append(" <= :to");
+            parameters.put("to", to);
+        }
+    }
+
+    /**
+     * Retrieves the rollups of the {@link Value}s for the {@link Property} with the given accession,
+     * which originate from {@link Run}s performed on the {@link Instrument} with the given name, per period.
+     *
+     * The rollups are maintained when the {@code Run}s are written, so only a single row per period is read.
+     *
+     * @param instrumentName  the name of the {@code Instrument} on which the {@code Run}s were performed
+     * @param accession  the accession of the {@code Property}
+     * @param period  the period of the rollups, {@link TimeBucket#DAY} or {@link TimeBucket#WEEK}
+     * @param from  the earliest sample date of the {@code Run}s, the rollup of the period containing this date is included; {@code null} for no lower bound
+     * @param to  the latest sample date of the {@code Run}s (inclusive), {@code null} for no upper bound
+     * @return a {@link PropertyRollupSeries} containing the rollups in chronological order
+     */
+    public PropertyRollupSeries getPropertyRollups(String instrumentName, String accession, TimeBucket period, Timestamp from, Timestamp to) {
+        if(period == null) {
+            LOGGER.error("The rollup period is not allowed to be <null>");
+            throw new NullPointerException("The rollup period is not allowed to be <null>");
+        } else if(!RollupStore.PERIODS.contains(period)) {
+            LOGGER.error("No rollups are maintained per {}", period);
+            throw new IllegalArgumentException("No rollups are maintained per " + period);
+        }
+
+        LOGGER.debug("Retrieve the rollups per {} for property <{}> and instrument <{}>", period, accession, instrumentName);
+
+        StringBuilder queryStr = new StringBuilder("SELECT rollup.period_start, rollup.value_count, rollup.min_value, rollup.max_value, " +
+                "rollup.sum_value, rollup.sumsq_value, rollup.median_sum, rollup.median_count FROM imon_value_rollup rollup " +
+                "JOIN imon_instrument inst ON rollup.l_imon_instrument_id = inst.id JOIN imon_property prop ON rollup.l_imon_property_id = prop.id " +
+                "WHERE inst.name = :instName AND prop.accession = :accession AND rollup.period = :period");
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("instName", instrumentName);
+        parameters.put("accession", accession);
+        parameters.put("period", period.name());
+        if(from != null) {
+            queryStr.append(" AND rollup.period_start >= :from");
+            parameters.put("from", new Timestamp(period.truncate(from.getTime())));
+        }
+        if(to != null) {
+            queryStr.append(" AND rollup.period_start <= :to");
+            parameters.put("to", to);
+        }
+        queryStr.append(" ORDER BY rollup.period_start");
+
+        PropertyRollupSeries series = new PropertyRollupSeries(period);
+        scrollRows(entityManager -> entityManager.createNativeQuery(queryStr.toString()), parameters,
+                row -> series.add(((Timestamp) row[0]).getTime(), ((Number) row[1]).longValue(), (Double) row[2], (Double) row[3],
+                        (Double) row[4], (Double) row[5], (Double) row[6], ((Number) row[7]).longValue()));
+        LOGGER.trace("{} rollups retrieved from the database", series.size());
+
+        series.trim();
+        return series;
+    }
+
+    /**
+     * Retrieves the most recent {@link Value} of each {@link Property} for the {@link Instrument} with the given name.
+     *
+     * The {@code Value}s are read from a snapshot that is maintained when {@link Run}s are written, so no {@code Value}s need to be scanned.
+     *
+     * @param instrumentName  the name of the {@code Instrument}
+     * @return a {@code Map} with the {@code Property} accessions as keys (in alphabetical order) and their most recent {@link LatestValue} as values
+     */
+    public Map<String, LatestValue> getLatestValues(String instrumentName) {
+        LOGGER.debug("Retrieve the latest values for instrument <{}>", instrumentName);
+
+        String queryStr = "SELECT prop.accession, latest.run_name, latest.sampledate, latest.firstvalue, latest.n, latest.n_diffvalues, " +
+                "latest.min, latest.q1, latest.median, latest.q3, latest.max, latest.mean, latest.sd FROM imon_latest_value latest JOIN imon_instrument inst ON latest.l_imon_instrument_id = inst.id " +
+                "JOIN imon_property prop ON latest.l_imon_property_id = prop.id WHERE inst.name = :instName ORDER BY prop.accession";
+
+        Map<String, LatestValue> result = new LinkedHashMap<>();
+        scrollRows(entityManager -> entityManager.createNativeQuery(queryStr), Collections.singletonMap("instName", instrumentName),
+                row -> result.put((String) row[0], new LatestValue((String) row[0], (String) row[1], (Timestamp) row[2], (String) row[3],
+                        toInteger(row[4]), toInteger(row[5]), (Double) row[6], (Double) row[7], (Double) row[8], (Double) row[9],
+                        (Double) row[10], (Double) row[11], (Double) row[12])));
+        LOGGER.trace("{} latest values retrieved from the database", result.size());
+
+        return result;
+    }
+
+    /**
+     * Retrieves the sample date of the most recent {@link Run} of each {@link Instrument}.
+     *
+     * @return a {@code Map} with the {@code Instrument} names as keys (in alphabetical order) and the sample date of their most recent {@code Run} as values,
+     *         {@code Instrument}s without {@code Run}s are omitted
+     */
+    public Map<String, Timestamp> getLatestRunDates() {
+        LOGGER.debug("Retrieve the latest run date for all instruments");
+
+        Map<String, Timestamp> result = new LinkedHashMap<>();
+        scrollRows(entityManager -> entityManager.createNativeQuery("SELECT inst.name, latest.sampledate FROM imon_latest_run latest " +
+                "JOIN imon_instrument inst ON latest.l_imon_instrument_id = inst.id ORDER BY inst.name"), null,
+                row -> result.put((String) row[0], (Timestamp) row[1]));
+
+        return result;
+    }
+
+    private static Integer toInteger(Object value) {
+        return value != null ? ((Number) value).intValue() : null;
+    }
+
+    /**
+     * Retrieves the summary statistics of {@link Value}s by a custom JPQL query.
+     *
+     * The query has to select the sample date and the summary statistics of the {@code Value}s in the following order:
+     * {@value #PROPERTY_SERIES_SELECT}.
+     * The {@code Value}s have to be aliased as {@code val}, and should be ordered by their sample date.
+     * Parameters can be inserted in the query by making use of named parameters (see {@link #getFromCustomQuery(String, Class, Map)}).
+     *
+     * @param queryStr  the query used to retrieve the data, {@code null} returns an empty {@code PropertySeries}
+     * @param parameters  a {@code Map} of named parameters and their values
+     * @return a {@link PropertySeries} containing the sample dates and summary statistics of the {@code Value}s
+     */
+    public PropertySeries getPropertySeriesFromCustomQuery(String queryStr, Map<String, ?> parameters) {
+        if(queryStr != null) {
+            LOGGER.debug("Execute custom property series query: {}", queryStr);
+
+            EntityManager entityManager = createEntityManager();
+
+            try {
+                return readPropertySeries(entityManager, em -> em.createQuery(queryStr), parameters);
+            } finally {
+                entityManager.close();
+            }
+        } else {
+            LOGGER.debug("Unable to execute <null> query");
+            PropertySeries series = new PropertySeries();
+            series.trim();
+            return series;
+        }
+    }
+
+    /**
+     * Retrieves the summary statistics of {@link Value}s by the query created by the given function.
+     *
+     * @param entityManager  the connection to the database, not {@code null}
+     * @param queryCreator  function to create the query for the given {@link EntityManager}, see {@link #getPropertySeriesFromCustomQuery(String, Map)} for the required results
+     * @param parameters  a {@code Map} of named parameters and their values
+     * @return a {@link PropertySeries} containing the sample dates and summary statistics of the {@code Value}s
+     */
+    private PropertySeries readPropertySeries(EntityManager entityManager, Function<EntityManager, Query> queryCreator, Map<String, ?> parameters) {
+        PropertySeries series = new PropertySeries();
+        scrollRows(entityManager, queryCreator, parameters, row -> addSeriesRow(series, row, 0));
+        LOGGER.trace("{} values retrieved from the database", series.size());
+
+        series.trim();
+        return series;
+    }
+
+    /**
+     * Adds the sample date and summary statistics in the given result row to the given {@link PropertySeries}.
+     *
+     * @param series  the {@code PropertySeries} to which the row is added
+     * @param row  the result row, containing the columns of {@link #PROPERTY_SERIES_SELECT} starting at the given offset
+     * @param offset  the index of the sample date in the row
+     */
+    private static void addSeriesRow(PropertySeries series, Object[] row, int offset) {
+        series.add(((Timestamp) row[offset]).getTime(), (Double) row[offset + 1], (Double) row[offset + 2], (Double) row[offset + 3],
+                (Double) row[offset + 4], (Double) row[offset + 5], (Double) row[offset + 6], (Double) row[offset + 7]);
+    }
+
+    /**
+     * Scrolls through the results of the query created by the given function, without materializing all rows.
+     *
+     * @param queryCreator  function to create the query for the given {@link EntityManager}
+     * @param parameters  a {@code Map} of named parameters and their values
+     * @param rowConsumer  consumer that processes each result row
+     */
+    private void scrollRows(Function<EntityManager, Query> queryCreator, Map<String, ?> parameters, Consumer<Object[]> rowConsumer) {
+        EntityManager entityManager = createEntityManager();
+
+        try {
+            scrollRows(entityManager, queryCreator, parameters, rowConsumer);
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Scrolls through the results of the query created by the given function using the given {@link EntityManager}, without materializing all rows.
+     *
+     * @param entityManager  the connection to the database, not {@code null}
+     * @param queryCreator  function to create the query for the given {@code EntityManager}
+     * @param parameters  a {@code Map} of named parameters and their values
+     * @param rowConsumer  consumer that processes each result row
+     */
+    private void scrollRows(EntityManager entityManager, Function<EntityManager, Query> queryCreator, Map<String, ?> parameters, Consumer<Object[]> rowConsumer) {
+        Query query = queryCreator.apply(entityManager);
+
+        if(parameters != null) {
+            for(Map.Entry<String, ?> entry : parameters.entrySet()) {
+                LOGGER.trace("Set parameter <{}>: <{}>", entry.getKey(), entry.getValue());
+                query.setParameter(entry.getKey(), entry.getValue());
+            }
+        }
+
+        ScrollableResults results = query.unwrap(org.hibernate.Query.class).setReadOnly(true).setFetchSize(FETCH_SIZE).scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            while(results.next()) {
+                rowConsumer.accept(results.get());
+            }
+        } finally {
+            results.close();
+        }
+    }
+
+    /**
+     * Returns a {@link Stream} of arbitrary data retrieved by a custom JPQL query, using the default fetch size.
+     *
+     * See {@link #streamFromCustomQuery(String, Class, Map, int)}.
+     *
+     * @param queryStr  the query used to retrieve the data, {@code null} returns an empty {@code Stream}
+     * @param clss  the class type of the query result, {@code null} returns an empty {@code Stream}
+     * @param parameters  a {@code Map} of named parameters and their values
+     * @param <T>  the type of the requested data
+     * @return a {@code Stream} of all objects of the given type returned by the given query, which has to be closed after use
+     */
+    public <T> Stream<T> streamFromCustomQuery(String queryStr, Class<T> clss, Map<String, ?> parameters) {
+        return streamFromCustomQuery(queryStr, clss, parameters, FETCH_SIZE);
+    }
+
+    /**
+     * Returns a {@link Stream} of arbitrary data retrieved by a custom JPQL query.
+     *
+     * Contrary to {@link #getFromCustomQuery(String, Class, Map)}, the results are not all retrieved at once, but are scrolled through while the {@code Stream} is consumed.
+     * Every time a batch of {@code fetchSize} results has been consumed, the persistence context is cleared, so large results can be processed in constant memory.
+     * As a consequence, lazy associations of retrieved entities can only be accessed while processing that entity;
+     * afterwards the entities are detached.
+     * Retrieved entities are read-only, changes to them are not written to the database.
+     *
+     * Queries that select multiple items per result should request {@code Object[]} as class type.
+     * Parameters can be inserted in the query by making use of named parameters (see {@link #getFromCustomQuery(String, Class, Map)}).
+     * {@code Value}s that are stored as blobs (see {@link IMonDBBulkLoader.Mode#VALUE_BLOB}) are not visible to the query.
+     *
+     * The {@code Stream} keeps a connection to the database open, and has to be closed after use (preferably using a try-with-resources statement).
+     *
+     * @param queryStr  the query used to retrieve the data, {@code null} returns an empty {@code Stream}
+     * @param clss  the class type of the query result, {@code null} returns an empty {@code Stream}
+     * @param parameters  a {@code Map} of named parameters and their values
+     * @param fetchSize  the number of results that are retrieved from the database at once, strictly positive
+     * @param <T>  the type of the requested data
+     * @return a {@code Stream} of all objects of the given type returned by the given query, which has to be closed after use
+     */
+    public <T> Stream<T> streamFromCustomQuery(String queryStr, Class<T> clss, Map<String, ?> parameters, int fetchSize) {
+        if(fetchSize <= 0) {
+            LOGGER.error("The fetch size must be strictly positive");
+            throw new IllegalArgumentException("The fetch size must be strictly positive");
+        }
+
+        if(queryStr != null && clss != null) {
+            LOGGER.debug("Stream custom query: {}", queryStr);
+
+            EntityManager entityManager = createEntityManager();
+
+            try {
+                Query query = entityManager.createQuery(queryStr);
+
+                if(parameters != null) {
+                    for(Map.Entry<String, ?> entry : parameters.entrySet()) {
+                        LOGGER.trace("Set parameter <{}>: <{}>", entry.getKey(), entry.getValue());
+                        query.setParameter(entry.getKey(), entry.getValue());
+                    }
+                }
+
+                ScrollableResults results = query.unwrap(org.hibernate.Query.class).setReadOnly(true).setFetchSize(fetchSize).scroll(ScrollMode.FORWARD_ONLY);
+                ScrollIterator<T> iterator = new ScrollIterator<>(results, clss, entityManager, fetchSize);
+
+                return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                        .onClose(() -> {
+                            LOGGER.trace("Close the custom query stream");
+                            try {
+                                results.close();
+                            } finally {
+                                entityManager.close();
+                            }
+                        });
+            } catch(RuntimeException e) {
+                entityManager.close();
+                throw e;
+            }
+        } else {
+            LOGGER.debug("Unable to execute <null> query");
+            return Stream.empty();
+        }
+    }
+
+    /**
+     * An {@link Iterator} over {@link ScrollableResults}, which clears the persistence context after each batch of results.
+     */
+    private static class ScrollIterator<T> implements Iterator<T> {
+
+        private final ScrollableResults results;
+        private final Class<T> clss;
+        private final EntityManager entityManager;
+        private final int batchSize;
+
+        private int count;
+        private Boolean hasNext;
+
+        private ScrollIterator(ScrollableResults results, Class<T> clss, EntityManager entityManager, int batchSize) {
+            this.results = results;
+            this.clss = clss;
+            this.entityManager = entityManager;
+            this.batchSize = batchSize;
+            this.count = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if(hasNext == null) {
+                // detach the previous batch of entities before advancing
+                if(count > 0 && count % batchSize == 0) {
+                    entityManager.clear();
+                }
+                hasNext = results.next();
+            }
+            return hasNext;
+        }
+
+        @Override
+        public T next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            hasNext = null;
+            count++;
+
+            return clss.isArray() ? clss.cast(results.get()) : clss.cast(results.get(0));
+        }
+    }
+
+    /**
+     * Returns the data retrieved by the given named query, using the default query timeout and without a limit on the number of results.
+     *
+     * See {@link #getFromNamedQuery(IMonDBQuery, Map, int, int)}.
+     *
+     * @param query  the named query used to retrieve the data, not {@code null}
+     * @param parameters  a {@code Map} of named parameters and their values, {@code null} if the query doesn't have any parameters
+     * @param <T>  the type of the requested data
+     * @return a {@code List} containing all objects returned by the given query
+     */
+    public <T> List<T> getFromNamedQuery(IMonDBQuery<T> query, Map<String, ?> parameters) {
+        return getFromNamedQuery(query, parameters, 0, IMonDBQuery.DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Returns the data retrieved by the given named query.
+     *
+     * The query was parsed when the {@link EntityManagerFactory} was created, and only has to be executed.
+     * The parameters {@code Map} has to contain a value of the expected type for each parameter of the query (see {@link IMonDBQuery#getParameterTypes()}).
+     * If a parameter is missing or has a value of the wrong type, an {@link IllegalArgumentException} will be thrown.
+     *
+     * The JDBC driver only supports query timeouts in whole seconds, so the timeout is rounded up to the next second.
+     *
+     * @param query  the named query used to retrieve the data, not {@code null}
+     * @param parameters  a {@code Map} of named parameters and their values, {@code null} if the query doesn't have any parameters
+     * @param maxResults  the maximum number of results that are retrieved, 0 for no limit
+     * @param timeout  the query timeout in milliseconds, rounded up to whole seconds, 0 for no timeout
+     * @param <T>  the type of the requested data
+     * @return a {@code List} containing the objects returned by the given query
+     */
+    public <T> List<T> getFromNamedQuery(IMonDBQuery<T> query, Map<String, ?> parameters, int maxResults, int timeout) {
+        if(query == null) {
+            LOGGER.error("Unable to execute <null> named query");
+            throw new NullPointerException("Unable to execute <null> named query");
+        } else if(maxResults < 0) {
+            LOGGER.error("The maximum number of results must not be negative");
+            throw new IllegalArgumentException("The maximum number of results must not be negative");
+        } else if(timeout < 0) {
+            LOGGER.error("The query timeout must not be negative");
+            throw new IllegalArgumentException("The query timeout must not be negative");
+        }
+
+        Map<String, ?> values = parameters != null ? parameters : Collections.emptyMap();
+        if(!values.keySet().equals(query.getParameterTypes().keySet())) {
+            LOGGER.error("Invalid parameters <{}> for named query <{}>, expected <{}>", values.keySet(), query, query.getParameterTypes().keySet());
+            throw new IllegalArgumentException("Invalid parameters <" + values.keySet() + "> for named query <" + query + ">");
+        }
+        for(Map.Entry<String, Class<?>> entry : query.getParameterTypes().entrySet()) {
+            if(!entry.getValue().isInstance(values.get(entry.getKey()))) {
+                LOGGER.error("Parameter <{}> of named query <{}> must be of type <{}>", entry.getKey(), query, entry.getValue().getSimpleName());
+                throw new IllegalArgumentException("Parameter <" + entry.getKey() + "> of named query <" + query + "> must be of type <" + entry.getValue().getSimpleName() + ">");
+            }
+        }
+
+        LOGGER.debug("Execute named query <{}>", query);
+
+        EntityManager entityManager = createEntityManager();
+
+        try {
+            TypedQuery<T> typedQuery = entityManager.createNamedQuery(query.getName(), query.getResultClass());
+            for(Map.Entry<String, ?> entry : values.entrySet()) {
+                LOGGER.trace("Set parameter <{}>: <{}>", entry.getKey(), entry.getValue());
+                typedQuery.setParameter(entry.getKey(), entry.getValue());
+            }
+            if(maxResults > 0) {
+                typedQuery.setMaxResults(maxResults);
+            }
+            if(timeout > 0) {
+                // Hibernate truncates the timeout to seconds, which would disable timeouts below one second
+                int roundedTimeout = (int) Math.min((timeout + 999L) / 1000 * 1000, Integer.MAX_VALUE / 1000 * 1000);
+                typedQuery.setHint("javax.persistence.query.timeout", roundedTimeout);
+            }
+
+            return typedQuery.getResultList();
+        } finally {
+            entityManager.close();
+        }
+    }
+
     /**
      * Returns arbitrary data retrieved by a custom JPQL query.
      *
      * Use this method only for queries without any parameters.
      * To include parameters, please use the {@link #getFromCustomQuery(String, Class, Map)} method.
      *
-     * @param queryStr  the query used to retrieve the data, {@code null} returns {@code null}
-     * @param clss  the class type of the query result, {@code null} returns {@code null}
+     * @param queryStr  the query used to retrieve the data, {@code null} returns an empty {@code List}
+     * @param clss  the class type of the query result, {@code null} returns an empty {@code List}
      * @param <T>  the type of the requested data
      * @return a {@code List} containing all objects of the given type returned by the given query
      */
@@ -215,13 +1259,13 @@ public class IMonDBReader {
      * Named parameters have to be specified by their special form, preceded by a colon, in the query string.
      * The parameters {@code Map} contains for each parameter the name (without the colon prefix) and the value that will be substituted.
      *
-     * @param queryStr  the query used to retrieve the data, {@code null} returns {@code null}
-     * @param clss  the class type of the query result, {@code null} returns {@code null}
+     * @param queryStr  the query used to retrieve the data, {@code null} returns an empty {@code List}
+     * @param clss  the class type of the query result, {@code null} returns an empty {@code List}
      * @param parameters  a {@code Map} of named parameters and their values
      * @param <T>  the type of the requested data
      * @return a {@code List} containing all objects of the given type returned by the given query
      */
-    public <T> List<T> getFromCustomQuery(String queryStr, Class<T> clss, Map<String, String> parameters) {
+    public <T> List<T> getFromCustomQuery(String queryStr, Class<T> clss, Map<String, ?> parameters) {
         if(queryStr != null && clss != null) {
             LOGGER.debug("Execute custom query: {}", queryStr);
 
@@ -231,7 +1275,7 @@ public class IMonDBReader {
                 TypedQuery<T> query = entityManager.createQuery(queryStr, clss);
 
                 if(parameters != null) {
-                    for(Map.Entry<String, String> entry : parameters.entrySet()) {
+                    for(Map.Entry<String, ?> entry : parameters.entrySet()) {
                         LOGGER.trace("Set parameter <{}>: <{}>", entry.getKey(), entry.getValue());
                         query.setParameter(entry.getKey(), entry.getValue());
                     }
@@ -0,0 +1,275 @@
+package inspector.imondb.io;
+
+/*
+ * #%L
+ * iMonDB Core
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Applies the versioned schema migrations to an iMonDB database.
+ *
+ * The migration scripts are located in {@code db/migration} on the classpath, migration {@code n} upgrades the schema from version {@code n - 1} to version {@code n}.
+ * The current version of the schema is recorded in the {@code imon_schema_version} table by each migration.
+ * Databases that were created before the schema was versioned are considered to be at version 1, an empty database is at version 0.
+ *
+ * Migrations should not be applied while other iMonDB applications are writing to the database.
+ */
+public class IMonDBSchemaManager {
+
+    private static final Logger LOGGER = LogManager.getLogger(IMonDBSchemaManager.class);
+
+    /** the location of the migration scripts on the classpath */
+    private static final String MIGRATION_PATH = "/db/migration/";
+    /** the migration scripts in the order in which they are applied, the script at index {@code i} upgrades the schema to version {@code i + 1} */
+    private static final List<String> MIGRATIONS = Collections.unmodifiableList(Arrays.asList(
+            "V1__initial_schema.sql",
+            "V2__pooled_id_generators.sql",
+            "V3__event_attachments.sql",
+            "V4__attachment_store.sql",
+            "V5__run_chronological_index.sql",
+            "V6__value_rollups.sql",
+            "V7__latest_values.sql",
+            "V8__value_indexes.sql",
+            "V9__value_sample_dates.sql",
+            "V10__value_blobs.sql",
+            "V11__value_property_dates.sql",
+            "V12__latest_value_runs.sql"));
+
+    /** {@link EntityManagerFactory} used to set up connections to the database */
+    private EntityManagerFactory emf;
+
+    /**
+     * Creates an {@code IMonDBSchemaManager} specified by the given {@link EntityManagerFactory}.
+     *
+     * @param emf  the {@code EntityManagerFactory} used to set up the connection to the database, not {@code null}
+     */
+    public IMonDBSchemaManager(EntityManagerFactory emf) {
+        if(emf != null) {
+            this.emf = emf;
+        } else {
+            LOGGER.error("The EntityManagerFactory is not allowed to be <null>");
+            throw new NullPointerException("The EntityManagerFactory is not allowed to be <null>");
+        }
+    }
+
+    /**
+     * Creates an {@link EntityManager} to set up a connection to the database.
+     *
+     * @return an {@code EntityManager} to connect to the database
+     */
+    private EntityManager createEntityManager() {
+        try {
+            return emf.createEntityManager();
+        } catch(Exception e) {
+            LOGGER.error("Error while creating the EntityManager to connect to the database: {}", e.getMessage());
+            throw new IllegalStateException("Couldn't connect to the database: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the schema version that is created by applying all available migrations.
+     *
+     * @return the latest schema version
+     */
+    public int getLatestVersion() {
+        return MIGRATIONS.size();
+    }
+
+    /**
+     * Returns the current schema version of the database.
+     *
+     * @return the current schema version, 1 if the schema is not versioned yet, or 0 if the database doesn't contain an iMonDB schema
+     */
+    public int getCurrentVersion() {
+        EntityManager entityManager = createEntityManager();
+
+        try {
+            return entityManager.unwrap(Session.class).doReturningWork(this::readVersion);
+        } catch(PersistenceException | HibernateException e) {
+            LOGGER.error("Unable to retrieve the schema version: {}", e.getMessage());
+            throw new IllegalStateException("Unable to retrieve the schema version: " + e.getMessage(), e);
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Upgrades the database schema to the latest version by applying all pending migrations in order.
+     *
+     * If a migration fails, the subsequent migrations are not applied and an {@link IllegalStateException} is thrown.
+     * Because most schema changes can't be rolled back, the database might have to be restored manually in that case.
+     *
+     * @return the number of migrations that were applied
+     */
+    public int migrate() {
+        int currentVersion = getCurrentVersion();
+        if(currentVersion > getLatestVersion()) {
+            LOGGER.error("The database schema version <{}> is newer than the latest supported version <{}>", currentVersion, getLatestVersion());
+            throw new IllegalStateException("The database schema version <" + currentVersion + "> is newer than the latest supported version <" + getLatestVersion() + ">");
+        }
+
+        LOGGER.info("Upgrade the database schema from version <{}> to version <{}>", currentVersion, getLatestVersion());
+
+        for(int version = currentVersion + 1; version <= getLatestVersion(); version++) {
+            apply(version);
+        }
+
+        return getLatestVersion() - currentVersion;
+    }
+
+    /**
+     * Applies the migration that upgrades the schema to the given version.
+     *
+     * @param version  the schema version that is created by the migration
+     */
+    private void apply(int version) {
+        String script = MIGRATIONS.get(version - 1);
+        LOGGER.debug("Apply schema migration <{}>", script);
+
+        List<String> statements = readStatements(script);
+
+        EntityManager entityManager = createEntityManager();
+
+        try {
+            entityManager.getTransaction().begin();
+            int newVersion = entityManager.unwrap(Session.class).doReturningWork(connection -> {
+                try(Statement statement = connection.createStatement()) {
+                    for(String sql : statements) {
+                        LOGGER.trace("Execute statement: {}", sql);
+                        statement.execute(sql);
+                    }
+                }
+                return readVersion(connection);
+            });
+            entityManager.getTransaction().commit();
+
+            if(newVersion != version) {
+                LOGGER.error("Schema migration <{}> resulted in version <{}> instead of <{}>", script, newVersion, version);
+                throw new IllegalStateException("Schema migration <" + script + "> resulted in version <" + newVersion + "> instead of <" + version + ">");
+            }
+        } catch(PersistenceException | HibernateException e) {
+            LOGGER.error("Unable to apply schema migration <{}>: {}", script, e.getMessage());
+
+            try {
+                if(entityManager.getTransaction().isActive()) {
+                    entityManager.getTransaction().rollback();
+                }
+            } catch(PersistenceException p) {
+                LOGGER.debug("Unable to rollback: {}", p.getMessage(), p);
+            }
+
+            throw new IllegalStateException("Unable to apply schema migration <" + script + ">: " + e.getMessage(), e);
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Reads the current schema version.
+     *
+     * @param connection  the JDBC connection to the database
+     * @return the current schema version
+     * @throws SQLException  if the schema version can't be read
+     */
+    private int readVersion(Connection connection) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        DatabaseMetaData metaData = connection.getMetaData();
+        try(ResultSet results = metaData.getTables(connection.getCatalog(), null, "%", new String[] { "TABLE" })) {
+            while(results.next()) {
+                tables.add(results.getString("TABLE_NAME").toLowerCase());
+            }
+        }
+
+        if(tables.contains("imon_schema_version")) {
+            try(Statement statement = connection.createStatement();
+                ResultSet results = statement.executeQuery("SELECT MAX(version) FROM imon_schema_version")) {
+                return results.next() ? results.getInt(1) : 0;
+            }
+        } else {
+            // the original schema was not versioned
+            return tables.contains("imon_instrument") ? 1 : 0;
+        }
+    }
+
+    /**
+     * Reads the SQL statements from the given migration script.
+     *
+     * Statements are terminated by a semicolon at the end of a line, lines starting with {@code --} are comments.
+     *
+     * @param script  the name of the migration script
+     * @return the SQL statements in the migration script, without the terminating semicolon
+     */
+    private static List<String> readStatements(String script) {
+        InputStream in = IMonDBSchemaManager.class.getResourceAsStream(MIGRATION_PATH + script);
+        if(in == null) {
+            LOGGER.error("Schema migration <{}> not found", script);
+            throw new IllegalStateException("Schema migration <" + script + "> not found");
+        }
+
+        List<String> statements = new ArrayList<>();
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            StringBuilder statement = new StringBuilder();
+            String line;
+            while((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+                if(trimmed.isEmpty() || trimmed.startsWith("--")) {
+                    continue;
+                }
+
+                if(trimmed.endsWith(";")) {
+                    statement.append(trimmed, 0, trimmed.length() - 1);
+                    statements.add(statement.toString());
+                    statement.setLength(0);
+                } else {
+                    statement.append(trimmed).append('\n');
+                }
+            }
+            if(statement.length() > 0) {
+                statements.add(statement.toString().trim());
+            }
+        } catch(IOException e) {
+            LOGGER.error("Unable to read schema migration <{}>: {}", script, e.getMessage());
+            throw new IllegalStateException("Unable to read schema migration <" + script + ">: " + e.getMessage(), e);
+        }
+
+        return statements;
+    }
+}
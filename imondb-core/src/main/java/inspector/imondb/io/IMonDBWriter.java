@@ -20,28 +20,70 @@ package inspector.imondb.io;
  * #L%
  */
 
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Striped;
 import inspector.imondb.model.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import org.hibernate.Cache;
+import org.hibernate.HibernateException;
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.exception.ConstraintViolationException;
+
 import javax.persistence.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 
 /**
  * An iMonDB output writer to write to an RDBMS.
  *
- * <em>Attention:</em> This class is not thread-safe!
- * If multiple threads try to write to the same database concurrently, this must be synchronized externally.
- * (For example: most {@link Instrument}s will refer to the same {@link CV}, {@link Property}s are applicable for multiple {@link Value}s, ...)
+ * This class is thread-safe, multiple threads can use the same {@code IMonDBWriter} to write to the database concurrently.
+ * Shared reference data (for example: most {@link Instrument}s will refer to the same {@link CV}, {@link Property}s are applicable for multiple {@link Value}s, ...)
+ * is created in separate transactions, which are protected against concurrent creation of the same item by other threads or other applications.
+ *
+ * Writes are synchronized with the second-level cache of reference data that is shared by all readers and writers using the same {@link EntityManagerFactory}.
  */
 public class IMonDBWriter {
 
     private static final Logger LOGGER = LogManager.getLogger(IMonDBWriter.class);
 
+    /** maximum number of parameters in a single {@code IN} clause */
+    private static final int MAX_IN_PARAMETERS = 1000;
+    /** maximum number of attempts to store reference data that might be stored concurrently by another writer */
+    private static final int MAX_ATTEMPTS = 3;
+    /** violated unique keys on the accession of a {@link Property}, the label of a {@link CV}, or the name of an {@link Instrument}, and foreign keys referring to these tables */
+    private static final Pattern REFERENCE_CONSTRAINT = Pattern.compile(
+            "for key '(?:imon_property\\.|imon_cv\\.|imon_instrument\\.)?(?:accession|label|name)'|REFERENCES `(?:imon_property|imon_cv|imon_instrument)`");
+
     /** {@link EntityManagerFactory} used to set up connections to the database */
     private EntityManagerFactory emf;
 
+    /** cached id's of the reference data that is already present in the database */
+    private final ReferenceIdCache idCache;
+    /** locks to prevent that multiple threads create the same reference data */
+    private final Striped<Lock> referenceLocks;
+    /** content-addressed store for the event attachments */
+    private final AttachmentStore attachmentStore;
+    /** store for the rollups of the values per period */
+    private final RollupStore rollupStore;
+    /** store for the snapshot of the most recent runs and values */
+    private final LatestValueStore latestValueStore;
+
     /**
      * Creates an {@code IMonDBWriter} specified by the given {@link EntityManagerFactory}.
      *
@@ -50,6 +92,11 @@ public class IMonDBWriter {
     public IMonDBWriter(EntityManagerFactory emf) {
         if(emf != null) {
             this.emf = emf;
+            this.idCache = new ReferenceIdCache();
+            this.referenceLocks = Striped.lazyWeakLock(64);
+            this.attachmentStore = new AttachmentStore();
+            this.rollupStore = new RollupStore();
+            this.latestValueStore = new LatestValueStore();
         } else {
             LOGGER.error("The EntityManagerFactory is not allowed to be <null>");
             throw new NullPointerException("The EntityManagerFactory is not allowed to be <null>");
@@ -97,22 +144,22 @@ public class IMonDBWriter {
                     throw new IllegalArgumentException("Instrument <" + instrument.getName() + " already exists with id <" + result.get(0) + ">");
                 }
 
-                // make sure a pre-existing cv is updated
-                assignDuplicateCvId(instrument.getCv(), entityManager);
-                // make sure the pre-existing properties and corresponding cv's are retained
+                // make sure the pre-existing cv, properties and corresponding cv's are retained
                 Map<String, Property> properties = new HashMap<>();
                 for(Iterator<Property> it = instrument.getPropertyIterator(); it.hasNext(); ) {
                     Property prop = it.next();
                     properties.put(prop.getAccession(), prop);
                 }
-                if(!properties.isEmpty()) {
-                    assignDuplicatePropertyCvId(properties, entityManager);
-                }
+                assignDuplicatePropertyCvId(properties, Collections.singletonMap(instrument.getCv().getLabel(), instrument.getCv()), entityManager);
+                createMissingReferenceData(properties.values(), Collections.singletonList(instrument.getCv()));
 
                 // store this instrument
                 entityManager.getTransaction().begin();
-                entityManager.merge(instrument);
+                Instrument managedInstrument = entityManager.merge(instrument);
                 entityManager.getTransaction().commit();
+
+                idCache.putInstrumentId(managedInstrument.getName(), managedInstrument.getId());
+                idCache.putCvId(managedInstrument.getCv().getLabel(), managedInstrument.getCv().getId());
             } catch(EntityExistsException e) {
                 LOGGER.error("Unable to store instrument <{}>: {}", instrument.getName(), e.getMessage());
 
@@ -147,6 +194,13 @@ public class IMonDBWriter {
     private void assignDuplicateCvId(CV cv, EntityManager entityManager) {
         LOGGER.debug("Checking if cv <{}> is already present in the database", cv.getLabel());
 
+        Long cachedId = idCache.getCvId(cv.getLabel());
+        if(cachedId != null) {
+            LOGGER.trace("Duplicate cv <{}>: assign cached id <{}>", cv.getLabel(), cachedId);
+            cv.setId(cachedId);
+            return;
+        }
+
         // check if the cv already exists in the database
         TypedQuery<Long> cvQuery = entityManager.createQuery("SELECT cv.id FROM CV cv WHERE cv.label = :label", Long.class);
         cvQuery.setParameter("label", cv.getLabel());
@@ -157,6 +211,7 @@ public class IMonDBWriter {
         if(!result.isEmpty()) {
             LOGGER.trace("Duplicate cv <{}>: assign id <{}>", cv.getLabel(), result.get(0));
             cv.setId(result.get(0));
+            idCache.putCvId(cv.getLabel(), result.get(0));
         }
     }
 
@@ -167,6 +222,8 @@ public class IMonDBWriter {
      *
      * If the {@link Instrument} for which the {@code Event} occurred is not present in the database, an {@link IllegalStateException} will be thrown.
      *
+     * New attachment content is streamed into the database, where identical content is stored only once.
+     *
      * @param event  the {@code Event} that will be written to the database, not {@code null}
      */
     public void writeOrUpdateEvent(Event event) {
@@ -203,8 +260,10 @@ public class IMonDBWriter {
 
                 // store the new event
                 entityManager.getTransaction().begin();
-                entityManager.merge(event);
+                Map<Event, EventAttachment> storedAttachments = mergeEvents(Collections.singletonList(event), entityManager);
                 entityManager.getTransaction().commit();
+
+                storedAttachments.forEach(Event::setStoredAttachment);
             } catch(EntityExistsException e) {
                 LOGGER.error("Unable to store event <{}>: {}", event.getDate(), e.getMessage());
 
@@ -219,6 +278,10 @@ public class IMonDBWriter {
             } catch(RollbackException e) {
                 LOGGER.error("Unable to store event <{}>: {}", event.getDate(), e.getMessage());
                 throw new IllegalArgumentException("Unable to store event <" + event.getDate() + ">", e);
+            } catch(IOException | HibernateException e) {
+                LOGGER.error("Unable to store the attachment of event <{}>: {}", event.getDate(), e.getMessage());
+                rollbackIfActive(entityManager);
+                throw new IllegalArgumentException("Unable to store the attachment of event <" + event.getDate() + ">", e);
             } finally {
                 entityManager.close();
             }
@@ -228,6 +291,152 @@ public class IMonDBWriter {
         }
     }
 
+    /**
+     * Write the given {@link Event}s to the database in a single transaction.
+     *
+     * If an {@code Event} which occurred on the same {@link Instrument} at the same time was already present, the previous {@code Event} is updated to the given {@code Event}.
+     * The {@code Instrument}s and pre-existing {@code Event}s are resolved only once for the whole batch,
+     * which makes this method considerably faster than calling {@link #writeOrUpdateEvent(Event)} for each {@code Event} individually.
+     *
+     * If the {@code Instrument} for which one of the {@code Event}s occurred is not present in the database, an {@link IllegalStateException} will be thrown.
+     * If multiple {@code Event}s occurred on the same {@code Instrument} at the same time, an {@link IllegalArgumentException} will be thrown.
+     *
+     * New attachment content is streamed into the database, where identical content is stored only once.
+     *
+     * @param events  the {@code Event}s that will be written to the database, not {@code null} and not containing {@code null}
+     */
+    public void writeOrUpdateEvents(Collection<Event> events) {
+        if(events != null && !events.contains(null)) {
+            LOGGER.debug("Store {} events", events.size());
+
+            if(events.isEmpty()) {
+                return;
+            }
+
+            EntityManager entityManager = createEntityManager();
+
+            try {
+                // group the events per instrument
+                Map<String, List<Event>> instrumentEvents = new HashMap<>();
+                for(Event event : events) {
+                    instrumentEvents.computeIfAbsent(event.getInstrument().getName(), k -> new ArrayList<>()).add(event);
+                }
+
+                // cancel if an instrument is not yet in the database
+                Map<String, Long> instNameIdMap = getInstrumentIds(instrumentEvents.keySet(), entityManager);
+                for(Map.Entry<String, List<Event>> entry : instrumentEvents.entrySet()) {
+                    Long instId = instNameIdMap.get(entry.getKey());
+                    if(instId == null) {
+                        Event event = entry.getValue().get(0);
+                        LOGGER.error("Instrument <{}> for which event <{}> occurred is not in the database yet", entry.getKey(), event.getDate());
+                        throw new IllegalStateException("Instrument <" + entry.getKey() + "> for which event <" + event.getDate() + "> occurred is not in the database yet");
+                    }
+
+                    // check which events are already in the database and assign their id's
+                    Map<Timestamp, Event> dateEvents = new HashMap<>();
+                    for(Event event : entry.getValue()) {
+                        event.getInstrument().setId(instId);
+                        if(dateEvents.put(event.getDate(), event) != null) {
+                            LOGGER.error("Event <{}> for instrument <{}> is included multiple times", event.getDate(), entry.getKey());
+                            throw new IllegalArgumentException("Event <" + event.getDate() + "> for instrument <" + entry.getKey() + "> is included multiple times");
+                        }
+                    }
+                    for(List<Timestamp> dates : Lists.partition(new ArrayList<>(dateEvents.keySet()), MAX_IN_PARAMETERS)) {
+                        TypedQuery<IdDataPair> eventQuery = entityManager.createQuery("SELECT NEW inspector.imondb.io.IdDataPair(event.id, event.date) FROM Event event WHERE event.instrument.id = :instId AND event.date IN :dates", IdDataPair.class);
+                        eventQuery.setParameter("instId", instId);
+                        eventQuery.setParameter("dates", dates);
+                        for(IdDataPair eventPair : eventQuery.getResultList()) {
+                            Event event = dateEvents.get(eventPair.getData());
+                            if(event != null) {
+                                LOGGER.trace("Existing event <{}> which occurred on instrument <{}>: assign id <{}>", event.getDate(), entry.getKey(), eventPair.getId());
+                                event.setId(eventPair.getId());
+                            }
+                        }
+                    }
+                }
+
+                // store the events
+                entityManager.getTransaction().begin();
+                Map<Event, EventAttachment> storedAttachments = mergeEvents(events, entityManager);
+                entityManager.getTransaction().commit();
+
+                storedAttachments.forEach(Event::setStoredAttachment);
+            } catch(EntityExistsException e) {
+                LOGGER.error("Unable to store the events: {}", e.getMessage());
+
+                try {
+                    LOGGER.debug("Rollback because an event already exists in the database: {}", e.getMessage());
+                    entityManager.getTransaction().rollback();
+                } catch(PersistenceException p) {
+                    LOGGER.debug("Unable to rollback the events: {}", p.getMessage(), p);
+                }
+
+                throw new IllegalArgumentException("Unable to store the events", e);
+            } catch(RollbackException e) {
+                LOGGER.error("Unable to store the events: {}", e.getMessage());
+                throw new IllegalArgumentException("Unable to store the events", e);
+            } catch(IOException | HibernateException e) {
+                LOGGER.error("Unable to store the event attachments: {}", e.getMessage());
+                rollbackIfActive(entityManager);
+                throw new IllegalArgumentException("Unable to store the event attachments", e);
+            } finally {
+                entityManager.close();
+            }
+        } else {
+            LOGGER.error("Unable to store <null> events");
+            throw new NullPointerException("Unable to persist <null> events");
+        }
+    }
+
+    /**
+     * Merges the given {@link Event}s within the active transaction.
+     *
+     * New attachment content of the {@code Event}s is added to the attachment store, and the attachments the {@code Event}s previously referred to are removed if they are no longer used.
+     * Because the transaction might still fail, the stored attachments are only assigned to the managed {@code Event}s, and are returned so they can be assigned to the given {@code Event}s after the commit.
+     *
+     * @param events  the {@code Event}s that will be merged, pre-existing {@code Event}s need to have their id assigned
+     * @param entityManager  the {@code EntityManager} used to connect to the database
+     * @return the stored attachments by their {@code Event}
+     * @throws IOException  if new attachment content can't be read
+     */
+    private Map<Event, EventAttachment> mergeEvents(Collection<Event> events, EntityManager entityManager) throws IOException {
+        // retrieve the attachments that are currently used by the pre-existing events
+        List<Long> eventIds = new ArrayList<>();
+        for(Event event : events) {
+            if(event.getId() != null) {
+                eventIds.add(event.getId());
+            }
+        }
+        Set<Long> previousAttachmentIds = new HashSet<>();
+        for(List<Long> ids : Lists.partition(eventIds, MAX_IN_PARAMETERS)) {
+            TypedQuery<Long> attachmentQuery = entityManager.createQuery("SELECT event.attachment.id FROM Event event WHERE event.id IN :ids AND event.attachment IS NOT NULL", Long.class);
+            attachmentQuery.setParameter("ids", ids);
+            previousAttachmentIds.addAll(attachmentQuery.getResultList());
+        }
+
+        Map<Event, EventAttachment> storedAttachments = new IdentityHashMap<>();
+        for(Event event : events) {
+            EventAttachment storedAttachment = null;
+            try(InputStream content = event.openAttachmentContent()) {
+                if(content != null) {
+                    storedAttachment = attachmentStore.store(content, entityManager);
+                }
+            }
+
+            Event managedEvent = entityManager.merge(event);
+            if(storedAttachment != null) {
+                managedEvent.setStoredAttachment(storedAttachment);
+                storedAttachments.put(event, storedAttachment);
+            }
+        }
+
+        // clean up the attachments that were replaced
+        entityManager.flush();
+        attachmentStore.removeUnused(previousAttachmentIds, entityManager);
+
+        return storedAttachments;
+    }
+
     /**
      * Write the given {@link Run} to the database.
      *
@@ -241,71 +450,617 @@ public class IMonDBWriter {
      */
     public void writeRun(Run run) {
         if(run != null) {
-            LOGGER.debug("Store run <{}> for instrument <{}>", run.getName(), run.getInstrument().getName());
+            writeRuns(Collections.singletonList(run));
+        } else {
+            LOGGER.error("Unable to store <null> run");
+            throw new NullPointerException("Unable to persist <null> run");
+        }
+    }
+
+    /**
+     * Write the given {@link Run}s to the database in a single transaction.
+     *
+     * The {@link Instrument}s, {@link Property}s and {@link CV}s referenced by the {@code Run}s are resolved only once for the whole batch,
+     * which makes this method considerably faster than calling {@link #writeRun(Run)} for each {@code Run} individually.
+     * Either all {@code Run}s are written to the database, or none of them are.
+     *
+     * If the {@code Instrument} on which one of the {@code Run}s is performed is not present in the database, an {@link IllegalStateException} will be thrown.
+     * If a {@code Run} with the same name performed on the same {@code Instrument} was already present in the database, or is included multiple times, an {@link IllegalArgumentException} will be thrown.
+     *
+     * All child {@link Value}s and their associated {@code Property}s and {@code CV}'s will be written to the database as well.
+     * If some of these {@code Property}s or {@code CV}'s were already present in the database, they will be updated.
+     * The daily and weekly rollups of the {@code Value}s and the snapshot of the most recent {@code Value}s are updated in the same transaction.
+     *
+     * @param runs  the {@code Run}s that will be written to the database, not {@code null} and not containing {@code null}
+     */
+    public void writeRuns(Collection<Run> runs) {
+        if(runs != null && !runs.contains(null)) {
+            LOGGER.debug("Store {} runs", runs.size());
+
+            if(runs.isEmpty()) {
+                return;
+            }
 
             EntityManager entityManager = createEntityManager();
 
             try {
-                // cancel if the run's instrument is not yet in the database
-                TypedQuery<Long> instQuery = entityManager.createQuery("SELECT inst.id FROM Instrument inst WHERE inst.name = :name", Long.class);
-                instQuery.setParameter("name", run.getInstrument().getName());
-                instQuery.setMaxResults(1);    // restrict to a single result
-                List<Long> instResult = instQuery.getResultList();
-                if(instResult.isEmpty()) {
-                    LOGGER.error("Instrument <{}> for run <{}> is not in the database yet", run.getInstrument().getName(), run.getName());
-                    throw new IllegalStateException("Instrument <" + run.getInstrument().getName() + "> for run <" + run.getName() + "> is not in the database yet");
-                } else {
-                    // else, assign the correct id for the instrument and its referenced cv
-                    LOGGER.trace("Existing instrument <{}>: assign id <{}>", run.getInstrument().getName(), instResult.get(0));
-                    run.getInstrument().setId(instResult.get(0));
-                    assignDuplicateCvId(run.getInstrument().getCv(), entityManager);
-                }
+                prepareReferenceData(runs, entityManager);
 
-                // cancel if the run is already in the database
-                TypedQuery<Long> runQuery = entityManager.createQuery("SELECT run.id FROM Run run WHERE run.name = :name AND run.instrument.name = :instName", Long.class);
-                runQuery.setParameter("name", run.getName());
-                runQuery.setParameter("instName", run.getInstrument().getName());
-                runQuery.setMaxResults(1);    // restrict to a single result
-                List<Long> runResult = runQuery.getResultList();
-                if(!runResult.isEmpty()) {
-                    LOGGER.error("Run <{}> for instrument <{}> already exists with id <{}>", run.getName(), run.getInstrument().getName(), runResult.get(0));
-                    throw new IllegalArgumentException("Run <" + run.getName() + "> for instrument <" + run.getInstrument().getName() + "> already exists with id <" + runResult.get(0) + ">");
-                }
+                // store the new runs
+                entityManager.getTransaction().begin();
 
-                // make sure the pre-existing properties and corresponding cv's are retained
-                Map<String, Property> properties = new HashMap<>();
-                for(Iterator<Property> it = run.getInstrument().getPropertyIterator(); it.hasNext(); ) {
-                    Property prop = it.next();
-                    properties.put(prop.getAccession(), prop);
-                }
-                if(!properties.isEmpty()) {
-                    assignDuplicatePropertyCvId(properties, entityManager);
+                // the given runs are merged into copies, so the generated ids are only available on the copies
+                Map<Run, Long> runIds = new IdentityHashMap<>();
+                for(Run run : runs) {
+                    LOGGER.trace("Store run <{}> for instrument <{}>", run.getName(), run.getInstrument().getName());
+                    Run managedRun = entityManager.merge(run);
+                    // send the values to the database and detach them to keep the persistence context small
+                    // the properties remain managed and are reused by the next run
+                    entityManager.flush();
+                    entityManager.detach(managedRun);
+                    runIds.put(run, managedRun.getId());
                 }
 
-                // store the new run
-                entityManager.getTransaction().begin();
-                entityManager.merge(run);
+                // update the rollups and the snapshot in the same transaction as the values
+                entityManager.unwrap(Session.class).doWork(connection -> {
+                    rollupStore.add(runs, connection);
+                    latestValueStore.update(runs, runIds::get, connection);
+                });
+
                 entityManager.getTransaction().commit();
             } catch(EntityExistsException e) {
-                LOGGER.error("Unable to store run <{}>: {}", run.getName(), e.getMessage());
+                LOGGER.error("Unable to store the runs: {}", e.getMessage());
 
                 try {
-                    LOGGER.debug("Rollback because run <{}> already exists in the database: {}", run.getName(), e.getMessage());
+                    LOGGER.debug("Rollback because a run already exists in the database: {}", e.getMessage());
                     entityManager.getTransaction().rollback();
                 } catch(PersistenceException p) {
-                    LOGGER.debug("Unable to rollback for run <{}>: {}", run.getName(), p.getMessage(), p);
+                    LOGGER.debug("Unable to rollback the runs: {}", p.getMessage(), p);
                 }
 
-                throw new IllegalArgumentException("Unable to store run <" + run.getName() + ">", e);
+                throw new IllegalArgumentException("Unable to store the runs", e);
             } catch(RollbackException e) {
-                LOGGER.error("Unable to store run <{}>: {}", run.getName(), e.getMessage());
-                throw new IllegalArgumentException("Unable to store run <" + run.getName() + ">", e);
+                LOGGER.error("Unable to store the runs: {}", e.getMessage());
+                invalidateOnConstraintViolation(e);
+                throw new IllegalArgumentException("Unable to store the runs", e);
+            } catch(PersistenceException | HibernateException e) {
+                LOGGER.error("Unable to store the runs: {}", e.getMessage());
+                invalidateOnConstraintViolation(e);
+
+                try {
+                    LOGGER.debug("Rollback because the runs could not be flushed to the database: {}", e.getMessage());
+                    entityManager.getTransaction().rollback();
+                } catch(PersistenceException p) {
+                    LOGGER.debug("Unable to rollback the runs: {}", p.getMessage(), p);
+                }
+
+                throw new IllegalArgumentException("Unable to store the runs", e);
             } finally {
                 entityManager.close();
             }
         } else {
-            LOGGER.error("Unable to store <null> run");
-            throw new NullPointerException("Unable to persist <null> run");
+            LOGGER.error("Unable to store <null> runs");
+            throw new NullPointerException("Unable to persist <null> runs");
+        }
+    }
+
+    /**
+     * Insert the given new {@link Run} into the database.
+     *
+     * @param run  the {@code Run} that will be inserted into the database, not {@code null}
+     * @see #insertRuns(Collection)
+     */
+    public void insertRun(Run run) {
+        if(run != null) {
+            insertRuns(Collections.singletonList(run));
+        } else {
+            LOGGER.error("Unable to insert <null> run");
+            throw new NullPointerException("Unable to insert <null> run");
+        }
+    }
+
+    /**
+     * Insert the given new {@link Run}s into the database in a single transaction.
+     *
+     * Contrary to {@link #writeRuns(Collection)}, the {@code Run}s are inserted using a Hibernate {@link StatelessSession}.
+     * Because no persistence context is used, memory usage and commit time don't depend on the size of the {@code Run}s.
+     * As a consequence, pre-existing {@link Property}s and {@link CV}s will <em>not</em> be updated, only new items are stored in the database.
+     *
+     * If the {@link Instrument} on which one of the {@code Run}s is performed is not present in the database, an {@link IllegalStateException} will be thrown.
+     * If a {@code Run} with the same name performed on the same {@code Instrument} was already present in the database, or is included multiple times, an {@link IllegalArgumentException} will be thrown.
+     *
+     * All child {@link Value}s and {@link Metadata} will be inserted into the database as well.
+     *
+     * @param runs  the {@code Run}s that will be inserted into the database, not {@code null} and not containing {@code null}
+     */
+    public void insertRuns(Collection<Run> runs) {
+        if(runs != null && !runs.contains(null)) {
+            LOGGER.debug("Insert {} runs", runs.size());
+
+            if(runs.isEmpty()) {
+                return;
+            }
+
+            EntityManager entityManager = createEntityManager();
+            StatelessSession session = null;
+            Transaction transaction = null;
+
+            try {
+                prepareReferenceData(runs, entityManager);
+
+                session = entityManager.unwrap(Session.class).getSessionFactory().openStatelessSession();
+                transaction = session.beginTransaction();
+
+                for(Run run : runs) {
+                    LOGGER.trace("Insert run <{}> for instrument <{}>", run.getName(), run.getInstrument().getName());
+                    session.insert(run);
+                    for(Iterator<Metadata> it = run.getMetadataIterator(); it.hasNext(); ) {
+                        session.insert(it.next());
+                    }
+                    for(Iterator<Value> it = run.getValueIterator(); it.hasNext(); ) {
+                        session.insert(it.next());
+                    }
+                }
+                // update the rollups and the snapshot in the same transaction as the values
+                Connection connection = ((SessionImplementor) session).connection();
+                rollupStore.add(runs, connection);
+                latestValueStore.update(runs, connection);
+
+                transaction.commit();
+            } catch(HibernateException | SQLException e) {
+                LOGGER.error("Unable to insert the runs: {}", e.getMessage());
+                invalidateOnConstraintViolation(e);
+
+                if(transaction != null) {
+                    try {
+                        LOGGER.debug("Rollback because the runs could not be inserted into the database: {}", e.getMessage());
+                        transaction.rollback();
+                    } catch(HibernateException p) {
+                        LOGGER.debug("Unable to rollback the runs: {}", p.getMessage(), p);
+                    }
+                }
+
+                throw new IllegalArgumentException("Unable to insert the runs", e);
+            } finally {
+                if(session != null) {
+                    session.close();
+                }
+                entityManager.close();
+            }
+        } else {
+            LOGGER.error("Unable to insert <null> runs");
+            throw new NullPointerException("Unable to insert <null> runs");
+        }
+    }
+
+    /**
+     * Recomputes the rollups of the {@link Value}s per {@link Instrument}, {@link Property} and period from all {@code Value}s in the database.
+     *
+     * The rollups are maintained automatically when {@link Run}s are written.
+     * A rebuild is only required for databases that contain {@code Run}s which were written before the rollups were introduced.
+     */
+    public void rebuildRollups() {
+        LOGGER.debug("Rebuild the rollups");
+
+        EntityManager entityManager = createEntityManager();
+
+        try {
+            entityManager.getTransaction().begin();
+            entityManager.unwrap(Session.class).doWork(rollupStore::rebuild);
+            entityManager.getTransaction().commit();
+        } catch(PersistenceException | HibernateException e) {
+            LOGGER.error("Unable to rebuild the rollups: {}", e.getMessage());
+            rollbackIfActive(entityManager);
+            throw new IllegalStateException("Unable to rebuild the rollups", e);
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Prepares the reference data for the given {@link Run}s, so the {@code Run}s can subsequently be stored in the database.
+     *
+     * The database id's of the {@link Instrument}s on which the {@code Run}s were performed are assigned.
+     * New {@link Property}s and {@link CV}s are stored in the database, and the id's of pre-existing items are assigned.
+     * The {@code Property}s are assigned to the {@code Instrument}s in the database.
+     *
+     * If the {@code Instrument} on which one of the {@code Run}s is performed is not present in the database, an {@link IllegalStateException} will be thrown.
+     * If a {@code Run} is included multiple times or was already present in the database, an {@link IllegalArgumentException} will be thrown.
+     *
+     * @param runs  the {@code Run}s for which the reference data will be prepared, not {@code null}
+     * @param entityManager  the connection to the database, not {@code null}
+     */
+    void prepareReferenceData(Collection<Run> runs, EntityManager entityManager) {
+        // group the runs per instrument
+        Map<String, List<Run>> instrumentRuns = new HashMap<>();
+        for(Run run : runs) {
+            instrumentRuns.computeIfAbsent(run.getInstrument().getName(), k -> new ArrayList<>()).add(run);
+        }
+
+        // cancel if an instrument is not yet in the database
+        assignInstrumentIds(instrumentRuns, entityManager);
+
+        // cancel if a run is included multiple times or is already in the database
+        verifyUniqueRuns(instrumentRuns);
+        verifyNewRuns(instrumentRuns, entityManager);
+
+        // make sure the pre-existing properties and corresponding cv's are retained
+        Map<String, Property> properties = new HashMap<>();
+        List<Property> allProperties = new ArrayList<>();
+        for(List<Run> runList : instrumentRuns.values()) {
+            for(Iterator<Property> it = runList.get(0).getInstrument().getPropertyIterator(); it.hasNext(); ) {
+                Property prop = it.next();
+                properties.put(prop.getAccession(), prop);
+                allProperties.add(prop);
+            }
+            for(Run run : runList) {
+                for(Iterator<Value> it = run.getValueIterator(); it.hasNext(); ) {
+                    allProperties.add(it.next().getDefiningProperty());
+                }
+            }
+        }
+        assignDuplicatePropertyCvId(properties, Collections.emptyMap(), entityManager);
+
+        // new properties are stored upfront, so they are not inserted again for each subsequent run
+        createMissingReferenceData(allProperties, Collections.emptyList());
+        assignInstrumentProperties(instrumentRuns);
+    }
+
+    /**
+     * Assigns the database id's to the {@link Instrument}s on which the given {@link Run}s were performed.
+     *
+     * If an {@code Instrument} is not present in the database, an {@link IllegalStateException} will be thrown.
+     *
+     * @param instrumentRuns  a {@code Map} with the {@code Run}s per {@code Instrument} name, not {@code null}
+     * @param entityManager  the connection to the database, not {@code null}
+     */
+    private void assignInstrumentIds(Map<String, List<Run>> instrumentRuns, EntityManager entityManager) {
+        Map<String, Long> instNameIdMap = getInstrumentIds(instrumentRuns.keySet(), entityManager);
+
+        for(Map.Entry<String, List<Run>> entry : instrumentRuns.entrySet()) {
+            Long id = instNameIdMap.get(entry.getKey());
+            if(id == null) {
+                Run run = entry.getValue().get(0);
+                LOGGER.error("Instrument <{}> for run <{}> is not in the database yet", entry.getKey(), run.getName());
+                throw new IllegalStateException("Instrument <" + entry.getKey() + "> for run <" + run.getName() + "> is not in the database yet");
+            } else {
+                // assign the correct id for the instrument
+                LOGGER.trace("Existing instrument <{}>: assign id <{}>", entry.getKey(), id);
+                for(Run run : entry.getValue()) {
+                    run.getInstrument().setId(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the database id's of the {@link Instrument}s with the given names.
+     *
+     * @param names  the names of the {@code Instrument}s, not {@code null}
+     * @param entityManager  the connection to the database, not {@code null}
+     * @return a {@code Map} with the id's as values and the names as keys, {@code Instrument}s that are not present in the database are omitted
+     */
+    private Map<String, Long> getInstrumentIds(Collection<String> names, EntityManager entityManager) {
+        Map<String, Long> instNameIdMap = new HashMap<>();
+        Set<String> uncachedNames = new HashSet<>();
+        for(String name : names) {
+            Long cachedId = idCache.getInstrumentId(name);
+            if(cachedId != null) {
+                instNameIdMap.put(name, cachedId);
+            } else {
+                uncachedNames.add(name);
+            }
+        }
+
+        if(!uncachedNames.isEmpty()) {
+            TypedQuery<IdDataPair> instQuery = entityManager.createQuery("SELECT NEW inspector.imondb.io.IdDataPair(inst.id, inst.name) FROM Instrument inst WHERE inst.name IN :names", IdDataPair.class);
+            instQuery.setParameter("names", uncachedNames);
+            for(IdDataPair instPair : instQuery.getResultList()) {
+                instNameIdMap.put((String) instPair.getData(), instPair.getId());
+                idCache.putInstrumentId((String) instPair.getData(), instPair.getId());
+            }
+        }
+
+        return instNameIdMap;
+    }
+
+    /**
+     * Verifies that the given {@link Run}s don't contain multiple {@code Run}s with the same name performed on the same {@link Instrument}.
+     *
+     * If this is the case, an {@link IllegalArgumentException} will be thrown.
+     *
+     * @param instrumentRuns  a {@code Map} with the {@code Run}s per {@code Instrument} name, not {@code null}
+     */
+    private void verifyUniqueRuns(Map<String, List<Run>> instrumentRuns) {
+        for(Map.Entry<String, List<Run>> entry : instrumentRuns.entrySet()) {
+            Set<String> runNames = new HashSet<>();
+            for(Run run : entry.getValue()) {
+                if(!runNames.add(run.getName())) {
+                    LOGGER.error("Run <{}> for instrument <{}> is included multiple times", run.getName(), entry.getKey());
+                    throw new IllegalArgumentException("Run <" + run.getName() + "> for instrument <" + entry.getKey() + "> is included multiple times");
+                }
+            }
+        }
+    }
+
+    /**
+     * Verifies that none of the given {@link Run}s is already present in the database.
+     *
+     * The names of the {@code Run}s are checked using a single query per {@link Instrument}.
+     * If a {@code Run} is already present, an {@link IllegalArgumentException} will be thrown.
+     *
+     * @param instrumentRuns  a {@code Map} with the {@code Run}s per {@code Instrument} name, the {@code Instrument} id's need to be assigned, not {@code null}
+     * @param entityManager  the connection to the database, not {@code null}
+     */
+    private void verifyNewRuns(Map<String, List<Run>> instrumentRuns, EntityManager entityManager) {
+        for(Map.Entry<String, List<Run>> entry : instrumentRuns.entrySet()) {
+            List<String> runNames = new ArrayList<>(entry.getValue().size());
+            for(Run run : entry.getValue()) {
+                runNames.add(run.getName());
+            }
+
+            for(List<String> names : Lists.partition(runNames, MAX_IN_PARAMETERS)) {
+                TypedQuery<String> runQuery = entityManager.createQuery("SELECT run.name FROM Run run WHERE run.instrument.id = :id AND run.name IN :names", String.class);
+                runQuery.setParameter("id", entry.getValue().get(0).getInstrument().getId());
+                runQuery.setParameter("names", names);
+                runQuery.setMaxResults(1);
+                List<String> existing = runQuery.getResultList();
+                if(!existing.isEmpty()) {
+                    LOGGER.error("Run <{}> for instrument <{}> already exists", existing.get(0), entry.getKey());
+                    throw new IllegalArgumentException("Run <" + existing.get(0) + "> for instrument <" + entry.getKey() + "> already exists");
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores the {@link Property}s and {@link CV}s that are not present in the database yet, each in a separate transaction.
+     *
+     * The generated id's are assigned to the given {@code Property}s and {@code CV}s (including the {@code CV}s of the {@code Property}s),
+     * so subsequent merges don't result in duplicate entries.
+     * Items with the same accession or label share the same id.
+     *
+     * If another thread or application stores the same item concurrently, the id of that item is used instead.
+     *
+     * @param properties  the {@code Property}s that will be checked, not {@code null}
+     * @param cvs  the additional {@code CV}s that will be checked, not {@code null}
+     */
+    private void createMissingReferenceData(Collection<Property> properties, Collection<CV> cvs) {
+        // the cv's need to be present before the properties that refer to them can be stored
+        Map<String, List<CV>> labelCvs = new HashMap<>();
+        for(CV cv : cvs) {
+            labelCvs.computeIfAbsent(cv.getLabel(), k -> new ArrayList<>()).add(cv);
+        }
+        for(Property prop : properties) {
+            labelCvs.computeIfAbsent(prop.getCv().getLabel(), k -> new ArrayList<>()).add(prop.getCv());
+        }
+        createMissingItems(labelCvs, "cv", "SELECT cv.id FROM CV cv WHERE cv.label = :key", CV::getId, CV::setId);
+        for(List<CV> cvList : labelCvs.values()) {
+            idCache.putCvId(cvList.get(0).getLabel(), cvList.get(0).getId());
+        }
+
+        Map<String, List<Property>> accessionProperties = new HashMap<>();
+        for(Property prop : properties) {
+            accessionProperties.computeIfAbsent(prop.getAccession(), k -> new ArrayList<>()).add(prop);
+        }
+        createMissingItems(accessionProperties, "property", "SELECT prop.id FROM Property prop WHERE prop.accession = :key", Property::getId, Property::setId);
+        for(List<Property> propList : accessionProperties.values()) {
+            idCache.putPropertyId(propList.get(0).getAccession(), propList.get(0).getId());
+        }
+    }
+
+    /**
+     * Stores the items that are not present in the database yet.
+     *
+     * Items that share the same key are considered identical, if at least one of them has an id this id is assigned to all of them.
+     * Otherwise, the first item is stored and its id is assigned to all of them.
+     *
+     * @param keyItems  a {@code Map} with the items that will be checked as values and their unique key as keys, not {@code null}
+     * @param type  the name of the item type, used for logging purposes
+     * @param idQuery  the JPQL query to retrieve the id of an item with the given {@code key} parameter from the database
+     * @param idGetter  a {@code Function} to retrieve the id of an item
+     * @param idSetter  a {@code BiConsumer} to assign the id of an item
+     * @param <T>  the type of the items
+     */
+    private <T> void createMissingItems(Map<String, List<T>> keyItems, String type, String idQuery,
+                                        Function<T, Long> idGetter, BiConsumer<T, Long> idSetter) {
+        // assign known id's to all identical items
+        Set<String> missingKeys = new TreeSet<>();
+        for(Map.Entry<String, List<T>> entry : keyItems.entrySet()) {
+            Long id = null;
+            for(T item : entry.getValue()) {
+                id = id == null ? idGetter.apply(item) : id;
+            }
+            if(id != null) {
+                for(T item : entry.getValue()) {
+                    idSetter.accept(item, id);
+                }
+            } else {
+                missingKeys.add(entry.getKey());
+            }
+        }
+
+        if(missingKeys.isEmpty()) {
+            return;
+        }
+
+        // prevent that other threads try to store the same items concurrently
+        List<String> lockKeys = new ArrayList<>();
+        for(String key : missingKeys) {
+            lockKeys.add(type + ":" + key);
+        }
+        Iterable<Lock> locks = referenceLocks.bulkGet(lockKeys);
+        List<Lock> acquiredLocks = new ArrayList<>();
+        try {
+            for(Lock lock : locks) {
+                lock.lock();
+                acquiredLocks.add(lock);
+            }
+
+            for(String key : missingKeys) {
+                List<T> items = keyItems.get(key);
+                Long id = insertOrFetch(items.get(0), key, type, idQuery, idGetter);
+                for(T item : items) {
+                    idSetter.accept(item, id);
+                }
+            }
+        } finally {
+            for(Lock lock : acquiredLocks) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Stores the given item in its own transaction, unless an item with the same key is already present in the database.
+     *
+     * If the item is stored concurrently by another application, which results in a constraint violation, the attempt is retried.
+     * If the item can't be stored after {@link #MAX_ATTEMPTS} attempts, an {@link IllegalStateException} will be thrown.
+     *
+     * @param item  the item that will be stored, not {@code null}
+     * @param key  the unique key of the item
+     * @param type  the name of the item type, used for logging purposes
+     * @param idQuery  the JPQL query to retrieve the id of an item with the given {@code key} parameter from the database
+     * @param idGetter  a {@code Function} to retrieve the id of an item
+     * @param <T>  the type of the item
+     * @return the id of the item in the database
+     */
+    private <T> Long insertOrFetch(T item, String key, String type, String idQuery, Function<T, Long> idGetter) {
+        for(int attempt = 1; ; attempt++) {
+            EntityManager entityManager = createEntityManager();
+
+            try {
+                // the item might have been stored by another writer in the meantime
+                TypedQuery<Long> query = entityManager.createQuery(idQuery, Long.class);
+                query.setParameter("key", key);
+                query.setMaxResults(1);    // restrict to a single result
+                List<Long> result = query.getResultList();
+                if(!result.isEmpty()) {
+                    LOGGER.trace("Duplicate {} <{}>: assign id <{}>", type, key, result.get(0));
+                    return result.get(0);
+                }
+
+                LOGGER.trace("Store new {} <{}>", type, key);
+                entityManager.getTransaction().begin();
+                T managedItem = entityManager.merge(item);
+                entityManager.getTransaction().commit();
+
+                return idGetter.apply(managedItem);
+            } catch(PersistenceException e) {
+                rollbackIfActive(entityManager);
+
+                if(attempt < MAX_ATTEMPTS && isConstraintViolation(e)) {
+                    LOGGER.debug("Concurrent modification while storing {} <{}>; retrying...", type, key);
+                } else {
+                    LOGGER.error("Unable to store {} <{}>: {}", type, key, e.getMessage());
+                    throw new IllegalStateException("Unable to store " + type + " <" + key + ">", e);
+                }
+            } finally {
+                entityManager.close();
+            }
+        }
+    }
+
+    /**
+     * Assigns the {@link Property}s of the given {@link Run}s to the {@link Instrument}s on which they were performed, if this was not yet the case.
+     *
+     * All {@code Property}s need to be present in the database already.
+     * Each {@code Instrument} is handled in a separate transaction, which is protected against concurrent modification by other threads or other applications.
+     *
+     * @param instrumentRuns  a {@code Map} with the {@code Run}s per {@code Instrument} name, not {@code null}
+     */
+    private void assignInstrumentProperties(Map<String, List<Run>> instrumentRuns) {
+        for(Map.Entry<String, List<Run>> entry : instrumentRuns.entrySet()) {
+            Long instrumentId = entry.getValue().get(0).getInstrument().getId();
+
+            Set<Long> propertyIds = new HashSet<>();
+            for(Iterator<Property> it = entry.getValue().get(0).getInstrument().getPropertyIterator(); it.hasNext(); ) {
+                Long propertyId = it.next().getId();
+                if(!idCache.isPropertyAssigned(instrumentId, propertyId)) {
+                    propertyIds.add(propertyId);
+                }
+            }
+
+            if(!propertyIds.isEmpty()) {
+                Lock lock = referenceLocks.get("instrument:" + entry.getKey());
+                lock.lock();
+                try {
+                    insertInstrumentProperties(entry.getKey(), instrumentId, propertyIds);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts the assignments of the {@link Property}s with the given id's to the {@link Instrument} with the given id that are not yet present in the database.
+     *
+     * If the assignments are stored concurrently by another application, which results in a constraint violation, the attempt is retried.
+     * If the assignments can't be stored after {@link #MAX_ATTEMPTS} attempts, an {@link IllegalStateException} will be thrown.
+     *
+     * @param instrumentName  the name of the {@code Instrument}, used for logging purposes
+     * @param instrumentId  the id of the {@code Instrument}
+     * @param propertyIds  the id's of the {@code Property}s that are assigned to the {@code Instrument}
+     */
+    private void insertInstrumentProperties(String instrumentName, Long instrumentId, Set<Long> propertyIds) {
+        for(int attempt = 1; ; attempt++) {
+            EntityManager entityManager = createEntityManager();
+
+            try {
+                TypedQuery<Long> query = entityManager.createQuery("SELECT prop.id FROM Instrument inst JOIN inst.properties prop WHERE inst.id = :instId", Long.class);
+                query.setParameter("instId", instrumentId);
+                Set<Long> missingIds = new HashSet<>(propertyIds);
+                missingIds.removeAll(query.getResultList());
+
+                if(!missingIds.isEmpty()) {
+                    LOGGER.trace("Assign {} new properties to instrument <{}>", missingIds.size(), instrumentName);
+                    entityManager.getTransaction().begin();
+                    Query insert = entityManager.createNativeQuery("INSERT INTO imon_instrument_properties (l_imon_instrument_id, l_imon_property_id) VALUES (:instId, :propId)");
+                    // only the cached property collections of the instruments are affected, instead of the entire second-level cache
+                    insert.unwrap(SQLQuery.class).addSynchronizedQuerySpace("imon_instrument_properties");
+                    for(Long propertyId : missingIds) {
+                        insert.setParameter("instId", instrumentId);
+                        insert.setParameter("propId", propertyId);
+                        insert.executeUpdate();
+                    }
+                    entityManager.getTransaction().commit();
+
+                    // the native insert bypasses the cached property collection of this instrument
+                    emf.unwrap(SessionFactory.class).getCache().evictCollection(Instrument.class.getName() + ".properties", instrumentId);
+                }
+
+                for(Long propertyId : propertyIds) {
+                    idCache.putPropertyAssignment(instrumentId, propertyId);
+                }
+                return;
+            } catch(PersistenceException e) {
+                rollbackIfActive(entityManager);
+
+                if(attempt < MAX_ATTEMPTS && isConstraintViolation(e)) {
+                    LOGGER.debug("Concurrent modification while assigning properties to instrument <{}>; retrying...", instrumentName);
+                } else {
+                    LOGGER.error("Unable to assign the properties to instrument <{}>: {}", instrumentName, e.getMessage());
+                    throw new IllegalStateException("Unable to assign the properties to instrument <" + instrumentName + ">", e);
+                }
+            } finally {
+                entityManager.close();
+            }
+        }
+    }
+
+    /**
+     * Rolls back the active transaction of the given {@link EntityManager}, if any.
+     *
+     * @param entityManager  the connection to the database, not {@code null}
+     */
+    private void rollbackIfActive(EntityManager entityManager) {
+        try {
+            if(entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+        } catch(PersistenceException p) {
+            LOGGER.debug("Unable to rollback: {}", p.getMessage(), p);
         }
     }
 
@@ -315,24 +1070,47 @@ public class IMonDBWriter {
      * If an item is already present in the database, assign its id to the new item, so the original item (and its relationships) will be retained (but updated information will be overwritten).
      *
      * @param properties  a {@code Map} with {@code Property}s as values and their {@code accession} as keys, not {@code null}
+     * @param cvs  a {@code Map} with additional {@code CV}s as values and their {@code label} as keys, not {@code null}
      * @param entityManager  the connection to the database, not {@code null}
      */
-    private void assignDuplicatePropertyCvId(Map<String, Property> properties, EntityManager entityManager) {
+    private void assignDuplicatePropertyCvId(Map<String, Property> properties, Map<String, CV> cvs, EntityManager entityManager) {
         LOGGER.debug("Updating all properties in the database associated to the run");
 
+        // assign id's from cached entities
+        Set<String> uncachedAccessions = new HashSet<>();
+        boolean hasUncachedCv = false;
+        for(Property prop : properties.values()) {
+            if(prop.getId() == null) {
+                prop.setId(idCache.getPropertyId(prop.getAccession()));
+                if(prop.getId() == null) {
+                    uncachedAccessions.add(prop.getAccession());
+                }
+            }
+            hasUncachedCv |= assignCachedCvId(prop.getCv());
+        }
+        for(CV cv : cvs.values()) {
+            hasUncachedCv |= assignCachedCvId(cv);
+        }
+
         // get all pre-existing properties that have the same accession number
-        TypedQuery<IdDataPair> propQuery = entityManager.createQuery("SELECT NEW inspector.imondb.io.IdDataPair(prop.id, prop.accession) FROM Property prop WHERE prop.accession in :propAccessions", IdDataPair.class);
-        propQuery.setParameter("propAccessions", properties.keySet());
         Map<String, Long> propAccessionIdMap = new HashMap<>();
-        for(IdDataPair propPair : propQuery.getResultList()) {
-            propAccessionIdMap.put((String) propPair.getData(), propPair.getId());
+        if(!uncachedAccessions.isEmpty()) {
+            TypedQuery<IdDataPair> propQuery = entityManager.createQuery("SELECT NEW inspector.imondb.io.IdDataPair(prop.id, prop.accession) FROM Property prop WHERE prop.accession in :propAccessions", IdDataPair.class);
+            propQuery.setParameter("propAccessions", uncachedAccessions);
+            for(IdDataPair propPair : propQuery.getResultList()) {
+                propAccessionIdMap.put((String) propPair.getData(), propPair.getId());
+                idCache.putPropertyId((String) propPair.getData(), propPair.getId());
+            }
         }
 
         // get all pre-existing cv's (not filtered on label, but should be a low number of items)
-        TypedQuery<IdDataPair> cvQuery = entityManager.createQuery("SELECT NEW inspector.imondb.io.IdDataPair(cv.id, cv.label) FROM CV cv", IdDataPair.class);
         Map<String, Long> cvLabelIdMap = new HashMap<>();
-        for(IdDataPair cvPair : cvQuery.getResultList()) {
-            cvLabelIdMap.put((String) cvPair.getData(), cvPair.getId());
+        if(hasUncachedCv) {
+            TypedQuery<IdDataPair> cvQuery = entityManager.createQuery("SELECT NEW inspector.imondb.io.IdDataPair(cv.id, cv.label) FROM CV cv", IdDataPair.class);
+            for(IdDataPair cvPair : cvQuery.getResultList()) {
+                cvLabelIdMap.put((String) cvPair.getData(), cvPair.getId());
+                idCache.putCvId((String) cvPair.getData(), cvPair.getId());
+            }
         }
 
         // assign id's from pre-existing entities
@@ -347,6 +1125,91 @@ public class IMonDBWriter {
                 LOGGER.trace("Duplicate cv <label={}>: assign id <{}>", cv.getLabel(), cv.getId());
             }
         }
+        for(CV cv : cvs.values()) {
+            if(cv.getId() == null && cvLabelIdMap.containsKey(cv.getLabel())) {
+                cv.setId(cvLabelIdMap.get(cv.getLabel()));
+                LOGGER.trace("Duplicate cv <label={}>: assign id <{}>", cv.getLabel(), cv.getId());
+            }
+        }
+    }
+
+    /**
+     * Assigns the cached id to the given {@link CV}, if it doesn't have an id yet.
+     *
+     * @param cv  the {@code CV} that will be checked, not {@code null}
+     * @return {@code true} if the {@code CV} doesn't have an id and its id isn't cached, {@code false} otherwise
+     */
+    private boolean assignCachedCvId(CV cv) {
+        if(cv.getId() == null) {
+            cv.setId(idCache.getCvId(cv.getLabel()));
+        }
+        return cv.getId() == null;
+    }
+
+    /**
+     * Invalidates the cached reference id's if the given exception was caused by a violated constraint of the reference data.
+     *
+     * A violated unique key on the accession of a {@link Property}, the label of a {@link CV}, or the name of an {@link Instrument},
+     * or a foreign key referring to one of these items, might indicate that the cached id's are no longer in sync with the database.
+     * Violations of the keys of {@link Run}s and {@link Value}s don't affect the cached id's.
+     *
+     * @param e  the exception that occurred while writing to the database
+     */
+    private void invalidateOnConstraintViolation(Exception e) {
+        if(isReferenceConstraintViolation(e)) {
+            idCache.invalidate();
+            evictReferenceCache();
+        }
+    }
+
+    /**
+     * Evicts the {@link Instrument}s, {@link Property}s, and {@link CV}s, and the cached query results from the second-level cache.
+     *
+     * Modifications made through the {@link EntityManager} are synchronized with the second-level cache automatically,
+     * this is only required if the database content might deviate from the cache.
+     */
+    private void evictReferenceCache() {
+        LOGGER.debug("Evict the cached reference data");
+
+        Cache cache = emf.unwrap(SessionFactory.class).getCache();
+        cache.evictEntityRegion(Instrument.class);
+        cache.evictEntityRegion(Property.class);
+        cache.evictEntityRegion(CV.class);
+        cache.evictCollectionRegions();
+        cache.evictQueryRegions();
+    }
+
+    /**
+     * Checks whether the given exception was caused by a database constraint violation.
+     *
+     * @param e  the exception that occurred while writing to the database
+     * @return {@code true} if the exception was caused by a constraint violation, {@code false} otherwise
+     */
+    private boolean isConstraintViolation(Throwable e) {
+        for(Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if(cause instanceof ConstraintViolationException || cause instanceof SQLIntegrityConstraintViolationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the given exception was caused by a violated constraint of the {@link Property}s, {@link CV}s, or {@link Instrument}s.
+     *
+     * @param e  the exception that occurred while writing to the database
+     * @return {@code true} if the exception was caused by a violated constraint of the reference data, {@code false} otherwise
+     */
+    private boolean isReferenceConstraintViolation(Throwable e) {
+        for(Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if(cause instanceof ConstraintViolationException || cause instanceof SQLIntegrityConstraintViolationException) {
+                SQLException sqlException = cause instanceof ConstraintViolationException ? ((ConstraintViolationException) cause).getSQLException() : (SQLException) cause;
+                if(sqlException != null && sqlException.getMessage() != null && REFERENCE_CONSTRAINT.matcher(sqlException.getMessage()).find()) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     /**
@@ -378,11 +1241,15 @@ public class IMonDBWriter {
 
                 // make sure a pre-existing cv is updated
                 assignDuplicateCvId(property.getCv(), entityManager);
+                createMissingReferenceData(Collections.emptyList(), Collections.singletonList(property.getCv()));
 
                 // store this property
                 entityManager.getTransaction().begin();
-                entityManager.merge(property);
+                Property managedProperty = entityManager.merge(property);
                 entityManager.getTransaction().commit();
+
+                idCache.putPropertyId(managedProperty.getAccession(), managedProperty.getId());
+                idCache.putCvId(managedProperty.getCv().getLabel(), managedProperty.getCv().getId());
             } catch(EntityExistsException e) {
                 LOGGER.error("Unable to store property <{}>: {}", property.getAccession(), e.getMessage());
 
@@ -421,11 +1288,14 @@ public class IMonDBWriter {
 
             try {
                 assignDuplicateCvId(cv, entityManager);
+                createMissingReferenceData(Collections.emptyList(), Collections.singletonList(cv));
 
                 // store this cv
                 entityManager.getTransaction().begin();
-                entityManager.merge(cv);
+                CV managedCv = entityManager.merge(cv);
                 entityManager.getTransaction().commit();
+
+                idCache.putCvId(managedCv.getLabel(), managedCv.getId());
             } catch(EntityExistsException e) {
                 LOGGER.error("Unable to store cv <{}>: {}", cv.getLabel(), e.getMessage());
 
@@ -470,9 +1340,14 @@ public class IMonDBWriter {
                 query.setParameter("name", instrumentName);
                 Event event = query.getSingleResult();
 
-                // remove the event
+                // remove the event and its attachment if it isn't used by other events
                 entityManager.getTransaction().begin();
+                EventAttachment attachment = event.getStoredAttachment();
                 entityManager.remove(event);
+                if(attachment != null) {
+                    entityManager.flush();
+                    attachmentStore.removeUnused(Collections.singletonList(attachment.getId()), entityManager);
+                }
                 entityManager.getTransaction().commit();
 
             } catch(NoResultException e) {
@@ -493,4 +1368,66 @@ public class IMonDBWriter {
             throw new NullPointerException("Unable to remove <null> event");
         }
     }
+
+    /**
+     * Remove the {@link Event}s that occurred on the {@link Instrument} with the given name on the given dates from the database.
+     *
+     * The {@code Event}s and their attachments are removed using bulk deletes, without loading them first.
+     * Dates for which there is no {@code Event} in the database are ignored.
+     *
+     * @param instrumentName  the name of the {@code Instrument} on which the {@code Event}s occurred, not {@code null}
+     * @param eventDates  the dates on which the {@code Event}s occurred, not {@code null} and not containing {@code null}
+     */
+    public void removeEvents(String instrumentName, Collection<Timestamp> eventDates) {
+        if(instrumentName != null && eventDates != null && !eventDates.contains(null)) {
+            LOGGER.debug("Remove {} events for instrument <{}>", eventDates.size(), instrumentName);
+
+            if(eventDates.isEmpty()) {
+                return;
+            }
+
+            EntityManager entityManager = createEntityManager();
+
+            try {
+                Long instId = getInstrumentIds(Collections.singletonList(instrumentName), entityManager).get(instrumentName);
+                if(instId == null) {
+                    LOGGER.debug("Instrument <{}> not found in the database", instrumentName);
+                    return;
+                }
+
+                // remove the events and their attachments that aren't used by other events (bulk deletes don't cascade)
+                entityManager.getTransaction().begin();
+                int nrOfRemoved = 0;
+                for(List<Timestamp> dates : Lists.partition(new ArrayList<>(new HashSet<>(eventDates)), MAX_IN_PARAMETERS)) {
+                    TypedQuery<Long> attachmentQuery = entityManager.createQuery("SELECT DISTINCT event.attachment.id FROM Event event WHERE event.instrument.id = :instId AND event.date IN :dates AND event.attachment IS NOT NULL", Long.class);
+                    attachmentQuery.setParameter("instId", instId);
+                    attachmentQuery.setParameter("dates", dates);
+                    List<Long> attachmentIds = attachmentQuery.getResultList();
+
+                    Query delete = entityManager.createQuery("DELETE FROM Event event WHERE event.instrument.id = :instId AND event.date IN :dates");
+                    delete.setParameter("instId", instId);
+                    delete.setParameter("dates", dates);
+                    nrOfRemoved += delete.executeUpdate();
+
+                    attachmentStore.removeUnused(attachmentIds, entityManager);
+                }
+                entityManager.getTransaction().commit();
+
+                LOGGER.debug("Removed {} events for instrument <{}>", nrOfRemoved, instrumentName);
+            } catch(RollbackException e) {
+                LOGGER.error("Unable to remove the events for instrument <{}>: {}", instrumentName, e.getMessage());
+                throw new IllegalArgumentException("Unable to remove the events for instrument <" + instrumentName + ">", e);
+            } finally {
+                entityManager.close();
+            }
+        } else {
+            if(instrumentName == null) {
+                LOGGER.error("Unable to remove events with <null> instrument name");
+            }
+            if(eventDates == null || eventDates.contains(null)) {
+                LOGGER.error("Unable to remove events with <null> dates");
+            }
+            throw new NullPointerException("Unable to remove events");
+        }
+    }
 }
@@ -0,0 +1,148 @@
+package inspector.imondb.io;
+
+/*
+ * #%L
+ * iMonDB Core
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.sql.Timestamp;
+
+/**
+ * Specifies which associations are retrieved together with an {@link inspector.imondb.model.Instrument}.
+ *
+ * A fetch plan starts from one of the predefined plans, and can be extended with additional associations.
+ * For example, {@code InstrumentFetchPlan.withPropertiesOnly().andEvents()} retrieves both the {@code Property}s and the {@code Event}s of the {@code Instrument}.
+ *
+ * Associations that are not included in the fetch plan are not retrieved (lazy loading), and can't be accessed after the {@code Instrument} has been retrieved.
+ *
+ * This class is immutable.
+ */
+public class InstrumentFetchPlan {
+
+    private final boolean events;
+    private final boolean properties;
+    private final boolean runs;
+    private final Timestamp runsFrom;
+    private final Timestamp runsTo;
+
+    private InstrumentFetchPlan(boolean events, boolean properties, boolean runs, Timestamp runsFrom, Timestamp runsTo) {
+        this.events = events;
+        this.properties = properties;
+        this.runs = runs;
+        this.runsFrom = runsFrom;
+        this.runsTo = runsTo;
+    }
+
+    /**
+     * Returns a fetch plan that only retrieves the {@code Instrument} itself and its {@code CV}.
+     *
+     * @return a fetch plan without any associations
+     */
+    public static InstrumentFetchPlan summary() {
+        return new InstrumentFetchPlan(false, false, false, null, null);
+    }
+
+    /**
+     * Returns a fetch plan that retrieves the {@code Property}s that are assigned to the {@code Instrument}.
+     *
+     * @return a fetch plan including the {@code Property}s
+     */
+    public static InstrumentFetchPlan withPropertiesOnly() {
+        return summary().andProperties();
+    }
+
+    /**
+     * Returns a fetch plan that retrieves the {@code Event}s that occurred on the {@code Instrument}.
+     *
+     * The attachments of the {@code Event}s are not retrieved, and can be requested explicitly if required (see {@link IMonDBReader#readEventAttachmentContent(String, Timestamp, java.io.OutputStream)}).
+     *
+     * @return a fetch plan including the {@code Event}s
+     */
+    public static InstrumentFetchPlan withEventsNoAttachments() {
+        return summary().andEvents();
+    }
+
+    /**
+     * Returns a fetch plan that retrieves the {@code Run}s that were performed on the {@code Instrument} in the given time range, including their {@code Metadata}.
+     *
+     * The {@code Value}s of the {@code Run}s are not retrieved.
+     *
+     * @param from  the earliest sample date of the {@code Run}s (inclusive), {@code null} for no lower bound
+     * @param to  the latest sample date of the {@code Run}s (inclusive), {@code null} for no upper bound
+     * @return a fetch plan including the {@code Run}s in the given time range
+     */
+    public static InstrumentFetchPlan withRuns(Timestamp from, Timestamp to) {
+        return summary().andRuns(from, to);
+    }
+
+    /**
+     * Returns a fetch plan that retrieves the {@code Event}s in addition to the associations included in this plan.
+     *
+     * @return a new fetch plan including the {@code Event}s
+     */
+    public InstrumentFetchPlan andEvents() {
+        return new InstrumentFetchPlan(true, properties, runs, runsFrom, runsTo);
+    }
+
+    /**
+     * Returns a fetch plan that retrieves the {@code Property}s in addition to the associations included in this plan.
+     *
+     * @return a new fetch plan including the {@code Property}s
+     */
+    public InstrumentFetchPlan andProperties() {
+        return new InstrumentFetchPlan(events, true, runs, runsFrom, runsTo);
+    }
+
+    /**
+     * Returns a fetch plan that retrieves the {@code Run}s in the given time range in addition to the associations included in this plan.
+     *
+     * @param from  the earliest sample date of the {@code Run}s (inclusive), {@code null} for no lower bound
+     * @param to  the latest sample date of the {@code Run}s (inclusive), {@code null} for no upper bound
+     * @return a new fetch plan including the {@code Run}s in the given time range
+     */
+    public InstrumentFetchPlan andRuns(Timestamp from, Timestamp to) {
+        return new InstrumentFetchPlan(events, properties, true,
+                from == null ? null : new Timestamp(from.getTime()), to == null ? null : new Timestamp(to.getTime()));
+    }
+
+    public boolean includesEvents() {
+        return events;
+    }
+
+    public boolean includesProperties() {
+        return properties;
+    }
+
+    public boolean includesRuns() {
+        return runs;
+    }
+
+    public Timestamp getRunsFrom() {
+        return runsFrom == null ? null : new Timestamp(runsFrom.getTime());
+    }
+
+    public Timestamp getRunsTo() {
+        return runsTo == null ? null : new Timestamp(runsTo.getTime());
+    }
+
+    @Override
+    public String toString() {
+        return "InstrumentFetchPlan {events=" + events + ", properties=" + properties +
+                ", runs=" + runs + (runs ? " [" + runsFrom + ", " + runsTo + "]" : "") + "}";
+    }
+}
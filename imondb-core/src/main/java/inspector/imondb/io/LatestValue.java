@@ -0,0 +1,115 @@
+package inspector.imondb.io;
+
+/*
+ * #%L
+ * iMonDB Core
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.sql.Timestamp;
+
+/**
+ * The most recent {@link inspector.imondb.model.Value} of a {@link inspector.imondb.model.Property} on an {@link inspector.imondb.model.Instrument}.
+ *
+ * Besides the summary statistics of the {@code Value}, the name and sample date of its originating {@link inspector.imondb.model.Run} are included.
+ */
+public class LatestValue {
+
+    private final String accession;
+    private final String runName;
+    private final Timestamp sampleDate;
+
+    private final String firstValue;
+    private final Integer n;
+    private final Integer nDiffValues;
+    private final Double min;
+    private final Double q1;
+    private final Double median;
+    private final Double q3;
+    private final Double max;
+    private final Double mean;
+    private final Double sd;
+
+    LatestValue(String accession, String runName, Timestamp sampleDate, String firstValue, Integer n, Integer nDiffValues,
+                Double min, Double q1, Double median, Double q3, Double max, Double mean, Double sd) {
+        this.accession = accession;
+        this.runName = runName;
+        this.sampleDate = new Timestamp(sampleDate.getTime());
+        this.firstValue = firstValue;
+        this.n = n;
+        this.nDiffValues = nDiffValues;
+        this.min = min;
+        this.q1 = q1;
+        this.median = median;
+        this.q3 = q3;
+        this.max = max;
+        this.mean = mean;
+        this.sd = sd;
+    }
+
+    public String getAccession() {
+        return accession;
+    }
+
+    public String getRunName() {
+        return runName;
+    }
+
+    public Timestamp getSampleDate() {
+        return new Timestamp(sampleDate.getTime());
+    }
+
+    public String getFirstValue() {
+        return firstValue;
+    }
+
+    public Integer getN() {
+        return n;
+    }
+
+    public Integer getNDiffValues() {
+        return nDiffValues;
+    }
+
+    public Double getMin() {
+        return min;
+    }
+
+    public Double getQ1() {
+        return q1;
+    }
+
+    public Double getMedian() {
+        return median;
+    }
+
+    public Double getQ3() {
+        return q3;
+    }
+
+    public Double getMax() {
+        return max;
+    }
+
+    public Double getMean() {
+        return mean;
+    }
+
+    public Double getSd() {
+        return sd;
+    }
+}
@@ -0,0 +1,162 @@
+package inspector.imondb.io;
+
+/*
+ * #%L
+ * iMonDB Core
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import inspector.imondb.model.Run;
+import inspector.imondb.model.Value;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.*;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Store for the snapshot of the most recent {@link Run} per {@link inspector.imondb.model.Instrument}
+ * and the most recent {@link Value} per {@code Instrument} and {@link inspector.imondb.model.Property}.
+ *
+ * The snapshot is maintained when new {@code Run}s are written, so the current status of the {@code Instrument}s can be retrieved without scanning all {@code Value}s.
+ * Older {@code Run}s that are written afterwards don't affect the snapshot.
+ * Of {@code Run}s with identical sample dates, the {@code Run} with the highest id is retained.
+ *
+ * All methods operate within the transaction of the given JDBC connection.
+ */
+class LatestValueStore {
+
+    private static final Logger LOGGER = LogManager.getLogger(LatestValueStore.class);
+
+    /** the {@link Value} columns of the snapshot, in the order in which they are written */
+    private static final String VALUE_COLUMNS = "firstvalue, n, n_diffvalues, min, q1, median, q3, max, mean, sd";
+
+    /** whether the inserted row is more recent than the existing row, in which case the existing row is replaced */
+    private static final String NEWER_CONDITION = "VALUES(sampledate) > sampledate OR (VALUES(sampledate) = sampledate AND VALUES(l_imon_run_id) > l_imon_run_id)";
+
+    /** replaces the most recent run of an instrument if the given run is more recent */
+    private static final String RUN_UPSERT_SQL = "INSERT INTO imon_latest_run (l_imon_instrument_id, l_imon_run_id, run_name, sampledate) VALUES (?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE " + replaceIfNewer("run_name") + ", " + replaceIfNewer("l_imon_run_id") + ", sampledate = GREATEST(sampledate, VALUES(sampledate))";
+
+    /** replaces the most recent value of a property if the given value is more recent */
+    private static final String VALUE_UPSERT_SQL = createValueUpsertSql();
+
+    private static String createValueUpsertSql() {
+        StringBuilder sql = new StringBuilder("INSERT INTO imon_latest_value (l_imon_instrument_id, l_imon_property_id, l_imon_run_id, run_name, sampledate, " + VALUE_COLUMNS + ") " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE " + replaceIfNewer("run_name"));
+        for(String column : VALUE_COLUMNS.split(", ")) {
+            sql.append(", ").append(replaceIfNewer(column));
+        }
+        // the run id and sample date are updated last, because MySQL uses the updated values in subsequent assignments
+        sql.append(", ").append(replaceIfNewer("l_imon_run_id"));
+        sql.append(", sampledate = GREATEST(sampledate, VALUES(sampledate))");
+        return sql.toString();
+    }
+
+    private static String replaceIfNewer(String column) {
+        return column + " = CASE WHEN " + NEWER_CONDITION + " THEN VALUES(" + column + ") ELSE " + column + " END";
+    }
+
+    /**
+     * Updates the snapshot with the given {@link Run}s and their {@link Value}s if they are more recent.
+     *
+     * @param runs  the {@code Run}s that are written in the current transaction, the {@code Run}s, {@code Instrument}s and {@code Property}s need to have an id
+     * @param connection  the JDBC connection with an active transaction
+     * @throws SQLException  if the snapshot can't be updated
+     */
+    public void update(Collection<Run> runs, Connection connection) throws SQLException {
+        update(runs, Run::getId, connection);
+    }
+
+    /**
+     * Updates the snapshot with the given {@link Run}s and their {@link Value}s if they are more recent.
+     *
+     * @param runs  the {@code Run}s that are written in the current transaction, the {@code Instrument}s and {@code Property}s need to have an id
+     * @param runIds  provides the id under which each {@code Run} is stored
+     * @param connection  the JDBC connection with an active transaction
+     * @throws SQLException  if the snapshot can't be updated
+     */
+    public void update(Collection<Run> runs, Function<Run, Long> runIds, Connection connection) throws SQLException {
+        // only the most recent run per instrument and value per property are relevant
+        // the entries are sorted to write them in a fixed order, which prevents deadlocks between concurrent writers
+        SortedMap<Long, Run> latestRuns = new TreeMap<>();
+        SortedMap<Long, SortedMap<Long, Value>> latestValues = new TreeMap<>();
+        for(Run run : runs) {
+            Long instrumentId = run.getInstrument().getId();
+            latestRuns.merge(instrumentId, run, (a, b) -> mostRecent(a, b, runIds));
+            SortedMap<Long, Value> instrumentValues = latestValues.computeIfAbsent(instrumentId, k -> new TreeMap<>());
+            for(Iterator<Value> it = run.getValueIterator(); it.hasNext(); ) {
+                Value value = it.next();
+                instrumentValues.merge(value.getDefiningProperty().getId(), value,
+                        (a, b) -> mostRecent(a.getOriginatingRun(), b.getOriginatingRun(), runIds) == a.getOriginatingRun() ? a : b);
+            }
+        }
+
+        try(PreparedStatement statement = connection.prepareStatement(RUN_UPSERT_SQL)) {
+            for(Map.Entry<Long, Run> entry : latestRuns.entrySet()) {
+                statement.setLong(1, entry.getKey());
+                statement.setLong(2, runIds.apply(entry.getValue()));
+                statement.setString(3, entry.getValue().getName());
+                statement.setTimestamp(4, entry.getValue().getSampleDate());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+
+        int nrOfValues = 0;
+        try(PreparedStatement statement = connection.prepareStatement(VALUE_UPSERT_SQL)) {
+            for(Map.Entry<Long, SortedMap<Long, Value>> instrumentEntry : latestValues.entrySet()) {
+                for(Map.Entry<Long, Value> entry : instrumentEntry.getValue().entrySet()) {
+                    Value value = entry.getValue();
+                    statement.setLong(1, instrumentEntry.getKey());
+                    statement.setLong(2, entry.getKey());
+                    statement.setLong(3, runIds.apply(value.getOriginatingRun()));
+                    statement.setString(4, value.getOriginatingRun().getName());
+                    statement.setTimestamp(5, value.getOriginatingRun().getSampleDate());
+                    statement.setString(6, value.getFirstValue());
+                    statement.setObject(7, value.getN(), Types.INTEGER);
+                    statement.setObject(8, value.getNDiffValues(), Types.INTEGER);
+                    statement.setObject(9, value.getMin(), Types.DOUBLE);
+                    statement.setObject(10, value.getQ1(), Types.DOUBLE);
+                    statement.setObject(11, value.getMedian(), Types.DOUBLE);
+                    statement.setObject(12, value.getQ3(), Types.DOUBLE);
+                    statement.setObject(13, value.getMax(), Types.DOUBLE);
+                    statement.setObject(14, value.getMean(), Types.DOUBLE);
+                    statement.setObject(15, value.getSd(), Types.DOUBLE);
+                    statement.addBatch();
+                    nrOfValues++;
+                }
+            }
+            if(nrOfValues > 0) {
+                statement.executeBatch();
+            }
+        }
+
+        LOGGER.trace("Updated the snapshot for {} instruments and {} values", latestRuns.size(), nrOfValues);
+    }
+
+    /**
+     * Returns the most recent of the given {@link Run}s, or the one with the highest id if both have the same sample date.
+     */
+    private static Run mostRecent(Run a, Run b, Function<Run, Long> runIds) {
+        if(b.getSampleDate().equals(a.getSampleDate())) {
+            return runIds.apply(b) > runIds.apply(a) ? b : a;
+        }
+        return b.getSampleDate().after(a.getSampleDate()) ? b : a;
+    }
+}
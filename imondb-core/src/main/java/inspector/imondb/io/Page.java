@@ -0,0 +1,72 @@
+package inspector.imondb.io;
+
+/*
+ * #%L
+ * iMonDB Core
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single page of chronologically ordered results.
+ *
+ * The next page can be retrieved by passing the {@link PageKey} returned by {@link #getNextKey()} to the method that retrieved this page.
+ * Pages are delimited by the position of their last result instead of by an offset,
+ * so retrieving a page is equally fast regardless of its depth.
+ *
+ * @param <T>  the type of the results
+ */
+public class Page<T> {
+
+    private final List<T> items;
+    private final PageKey nextKey;
+
+    /**
+     * Creates a {@code Page} with the given results.
+     *
+     * @param items  the results on this page
+     * @param nextKey  the position after which the next page starts, {@code null} if this is the last page
+     */
+    Page(List<T> items, PageKey nextKey) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextKey = nextKey;
+    }
+
+    /**
+     * Returns the results on this page.
+     *
+     * @return an unmodifiable {@code List} of the results on this page
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * Returns the position after which the next page starts.
+     *
+     * @return the {@code PageKey} to retrieve the next page, {@code null} if this is the last page
+     */
+    public PageKey getNextKey() {
+        return nextKey;
+    }
+
+    public boolean hasNext() {
+        return nextKey != null;
+    }
+}
@@ -0,0 +1,79 @@
+package inspector.imondb.io;
+
+/*
+ * #%L
+ * iMonDB Core
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.sql.Timestamp;
+import java.util.Objects;
+
+/**
+ * The position after which the next {@link Page} of chronologically ordered results starts.
+ *
+ * Results are ordered by the sample date of their {@link inspector.imondb.model.Run} and subsequently by their id,
+ * so each result is uniquely identified by its position in the ordering.
+ */
+public class PageKey {
+
+    private final Timestamp sampleDate;
+    private final long id;
+
+    /**
+     * Creates a {@code PageKey} positioned at the result with the given sample date and id.
+     *
+     * @param sampleDate  the sample date of the last result of the previous page, not {@code null}
+     * @param id  the id of the last result of the previous page
+     */
+    PageKey(Timestamp sampleDate, long id) {
+        this.sampleDate = new Timestamp(sampleDate.getTime());
+        this.id = id;
+    }
+
+    public Timestamp getSampleDate() {
+        return new Timestamp(sampleDate.getTime());
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(o == null || !(o instanceof PageKey)) {
+            return false;
+        }
+
+        final PageKey key = (PageKey) o;
+        return this.id == key.getId()
+                && Objects.equals(this.sampleDate, key.getSampleDate());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sampleDate, id);
+    }
+
+    @Override
+    public String toString() {
+        return "PageKey {sampleDate=" + sampleDate + ", id=" + id + "}";
+    }
+}
@@ -0,0 +1,146 @@
+package inspector.imondb.io;
+
+/*
+ * #%L
+ * iMonDB Core
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+
+/**
+ * A columnar time series of the rollups of a {@link inspector.imondb.model.Property}'s numerical {@link inspector.imondb.model.Value}s per {@link TimeBucket}.
+ *
+ * Each index corresponds to a single period: its start (in milliseconds since the epoch), the number of {@code Value}s in the period,
+ * the minimum of their minima, the maximum of their maxima, the sum and the sum of squares of their means, and the mean of their medians.
+ * Missing statistics are represented by {@link Double#NaN}.
+ *
+ * For efficiency, the arrays are not copied and should not be modified.
+ */
+public class PropertyRollupSeries {
+
+    /** initial capacity if the number of periods is unknown */
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final TimeBucket period;
+
+    private int size;
+    private long[] times;
+    private long[] count;
+    private double[] min;
+    private double[] max;
+    private double[] sum;
+    private double[] sumOfSquares;
+    private double[] median;
+
+    /**
+     * Creates an empty {@code PropertyRollupSeries}.
+     *
+     * @param period  the period of the rollups
+     */
+    PropertyRollupSeries(TimeBucket period) {
+        this.period = period;
+        size = 0;
+        times = new long[DEFAULT_CAPACITY];
+        count = new long[DEFAULT_CAPACITY];
+        min = new double[DEFAULT_CAPACITY];
+        max = new double[DEFAULT_CAPACITY];
+        sum = new double[DEFAULT_CAPACITY];
+        sumOfSquares = new double[DEFAULT_CAPACITY];
+        median = new double[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Appends a rollup to the series.
+     */
+    void add(long time, long valueCount, Double minValue, Double maxValue, double sumValue, double sumOfSquaresValue, double medianSum, long medianCount) {
+        if(size == times.length) {
+            int capacity = times.length * 2;
+            times = Arrays.copyOf(times, capacity);
+            count = Arrays.copyOf(count, capacity);
+            min = Arrays.copyOf(min, capacity);
+            max = Arrays.copyOf(max, capacity);
+            sum = Arrays.copyOf(sum, capacity);
+            sumOfSquares = Arrays.copyOf(sumOfSquares, capacity);
+            median = Arrays.copyOf(median, capacity);
+        }
+
+        times[size] = time;
+        count[size] = valueCount;
+        min[size] = minValue != null ? minValue : Double.NaN;
+        max[size] = maxValue != null ? maxValue : Double.NaN;
+        sum[size] = sumValue;
+        sumOfSquares[size] = sumOfSquaresValue;
+        median[size] = medianCount > 0 ? medianSum / medianCount : Double.NaN;
+        size++;
+    }
+
+    /**
+     * Trims the arrays to the number of periods in the series.
+     */
+    void trim() {
+        if(size < times.length) {
+            times = Arrays.copyOf(times, size);
+            count = Arrays.copyOf(count, size);
+            min = Arrays.copyOf(min, size);
+            max = Arrays.copyOf(max, size);
+            sum = Arrays.copyOf(sum, size);
+            sumOfSquares = Arrays.copyOf(sumOfSquares, size);
+            median = Arrays.copyOf(median, size);
+        }
+    }
+
+    public TimeBucket getPeriod() {
+        return period;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long[] getTimes() {
+        return times;
+    }
+
+    public long[] getCount() {
+        return count;
+    }
+
+    public double[] getMin() {
+        return min;
+    }
+
+    public double[] getMax() {
+        return max;
+    }
+
+    public double[] getSum() {
+        return sum;
+    }
+
+    public double[] getSumOfSquares() {
+        return sumOfSquares;
+    }
+
+    public double[] getMedian() {
+        return median;
+    }
+}
@@ -0,0 +1,170 @@
+package inspector.imondb.io;
+
+/*
+ * #%L
+ * iMonDB Core
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+
+/**
+ * A columnar time series of the summary statistics of a {@link inspector.imondb.model.Property}'s {@link inspector.imondb.model.Value}s.
+ *
+ * Each index corresponds to a single {@code Value}: the sample date of its originating {@link inspector.imondb.model.Run} (in milliseconds since the epoch) and its summary statistics.
+ * Missing statistics are represented by {@link Double#NaN}.
+ *
+ * The series are stored as primitive arrays to keep the memory footprint of long time series small.
+ * For efficiency, the arrays are not copied and should not be modified.
+ */
+public class PropertySeries {
+
+    /** initial capacity if the number of values is unknown */
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private int size;
+    private long[] times;
+    private double[] min;
+    private double[] q1;
+    private double[] median;
+    private double[] q3;
+    private double[] max;
+    private double[] mean;
+    private double[] sd;
+
+    /**
+     * Creates an empty {@code PropertySeries}.
+     */
+    PropertySeries() {
+        size = 0;
+        times = new long[DEFAULT_CAPACITY];
+        min = new double[DEFAULT_CAPACITY];
+        q1 = new double[DEFAULT_CAPACITY];
+        median = new double[DEFAULT_CAPACITY];
+        q3 = new double[DEFAULT_CAPACITY];
+        max = new double[DEFAULT_CAPACITY];
+        mean = new double[DEFAULT_CAPACITY];
+        sd = new double[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Appends a value to the series.
+     */
+    void add(long time, Double minValue, Double q1Value, Double medianValue, Double q3Value, Double maxValue, Double meanValue, Double sdValue) {
+        if(size == times.length) {
+            int capacity = times.length * 2;
+            times = Arrays.copyOf(times, capacity);
+            min = Arrays.copyOf(min, capacity);
+            q1 = Arrays.copyOf(q1, capacity);
+            median = Arrays.copyOf(median, capacity);
+            q3 = Arrays.copyOf(q3, capacity);
+            max = Arrays.copyOf(max, capacity);
+            mean = Arrays.copyOf(mean, capacity);
+            sd = Arrays.copyOf(sd, capacity);
+        }
+
+        times[size] = time;
+        min[size] = toPrimitive(minValue);
+        q1[size] = toPrimitive(q1Value);
+        median[size] = toPrimitive(medianValue);
+        q3[size] = toPrimitive(q3Value);
+        max[size] = toPrimitive(maxValue);
+        mean[size] = toPrimitive(meanValue);
+        sd[size] = toPrimitive(sdValue);
+        size++;
+    }
+
+    /**
+     * Trims the arrays to the number of values in the series.
+     */
+    void trim() {
+        if(size < times.length) {
+            times = Arrays.copyOf(times, size);
+            min = Arrays.copyOf(min, size);
+            q1 = Arrays.copyOf(q1, size);
+            median = Arrays.copyOf(median, size);
+            q3 = Arrays.copyOf(q3, size);
+            max = Arrays.copyOf(max, size);
+            mean = Arrays.copyOf(mean, size);
+            sd = Arrays.copyOf(sd, size);
+        }
+    }
+
+    /**
+     * Merges two series that are in chronological order into a single series in chronological order.
+     */
+    static PropertySeries merge(PropertySeries first, PropertySeries second) {
+        PropertySeries merged = new PropertySeries();
+        int i = 0;
+        int j = 0;
+        while(i < first.size || j < second.size) {
+            if(j == second.size || (i < first.size && first.times[i] <= second.times[j])) {
+                merged.add(first.times[i], first.min[i], first.q1[i], first.median[i], first.q3[i], first.max[i], first.mean[i], first.sd[i]);
+                i++;
+            } else {
+                merged.add(second.times[j], second.min[j], second.q1[j], second.median[j], second.q3[j], second.max[j], second.mean[j], second.sd[j]);
+                j++;
+            }
+        }
+        merged.trim();
+        return merged;
+    }
+
+    private static double toPrimitive(Double value) {
+        return value != null ? value : Double.NaN;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long[] getTimes() {
+        return times;
+    }
+
+    public double[] getMin() {
+        return min;
+    }
+
+    public double[] getQ1() {
+        return q1;
+    }
+
+    public double[] getMedian() {
+        return median;
+    }
+
+    public double[] getQ3() {
+        return q3;
+    }
+
+    public double[] getMax() {
+        return max;
+    }
+
+    public double[] getMean() {
+        return mean;
+    }
+
+    public double[] getSd() {
+        return sd;
+    }
+}
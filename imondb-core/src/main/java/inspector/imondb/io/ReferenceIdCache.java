@@ -0,0 +1,114 @@
+package inspector.imondb.io;
+
+/*
+ * #%L
+ * iMonDB Core
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the database id's of reference data ({@link inspector.imondb.model.Property}s, {@link inspector.imondb.model.CV}s, and {@link inspector.imondb.model.Instrument}s),
+ * and which {@code Property}s are assigned to which {@code Instrument}s.
+ *
+ * The cache is populated lazily with id's that have been read from or committed to the database.
+ * Because these id's never change, the cache only has to be invalidated if the database content might deviate from it (e.g. after a constraint violation).
+ *
+ * This class is thread-safe.
+ */
+class ReferenceIdCache {
+
+    private static final Logger LOGGER = LogManager.getLogger(ReferenceIdCache.class);
+
+    /** {@code Property} id's by accession */
+    private final ConcurrentMap<String, Long> propertyIds;
+    /** {@code CV} id's by label */
+    private final ConcurrentMap<String, Long> cvIds;
+    /** {@code Instrument} id's by name */
+    private final ConcurrentMap<String, Long> instrumentIds;
+    /** {@code Property} id's by the id of the {@code Instrument} they are assigned to */
+    private final ConcurrentMap<Long, Set<Long>> instrumentPropertyIds;
+
+    /**
+     * Creates an empty {@code ReferenceIdCache}.
+     */
+    public ReferenceIdCache() {
+        propertyIds = new ConcurrentHashMap<>(1024);
+        cvIds = new ConcurrentHashMap<>();
+        instrumentIds = new ConcurrentHashMap<>();
+        instrumentPropertyIds = new ConcurrentHashMap<>();
+    }
+
+    public Long getPropertyId(String accession) {
+        return propertyIds.get(accession);
+    }
+
+    public void putPropertyId(String accession, Long id) {
+        if(id != null) {
+            propertyIds.put(accession, id);
+        }
+    }
+
+    public Long getCvId(String label) {
+        return cvIds.get(label);
+    }
+
+    public void putCvId(String label, Long id) {
+        if(id != null) {
+            cvIds.put(label, id);
+        }
+    }
+
+    public Long getInstrumentId(String name) {
+        return instrumentIds.get(name);
+    }
+
+    public void putInstrumentId(String name, Long id) {
+        if(id != null) {
+            instrumentIds.put(name, id);
+        }
+    }
+
+    public boolean isPropertyAssigned(Long instrumentId, Long propertyId) {
+        Set<Long> propertyIds = instrumentPropertyIds.get(instrumentId);
+        return propertyIds != null && propertyIds.contains(propertyId);
+    }
+
+    public void putPropertyAssignment(Long instrumentId, Long propertyId) {
+        if(instrumentId != null && propertyId != null) {
+            instrumentPropertyIds.computeIfAbsent(instrumentId, k -> ConcurrentHashMap.newKeySet()).add(propertyId);
+        }
+    }
+
+    /**
+     * Removes all cached id's.
+     */
+    public void invalidate() {
+        LOGGER.debug("Invalidate the cached reference id's");
+
+        propertyIds.clear();
+        cvIds.clear();
+        instrumentIds.clear();
+        instrumentPropertyIds.clear();
+    }
+}
@@ -0,0 +1,289 @@
+package inspector.imondb.io;
+
+/*
+ * #%L
+ * iMonDB Core
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import inspector.imondb.model.Run;
+import inspector.imondb.model.Value;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Store for the rollups of the {@link Value}s per {@link inspector.imondb.model.Instrument}, {@link inspector.imondb.model.Property} and period.
+ *
+ * For each period ({@link TimeBucket#DAY} and {@link TimeBucket#WEEK}) the rollup contains the number of numerical {@code Value}s,
+ * the minimum of their minima, the maximum of their maxima, the sum and the sum of squares of their means, and the sum of their medians.
+ * The rollups are maintained incrementally when new {@link Run}s are written, so long time ranges can be queried without scanning all {@code Value}s.
+ * Both the {@code Value} rows and the {@code Value}s that are stored as blobs (see {@link ValueBlobStore}) are included.
+ *
+ * All methods operate within the transaction of the given JDBC connection.
+ */
+class RollupStore {
+
+    private static final Logger LOGGER = LogManager.getLogger(RollupStore.class);
+
+    /** the periods for which rollups are maintained */
+    static final Set<TimeBucket> PERIODS = Collections.unmodifiableSet(EnumSet.of(TimeBucket.DAY, TimeBucket.WEEK));
+
+    /** number of rows that are retrieved at once while rebuilding the rollups */
+    private static final int FETCH_SIZE = 1000;
+
+    /** adds a rollup to the existing rollup of the same period, or inserts it if it doesn't exist yet */
+    private static final String UPSERT_SQL = "INSERT INTO imon_value_rollup (l_imon_instrument_id, period, period_start, l_imon_property_id, " +
+            "value_count, min_value, max_value, sum_value, sumsq_value, median_sum, median_count) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE value_count = value_count + VALUES(value_count), " +
+            "min_value = LEAST(COALESCE(min_value, VALUES(min_value)), COALESCE(VALUES(min_value), min_value)), " +
+            "max_value = GREATEST(COALESCE(max_value, VALUES(max_value)), COALESCE(VALUES(max_value), max_value)), " +
+            "sum_value = sum_value + VALUES(sum_value), sumsq_value = sumsq_value + VALUES(sumsq_value), " +
+            "median_sum = median_sum + VALUES(median_sum), median_count = median_count + VALUES(median_count)";
+
+    /**
+     * Adds the {@link Value}s of the given {@link Run}s to the rollups.
+     *
+     * The rollups are updated atomically by the database, so concurrent writers don't lose each other's updates.
+     *
+     * @param runs  the {@code Run}s that are written in the current transaction, the {@code Instrument}s and {@code Property}s need to have an id
+     * @param connection  the JDBC connection with an active transaction
+     * @throws SQLException  if the rollups can't be updated
+     */
+    public void add(Collection<Run> runs, Connection connection) throws SQLException {
+        Map<RollupKey, Rollup> rollups = new TreeMap<>();
+        for(Run run : runs) {
+            long instrumentId = run.getInstrument().getId();
+            long time = run.getSampleDate().getTime();
+            for(Iterator<Value> it = run.getValueIterator(); it.hasNext(); ) {
+                Value value = it.next();
+                accumulate(rollups, instrumentId, value.getDefiningProperty().getId(), time, value.getMin(), value.getMax(), value.getMean(), value.getMedian());
+            }
+        }
+
+        write(rollups, connection);
+    }
+
+    /**
+     * Recomputes all rollups from the {@link Value}s that are present in the database.
+     *
+     * The {@code Value}s are processed per {@link inspector.imondb.model.Instrument} in chronological order,
+     * so only the rollups of a single week need to be kept in memory.
+     *
+     * @param connection  the JDBC connection with an active transaction
+     * @throws SQLException  if the rollups can't be rebuilt
+     */
+    public void rebuild(Connection connection) throws SQLException {
+        try(Statement statement = connection.createStatement()) {
+            int deleted = statement.executeUpdate("DELETE FROM imon_value_rollup");
+            LOGGER.debug("Removed {} rollups", deleted);
+        }
+
+        try(Statement statement = connection.createStatement()) {
+            statement.setFetchSize(FETCH_SIZE);
+            try(ResultSet results = statement.executeQuery("SELECT run.l_imon_instrument_id, val.l_imon_property_id, run.sampledate, val.min, val.max, val.mean, val.median " +
+                    "FROM imon_value val JOIN imon_run run ON val.l_imon_run_id = run.id WHERE val.mean IS NOT NULL " +
+                    "ORDER BY run.l_imon_instrument_id, run.sampledate")) {
+                Map<RollupKey, Rollup> rollups = new TreeMap<>();
+                long currentInstrumentId = -1;
+                long currentWeek = -1;
+                while(results.next()) {
+                    long instrumentId = results.getLong(1);
+                    long time = results.getTimestamp(3).getTime();
+                    long week = TimeBucket.WEEK.truncate(time);
+                    // all rollups of the previous week are complete
+                    if(instrumentId != currentInstrumentId || week != currentWeek) {
+                        write(rollups, connection);
+                        rollups.clear();
+                        currentInstrumentId = instrumentId;
+                        currentWeek = week;
+                    }
+
+                    accumulate(rollups, instrumentId, results.getLong(2), time,
+                            getDouble(results, 4), getDouble(results, 5), getDouble(results, 6), getDouble(results, 7));
+                }
+                write(rollups, connection);
+            }
+        }
+
+        // add the values that are stored as blobs
+        try(PreparedStatement statement = connection.prepareStatement("SELECT run.l_imon_instrument_id, run.sampledate, valblob.data " +
+                "FROM imon_value_blob valblob JOIN imon_run run ON valblob.l_imon_run_id = run.id ORDER BY run.l_imon_instrument_id, run.sampledate")) {
+            Map<RollupKey, Rollup> rollups = new TreeMap<>();
+            long[] current = { -1, -1 };
+            new ValueBlobStore().scan(statement, (instrumentId, time, columns) -> {
+                long week = TimeBucket.WEEK.truncate(time);
+                // all rollups of the previous week are complete
+                if(instrumentId != current[0] || week != current[1]) {
+                    write(rollups, connection);
+                    rollups.clear();
+                    current[0] = instrumentId;
+                    current[1] = week;
+                }
+
+                for(int i = 0; i < columns.size(); i++) {
+                    accumulate(rollups, instrumentId, columns.getPropertyId(i), time,
+                            columns.getMin(i), columns.getMax(i), columns.getMean(i), columns.getMedian(i));
+                }
+            });
+            write(rollups, connection);
+        }
+    }
+
+    /**
+     * Adds a single {@link Value} to the rollups of all periods.
+     *
+     * Non-numerical {@code Value}s (without a mean) are ignored.
+     */
+    private void accumulate(Map<RollupKey, Rollup> rollups, long instrumentId, long propertyId, long time,
+                            Double min, Double max, Double mean, Double median) {
+        if(mean == null) {
+            return;
+        }
+
+        for(TimeBucket period : PERIODS) {
+            RollupKey key = new RollupKey(instrumentId, period, period.truncate(time), propertyId);
+            rollups.computeIfAbsent(key, k -> new Rollup()).add(min, max, mean, median);
+        }
+    }
+
+    /**
+     * Combines the given rollups with the rollups that are already present in the database.
+     *
+     * The rollups are written in a fixed order to prevent deadlocks between concurrent writers.
+     *
+     * @param rollups  the rollups, sorted by their key
+     * @param connection  the JDBC connection with an active transaction
+     */
+    private void write(Map<RollupKey, Rollup> rollups, Connection connection) throws SQLException {
+        if(rollups.isEmpty()) {
+            return;
+        }
+
+        try(PreparedStatement statement = connection.prepareStatement(UPSERT_SQL)) {
+            for(Map.Entry<RollupKey, Rollup> entry : rollups.entrySet()) {
+                RollupKey key = entry.getKey();
+                Rollup rollup = entry.getValue();
+                statement.setLong(1, key.instrumentId);
+                statement.setString(2, key.period.name());
+                statement.setTimestamp(3, new Timestamp(key.start));
+                statement.setLong(4, key.propertyId);
+                statement.setLong(5, rollup.count);
+                setDouble(statement, 6, rollup.min);
+                setDouble(statement, 7, rollup.max);
+                statement.setDouble(8, rollup.sum);
+                statement.setDouble(9, rollup.sumOfSquares);
+                statement.setDouble(10, rollup.medianSum);
+                statement.setLong(11, rollup.medianCount);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            LOGGER.trace("Updated {} rollups", rollups.size());
+        }
+    }
+
+    private static Double getDouble(ResultSet results, int column) throws SQLException {
+        double value = results.getDouble(column);
+        return results.wasNull() ? null : value;
+    }
+
+    private static void setDouble(PreparedStatement statement, int index, Double value) throws SQLException {
+        if(value != null) {
+            statement.setDouble(index, value);
+        } else {
+            statement.setNull(index, Types.DOUBLE);
+        }
+    }
+
+    /**
+     * Identifies the rollup of a single {@link inspector.imondb.model.Property} during a single period of an {@link inspector.imondb.model.Instrument}.
+     *
+     * Keys are ordered in the same way as the primary key of the rollups.
+     */
+    private static final class RollupKey implements Comparable<RollupKey> {
+
+        private static final Comparator<RollupKey> ORDER = Comparator.<RollupKey>comparingLong(key -> key.instrumentId)
+                .thenComparing(key -> key.period.name()).thenComparingLong(key -> key.start).thenComparingLong(key -> key.propertyId);
+
+        private final long instrumentId;
+        private final TimeBucket period;
+        private final long start;
+        private final long propertyId;
+
+        private RollupKey(long instrumentId, TimeBucket period, long start, long propertyId) {
+            this.instrumentId = instrumentId;
+            this.period = period;
+            this.start = start;
+            this.propertyId = propertyId;
+        }
+
+        @Override
+        public int compareTo(RollupKey other) {
+            return ORDER.compare(this, other);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) {
+                return true;
+            }
+            if(o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            RollupKey other = (RollupKey) o;
+            return instrumentId == other.instrumentId && period == other.period && start == other.start && propertyId == other.propertyId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(instrumentId, period, start, propertyId);
+        }
+    }
+
+    /**
+     * The aggregated statistics of the {@link Value}s of a single {@link inspector.imondb.model.Property} during a single period.
+     */
+    private static final class Rollup {
+
+        private long count;
+        private Double min;
+        private Double max;
+        private double sum;
+        private double sumOfSquares;
+        private double medianSum;
+        private long medianCount;
+
+        private void add(Double valueMin, Double valueMax, double mean, Double median) {
+            count++;
+            if(valueMin != null && (min == null || valueMin < min)) {
+                min = valueMin;
+            }
+            if(valueMax != null && (max == null || valueMax > max)) {
+                max = valueMax;
+            }
+            sum += mean;
+            sumOfSquares += mean * mean;
+            if(median != null) {
+                medianSum += median;
+                medianCount++;
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package inspector.imondb.io;
+
+/*
+ * #%L
+ * iMonDB Core
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The calendar periods in which {@link inspector.imondb.model.Value}s can be aggregated, based on the sample date of their originating {@link inspector.imondb.model.Run}.
+ *
+ * Periods start at midnight in the default time zone. Weeks start on Monday.
+ */
+public enum TimeBucket {
+
+    DAY(TimeUnit.DAYS.toMillis(1)),
+    WEEK(TimeUnit.DAYS.toMillis(7)),
+    MONTH(TimeUnit.DAYS.toMillis(30));
+
+    private static final Logger LOGGER = LogManager.getLogger(TimeBucket.class);
+
+    /** approximate length of a period in milliseconds */
+    private final long approximateMillis;
+
+    TimeBucket(long approximateMillis) {
+        this.approximateMillis = approximateMillis;
+    }
+
+    /**
+     * Chooses the smallest period that divides the given time range in at most the given number of periods.
+     *
+     * If even months result in more periods than requested, {@link #MONTH} is chosen.
+     *
+     * @param from  the start of the time range in milliseconds since the epoch
+     * @param to  the end of the time range in milliseconds since the epoch
+     * @param targetPoints  the maximum number of periods, strictly positive
+     * @return the smallest {@code TimeBucket} that results in at most the given number of periods
+     */
+    public static TimeBucket forRange(long from, long to, int targetPoints) {
+        if(targetPoints <= 0) {
+            LOGGER.error("The target number of points must be strictly positive");
+            throw new IllegalArgumentException("The target number of points must be strictly positive");
+        }
+
+        long span = Math.max(0, to - from);
+        for(TimeBucket bucket : values()) {
+            if(span / bucket.approximateMillis < targetPoints) {
+                return bucket;
+            }
+        }
+        return MONTH;
+    }
+
+    /**
+     * Returns the start of the period that contains the given time.
+     *
+     * @param time  the time in milliseconds since the epoch
+     * @return the start of the period containing the given time, in milliseconds since the epoch
+     */
+    public long truncate(long time) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+
+        if(this == WEEK) {
+            // number of days since the preceding Monday
+            int days = (cal.get(Calendar.DAY_OF_WEEK) - Calendar.MONDAY + 7) % 7;
+            cal.add(Calendar.DAY_OF_MONTH, -days);
+        } else if(this == MONTH) {
+            cal.set(Calendar.DAY_OF_MONTH, 1);
+        }
+
+        return cal.getTimeInMillis();
+    }
+}
@@ -0,0 +1,290 @@
+package inspector.imondb.io;
+
+/*
+ * #%L
+ * iMonDB Core
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import inspector.imondb.model.Property;
+import inspector.imondb.model.Run;
+import inspector.imondb.model.Value;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Function;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encodes the {@link Value}s of a single {@link Run} as a compact, compressed columnar blob, and decodes it again.
+ *
+ * The blob starts with a format version and the number of {@code Value}s, followed by the {@link Property} id's in ascending order (delta-encoded).
+ * Subsequently each column is written as a bitmap of the non-{@code null} entries followed by these entries as primitives:
+ * the number of observations and the number of different observations (as {@code int}),
+ * the minimum, maximum, mean, median, standard deviation, first quartile and third quartile (as {@code double}),
+ * and finally the first observation (as modified UTF-8).
+ * The whole blob is compressed using deflate, which is very effective because similar values are stored next to each other.
+ */
+final class ValueBlobCodec {
+
+    private static final Logger LOGGER = LogManager.getLogger(ValueBlobCodec.class);
+
+    /** version of the blob layout */
+    private static final int FORMAT_VERSION = 1;
+
+    /** the statistics columns, in the order in which they are stored */
+    private static final List<Function<Value, Double>> STATISTICS = Collections.unmodifiableList(Arrays.asList(
+            Value::getMin, Value::getMax, Value::getMean, Value::getMedian, Value::getSd, Value::getQ1, Value::getQ3));
+    private static final int MIN = 0;
+    private static final int MAX = 1;
+    private static final int MEAN = 2;
+    private static final int MEDIAN = 3;
+    private static final int SD = 4;
+    private static final int Q1 = 5;
+    private static final int Q3 = 6;
+
+    private ValueBlobCodec() {
+
+    }
+
+    /**
+     * Encodes the given {@link Value}s as a blob.
+     *
+     * @param values  the {@code Value}s of a single {@link Run}, the defining {@link Property}s need to have an id
+     * @return the compressed blob
+     */
+    static byte[] encode(Collection<Value> values) {
+        List<Value> sorted = new ArrayList<>(values);
+        for(Value value : sorted) {
+            if(value.getDefiningProperty().getId() == null) {
+                LOGGER.error("Unable to encode the value for property <{}> without an id", value.getDefiningProperty().getAccession());
+                throw new IllegalArgumentException("Unable to encode the value for property <" + value.getDefiningProperty().getAccession() + "> without an id");
+            }
+        }
+        sorted.sort(Comparator.comparing(value -> value.getDefiningProperty().getId()));
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 + sorted.size() * 32);
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(buffer)))) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(sorted.size());
+
+            long previousId = 0;
+            for(Value value : sorted) {
+                long id = value.getDefiningProperty().getId();
+                out.writeLong(id - previousId);
+                previousId = id;
+            }
+
+            writeNulls(out, sorted, Value::getN);
+            for(Value value : sorted) {
+                if(value.getN() != null) {
+                    out.writeInt(value.getN());
+                }
+            }
+            writeNulls(out, sorted, Value::getNDiffValues);
+            for(Value value : sorted) {
+                if(value.getNDiffValues() != null) {
+                    out.writeInt(value.getNDiffValues());
+                }
+            }
+            for(Function<Value, Double> statistic : STATISTICS) {
+                writeNulls(out, sorted, statistic);
+                for(Value value : sorted) {
+                    Double number = statistic.apply(value);
+                    if(number != null) {
+                        out.writeDouble(number);
+                    }
+                }
+            }
+            writeNulls(out, sorted, Value::getFirstValue);
+            for(Value value : sorted) {
+                if(value.getFirstValue() != null) {
+                    out.writeUTF(value.getFirstValue());
+                }
+            }
+        } catch(IOException e) {
+            // doesn't occur for an in-memory buffer
+            LOGGER.error("Unable to encode the values: {}", e.getMessage());
+            throw new IllegalStateException("Unable to encode the values: " + e.getMessage(), e);
+        }
+
+        return buffer.toByteArray();
+    }
+
+    private static void writeNulls(DataOutput out, List<Value> values, Function<Value, ?> column) throws IOException {
+        byte[] bitmap = new byte[(values.size() + 7) / 8];
+        for(int i = 0; i < values.size(); i++) {
+            if(column.apply(values.get(i)) != null) {
+                bitmap[i / 8] |= 1 << (i % 8);
+            }
+        }
+        out.write(bitmap);
+    }
+
+    /**
+     * Decodes the given blob.
+     *
+     * @param blob  the compressed blob, as created by {@link #encode(Collection)}
+     * @return the decoded columns
+     */
+    static ValueColumns decode(byte[] blob) {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(blob))))) {
+            int version = in.readUnsignedByte();
+            if(version != FORMAT_VERSION) {
+                LOGGER.error("Unsupported value blob version <{}>", version);
+                throw new IllegalArgumentException("Unsupported value blob version <" + version + ">");
+            }
+            int size = in.readInt();
+
+            long[] propertyIds = new long[size];
+            long previousId = 0;
+            for(int i = 0; i < size; i++) {
+                previousId += in.readLong();
+                propertyIds[i] = previousId;
+            }
+
+            BitSet nPresent = readNulls(in, size);
+            int[] n = new int[size];
+            for(int i = nPresent.nextSetBit(0); i >= 0; i = nPresent.nextSetBit(i + 1)) {
+                n[i] = in.readInt();
+            }
+            BitSet nDiffValuesPresent = readNulls(in, size);
+            int[] nDiffValues = new int[size];
+            for(int i = nDiffValuesPresent.nextSetBit(0); i >= 0; i = nDiffValuesPresent.nextSetBit(i + 1)) {
+                nDiffValues[i] = in.readInt();
+            }
+            BitSet[] statisticsPresent = new BitSet[STATISTICS.size()];
+            double[][] statistics = new double[STATISTICS.size()][size];
+            for(int s = 0; s < STATISTICS.size(); s++) {
+                statisticsPresent[s] = readNulls(in, size);
+                for(int i = statisticsPresent[s].nextSetBit(0); i >= 0; i = statisticsPresent[s].nextSetBit(i + 1)) {
+                    statistics[s][i] = in.readDouble();
+                }
+            }
+            BitSet firstValuesPresent = readNulls(in, size);
+            String[] firstValues = new String[size];
+            for(int i = firstValuesPresent.nextSetBit(0); i >= 0; i = firstValuesPresent.nextSetBit(i + 1)) {
+                firstValues[i] = in.readUTF();
+            }
+
+            return new ValueColumns(propertyIds, n, nPresent, nDiffValues, nDiffValuesPresent, statistics, statisticsPresent, firstValues);
+        } catch(IOException e) {
+            LOGGER.error("Unable to decode the value blob: {}", e.getMessage());
+            throw new IllegalArgumentException("Unable to decode the value blob: " + e.getMessage(), e);
+        }
+    }
+
+    private static BitSet readNulls(DataInput in, int size) throws IOException {
+        byte[] bitmap = new byte[(size + 7) / 8];
+        in.readFully(bitmap);
+        return BitSet.valueOf(bitmap);
+    }
+
+    /**
+     * The decoded columns of a value blob, ordered by {@link Property} id.
+     */
+    static final class ValueColumns {
+
+        private final long[] propertyIds;
+        private final int[] n;
+        private final BitSet nPresent;
+        private final int[] nDiffValues;
+        private final BitSet nDiffValuesPresent;
+        private final double[][] statistics;
+        private final BitSet[] statisticsPresent;
+        private final String[] firstValues;
+
+        private ValueColumns(long[] propertyIds, int[] n, BitSet nPresent, int[] nDiffValues, BitSet nDiffValuesPresent,
+                             double[][] statistics, BitSet[] statisticsPresent, String[] firstValues) {
+            this.propertyIds = propertyIds;
+            this.n = n;
+            this.nPresent = nPresent;
+            this.nDiffValues = nDiffValues;
+            this.nDiffValuesPresent = nDiffValuesPresent;
+            this.statistics = statistics;
+            this.statisticsPresent = statisticsPresent;
+            this.firstValues = firstValues;
+        }
+
+        int size() {
+            return propertyIds.length;
+        }
+
+        long getPropertyId(int index) {
+            return propertyIds[index];
+        }
+
+        /**
+         * Returns the index of the {@link Value} for the given {@link Property} id.
+         *
+         * @param propertyId  the id of the {@code Property}
+         * @return the index of the {@code Value}, or a negative number if no {@code Value} for the {@code Property} is present
+         */
+        int indexOf(long propertyId) {
+            return Arrays.binarySearch(propertyIds, propertyId);
+        }
+
+        private Double getStatistic(int statistic, int index) {
+            return statisticsPresent[statistic].get(index) ? statistics[statistic][index] : null;
+        }
+
+        /**
+         * Creates the {@link Value} at the given index, which is added to the given {@link Run}.
+         *
+         * @param index  the index of the {@code Value}
+         * @param property  the {@link Property} with the id at the given index
+         * @param run  the {@code Run} from which the blob originates
+         * @return the {@code Value} at the given index
+         */
+        Value toValue(int index, Property property, Run run) {
+            return new Value(firstValues[index], nPresent.get(index) ? n[index] : null, nDiffValuesPresent.get(index) ? nDiffValues[index] : null,
+                    getStatistic(MIN, index), getStatistic(MAX, index), getStatistic(MEAN, index), getStatistic(MEDIAN, index),
+                    getStatistic(SD, index), getStatistic(Q1, index), getStatistic(Q3, index), property, run);
+        }
+
+        /**
+         * Appends the summary statistics of the {@link Value} at the given index to the given {@link PropertySeries}.
+         *
+         * @param series  the {@code PropertySeries} to which the {@code Value} is added
+         * @param time  the sample date of the {@link Run} from which the blob originates
+         * @param index  the index of the {@code Value}
+         */
+        void addTo(PropertySeries series, long time, int index) {
+            series.add(time, getStatistic(MIN, index), getStatistic(Q1, index), getStatistic(MEDIAN, index), getStatistic(Q3, index),
+                    getStatistic(MAX, index), getStatistic(MEAN, index), getStatistic(SD, index));
+        }
+
+        Double getMin(int index) {
+            return getStatistic(MIN, index);
+        }
+
+        Double getMax(int index) {
+            return getStatistic(MAX, index);
+        }
+
+        Double getMean(int index) {
+            return getStatistic(MEAN, index);
+        }
+
+        Double getMedian(int index) {
+            return getStatistic(MEDIAN, index);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package inspector.imondb.io;
+
+/*
+ * #%L
+ * iMonDB Core
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import inspector.imondb.io.ValueBlobCodec.ValueColumns;
+import inspector.imondb.model.Run;
+import inspector.imondb.model.Value;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Store for the {@link Value}s of {@link Run}s that are stored as a single compressed columnar blob per {@code Run} (see {@link ValueBlobCodec}).
+ *
+ * A blob replaces the individual {@code Value} rows of a {@code Run}, which considerably reduces the storage size and the I/O to read all {@code Value}s of a {@code Run}.
+ * When many blobs are scanned, they are decoded in parallel.
+ *
+ * All methods operate within the transaction of the given JDBC connection.
+ */
+class ValueBlobStore {
+
+    private static final Logger LOGGER = LogManager.getLogger(ValueBlobStore.class);
+
+    /** number of rows that are retrieved at once while scanning the blobs */
+    private static final int FETCH_SIZE = 256;
+    /** number of blobs that are decoded in parallel while scanning the blobs */
+    private static final int DECODE_BATCH_SIZE = 256;
+
+    /**
+     * Writes the {@link Value}s of each of the given {@link Run}s as a single blob.
+     *
+     * @param runs  the {@code Run}s that are written in the current transaction, the {@code Run}s and their {@code Property}s need to have an id
+     * @param connection  the JDBC connection with an active transaction
+     * @throws SQLException  if the blobs can't be written
+     */
+    public void write(Collection<Run> runs, Connection connection) throws SQLException {
+        try(PreparedStatement statement = connection.prepareStatement("INSERT INTO imon_value_blob (l_imon_run_id, value_count, data) VALUES (?, ?, ?)")) {
+            for(Run run : runs) {
+                List<Value> values = new ArrayList<>();
+                for(Iterator<Value> it = run.getValueIterator(); it.hasNext(); ) {
+                    values.add(it.next());
+                }
+
+                byte[] blob = ValueBlobCodec.encode(values);
+                LOGGER.trace("Encoded {} values of run <{}> in {} bytes", values.size(), run.getName(), blob.length);
+
+                statement.setLong(1, run.getId());
+                statement.setInt(2, values.size());
+                statement.setBytes(3, blob);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Reads the blob of the given {@link Run}.
+     *
+     * @param runId  the id of the {@code Run}
+     * @param connection  the JDBC connection to the database
+     * @return the decoded {@link Value} columns of the {@code Run}, or {@code null} if the {@code Value}s of the {@code Run} are not stored as a blob
+     * @throws SQLException  if the blob can't be read
+     */
+    public ValueColumns read(long runId, Connection connection) throws SQLException {
+        try(PreparedStatement statement = connection.prepareStatement("SELECT data FROM imon_value_blob WHERE l_imon_run_id = ?")) {
+            statement.setLong(1, runId);
+            try(ResultSet results = statement.executeQuery()) {
+                return results.next() ? ValueBlobCodec.decode(results.getBytes(1)) : null;
+            }
+        }
+    }
+
+    /**
+     * Scans the blobs that are selected by the given statement, in the order in which they are selected.
+     *
+     * The statement needs to select the instrument id, the sample date and the blob of the {@link Run}s, in this order.
+     * The blobs are decoded in parallel in batches, after which the consumer is called for each blob in order.
+     *
+     * @param statement  the statement that selects the blobs, with all parameters bound
+     * @param consumer  the consumer of the decoded blobs
+     * @throws SQLException  if the blobs can't be read
+     */
+    public void scan(PreparedStatement statement, BlobConsumer consumer) throws SQLException {
+        statement.setFetchSize(FETCH_SIZE);
+        try(ResultSet results = statement.executeQuery()) {
+            long[] instrumentIds = new long[DECODE_BATCH_SIZE];
+            long[] times = new long[DECODE_BATCH_SIZE];
+            List<byte[]> blobs = new ArrayList<>(DECODE_BATCH_SIZE);
+            boolean hasNext = results.next();
+            while(hasNext) {
+                instrumentIds[blobs.size()] = results.getLong(1);
+                times[blobs.size()] = results.getTimestamp(2).getTime();
+                blobs.add(results.getBytes(3));
+                hasNext = results.next();
+
+                if(blobs.size() == DECODE_BATCH_SIZE || !hasNext) {
+                    List<ValueColumns> decoded = blobs.parallelStream().map(ValueBlobCodec::decode).collect(Collectors.toList());
+                    for(int i = 0; i < decoded.size(); i++) {
+                        consumer.accept(instrumentIds[i], times[i], decoded.get(i));
+                    }
+                    LOGGER.trace("Decoded {} value blobs", decoded.size());
+                    blobs.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Consumes the decoded blob of a single {@link Run}.
+     */
+    @FunctionalInterface
+    interface BlobConsumer {
+
+        void accept(long instrumentId, long time, ValueColumns columns) throws SQLException;
+    }
+}
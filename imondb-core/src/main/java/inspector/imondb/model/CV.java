@@ -22,6 +22,8 @@ package inspector.imondb.model;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import java.util.Objects;
@@ -32,6 +34,8 @@ import java.util.Objects;
 @Entity
 @Access(AccessType.FIELD)
 @Table(name="imon_cv")
+@Cacheable
+@Cache(usage=CacheConcurrencyStrategy.READ_WRITE)
 public class CV {
 
     @Transient
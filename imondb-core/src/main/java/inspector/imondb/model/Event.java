@@ -25,8 +25,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.persistence.*;
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.util.Objects;
@@ -72,9 +71,15 @@ public class Event {
     /** the attachment file name */
     @Column(name="attachment_name", length=255)
     private String attachmentFileName;
-    /** the binary content of the attachment */
-    @Lob
-    @Column(name="attachment")
+    /** the stored attachment content; possibly shared with other events */
+    @ManyToOne(fetch=FetchType.LAZY)
+    @JoinColumn(name="l_imon_attachment_id", referencedColumnName="id")
+    private EventAttachment attachment;
+    /** a file containing new attachment content that hasn't been stored yet */
+    @Transient
+    private File attachmentFile;
+    /** new attachment content that hasn't been stored yet */
+    @Transient
     private byte[] attachmentBytes;
 
     /**
@@ -193,8 +198,73 @@ public class Event {
         return attachmentFileName;
     }
 
+    /**
+     * Returns the binary content of the attachment.
+     *
+     * Only new attachment content that hasn't been stored in the database yet is available, otherwise {@code null} is returned.
+     * Use {@link #isAttachmentContentLoaded()} to distinguish between an {@code Event} without attachment content and an {@code Event} whose attachment content is stored in the database,
+     * and use {@link inspector.imondb.io.IMonDBReader#readEventAttachmentContent(String, Timestamp, java.io.OutputStream)} to retrieve stored content.
+     *
+     * @return the binary content of the attachment if available, else {@code null}
+     */
     public byte[] getAttachmentContent() {
-        return attachmentBytes != null ? attachmentBytes.clone() : null;
+        if(attachmentBytes != null) {
+            return attachmentBytes.clone();
+        } else if(attachmentFile != null) {
+            try {
+                return FileUtils.readFileToByteArray(attachmentFile);
+            } catch(IOException e) {
+                LOGGER.warn("Unable to read attachment file <{}>", attachmentFile.getName());
+                throw new IllegalStateException("Unable to read attachment file <" + attachmentFile.getName() + ">", e);
+            }
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Opens a stream to read new attachment content that hasn't been stored in the database yet.
+     *
+     * @return a stream to read the new attachment content, or {@code null} if no new attachment content is available
+     * @throws IOException  if the attachment file can't be opened
+     */
+    public InputStream openAttachmentContent() throws IOException {
+        if(attachmentBytes != null) {
+            return new ByteArrayInputStream(attachmentBytes);
+        } else if(attachmentFile != null) {
+            return new BufferedInputStream(new FileInputStream(attachmentFile));
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Indicates whether the binary content of the attachment is available.
+     *
+     * @return {@code false} if the {@code Event} has an attachment whose content is stored in the database, else {@code true}
+     */
+    public boolean isAttachmentContentLoaded() {
+        return attachment == null || attachmentBytes != null || attachmentFile != null;
+    }
+
+    /**
+     * Returns the stored attachment content.
+     *
+     * @return the {@link EventAttachment} containing the attachment content stored in the database, or {@code null} if no attachment content has been stored
+     */
+    public EventAttachment getStoredAttachment() {
+        return attachment;
+    }
+
+    /**
+     * Sets the stored attachment content, which replaces any new attachment content.
+     *
+     * @param attachment  the {@link EventAttachment} containing the attachment content stored in the database
+     */
+    public void setStoredAttachment(EventAttachment attachment) {
+        this.attachment = attachment;
+        attachmentFile = null;
+        attachmentBytes = null;
     }
 
     public void setAttachmentName(String name) {
@@ -202,27 +272,34 @@ public class Event {
     }
 
     public void setAttachmentContent(byte[] content) {
+        attachment = null;
+        attachmentFile = null;
         attachmentBytes = content != null ? content.clone() : null;
     }
 
+    /**
+     * Sets the given file as attachment.
+     *
+     * The file content is not read into memory, but is streamed into the database when the {@code Event} is written.
+     *
+     * @param attachment  the file that will be attached, {@code null} removes the attachment
+     */
     public void setAttachment(File attachment) {
-        // add the file content if the file is valid
-        if(attachment != null) {
-            try {
-                setAttachmentName(attachment.getName());
-                setAttachmentContent(FileUtils.readFileToByteArray(attachment));
-            } catch(IOException e) {
-                // reset file content
-                attachmentFileName = null;
-                attachmentBytes = null;
+        // reset the previous attachment
+        attachmentFileName = null;
+        this.attachment = null;
+        attachmentFile = null;
+        attachmentBytes = null;
 
+        // add the file if it is valid
+        if(attachment != null) {
+            if(attachment.isFile() && attachment.canRead()) {
+                attachmentFileName = attachment.getName();
+                attachmentFile = attachment;
+            } else {
                 LOGGER.warn("Unable to set file <{}> as an attachment", attachment.getName());
-                throw new IllegalArgumentException("Unable to set file <" + attachment.getName() +  "> as an attachment", e);
+                throw new IllegalArgumentException("Unable to set file <" + attachment.getName() +  "> as an attachment");
             }
-        } else {
-            // reset file content
-            attachmentFileName = null;
-            attachmentBytes = null;
         }
     }
 
@@ -0,0 +1,71 @@
+package inspector.imondb.model;
+
+/*
+ * #%L
+ * iMonDB Core
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.hibernate.annotations.BatchSize;
+
+import javax.persistence.*;
+
+/**
+ * An attachment of one or more {@link Event}s.
+ *
+ * Attachments are content-addressed: identical content is stored only once, identified by its SHA-256 hash, and is shared by all {@code Event}s to which it is attached.
+ * The (compressed) content itself is not part of this entity, and is only retrieved from the database when it is explicitly requested (see {@link inspector.imondb.io.IMonDBReader}).
+ */
+@Entity
+@Access(AccessType.FIELD)
+@Table(name="imon_event_attachment")
+@BatchSize(size=50)
+public class EventAttachment {
+
+    /** read-only iMonDB primary key; generated by JPA */
+    @Id
+    @Column(name="id", nullable=false)
+    @GeneratedValue(strategy=GenerationType.IDENTITY)
+    private Long id;
+
+    /** the SHA-256 hash of the content, as a hexadecimal string */
+    @Column(name="sha256", nullable=false, unique=true, length=64)
+    private String hash;
+    /** the uncompressed size of the content in bytes */
+    @Column(name="size", nullable=false)
+    private long size;
+
+    /**
+     * Default constructor required by JPA.
+     * Protected access modification enforces class immutability.
+     */
+    protected EventAttachment() {
+
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public long getSize() {
+        return size;
+    }
+}
@@ -24,6 +24,10 @@ import com.google.common.collect.ImmutableSortedMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.hibernate.Hibernate;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.QueryHints;
 import org.hibernate.annotations.SortNatural;
 
 import javax.persistence.*;
@@ -38,6 +42,14 @@ import java.util.*;
 @Entity
 @Access(AccessType.FIELD)
 @Table(name = "imon_instrument")
+@NamedQueries({
+        @NamedQuery(name="Instrument.findByName", query="SELECT inst FROM Instrument inst WHERE inst.name = :name",
+                hints=@QueryHint(name=QueryHints.CACHEABLE, value="true")),
+        @NamedQuery(name="Instrument.countByName", query="SELECT COUNT(inst) FROM Instrument inst WHERE inst.name = :name"),
+        @NamedQuery(name="Instrument.findAllNames", query="SELECT inst.name FROM Instrument inst ORDER BY inst.name")
+})
+@Cacheable
+@Cache(usage=CacheConcurrencyStrategy.READ_WRITE)
 public class Instrument {
 
     @Transient
@@ -62,6 +74,7 @@ public class Instrument {
 
     @OneToMany(cascade=CascadeType.REMOVE, fetch=FetchType.LAZY, mappedBy="instrument")
     @MapKey(name="date")
+    @BatchSize(size=16)
     @OrderBy("date ASC")
     @SortNatural
     private SortedMap<Timestamp, Event> events;
@@ -77,6 +90,8 @@ public class Instrument {
             joinColumns={@JoinColumn(name="l_imon_instrument_id", referencedColumnName="id")},
             inverseJoinColumns={@JoinColumn(name="l_imon_property_id", referencedColumnName="id")})
     @MapKey(name="accession")
+    @Cache(usage=CacheConcurrencyStrategy.READ_WRITE)
+    @BatchSize(size=16)
     private Map<String, Property> properties;
 
     /**
@@ -351,6 +366,26 @@ public class Instrument {
         }
     }
 
+    /**
+     * Replaces the {@link Run}s of this {@code Instrument} by the given {@code Run}s, which were retrieved separately from the database.
+     *
+     * This method is only used to fetch a subset of the {@code Run}s of an {@code Instrument} that is no longer managed by an {@link javax.persistence.EntityManager}.
+     * Afterwards the {@code Instrument} only contains the given {@code Run}s, even if no {@code Run}s are given.
+     *
+     * @param runs  the {@code Run}s performed on this {@code Instrument}, not {@code null}
+     */
+    public void initializeRuns(Collection<Run> runs) {
+        if(runs != null) {
+            runsPerformedOnInstrument = new TreeMap<>();
+            for(Run run : runs) {
+                runsPerformedOnInstrument.put(run.getSampleDate(), run);
+            }
+        } else {
+            LOGGER.error("The runs are not allowed to be <null>");
+            throw new NullPointerException("The runs are not allowed to be <null>");
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if(this == o) {
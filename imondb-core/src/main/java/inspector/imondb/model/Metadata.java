@@ -32,15 +32,18 @@ import java.util.Objects;
 @Entity
 @Access(AccessType.FIELD)
 @Table(name="imon_metadata")
+@NamedQuery(name="Metadata.findByInstrument", query="SELECT md FROM Metadata md WHERE md.run.instrument.name = :instName")
 public class Metadata {
 
     @Transient
     private static final Logger LOGGER = LogManager.getLogger(Metadata.class);
 
-    /** read-only iMonDB primary key; generated by JPA */
+    /** read-only iMonDB primary key; generated by JPA from a pooled id range */
     @Id
     @Column(name="id", nullable=false)
-    @GeneratedValue(strategy=GenerationType.IDENTITY)
+    @TableGenerator(name="imon_metadata_id", table="imon_id_generator", pkColumnName="sequence_name", valueColumnName="next_val",
+            pkColumnValue="imon_metadata", allocationSize=100)
+    @GeneratedValue(strategy=GenerationType.TABLE, generator="imon_metadata_id")
     private Long id;
 
     /** the metadata name */
@@ -23,6 +23,9 @@ package inspector.imondb.model;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.QueryHints;
 
 import javax.persistence.*;
 import java.util.*;
@@ -33,6 +36,10 @@ import java.util.*;
 @Entity
 @Access(AccessType.FIELD)
 @Table(name="imon_property")
+@NamedQuery(name="Property.findByAccession", query="SELECT prop FROM Property prop WHERE prop.accession = :accession",
+        hints=@QueryHint(name=QueryHints.CACHEABLE, value="true"))
+@Cacheable
+@Cache(usage=CacheConcurrencyStrategy.READ_WRITE)
 public class Property {
 
     @Transient
@@ -23,6 +23,7 @@ package inspector.imondb.model;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.hibernate.Hibernate;
+import org.hibernate.annotations.BatchSize;
 
 import javax.persistence.*;
 import java.sql.Timestamp;
@@ -34,15 +35,22 @@ import java.util.*;
 @Entity
 @Access(AccessType.FIELD)
 @Table(name="imon_run", uniqueConstraints=@UniqueConstraint(columnNames={"l_imon_instrument_id", "name"}))
+@NamedQueries({
+        @NamedQuery(name="Run.findByName", query="SELECT run FROM Run run WHERE run.name = :runName AND run.instrument.name = :instName"),
+        @NamedQuery(name="Run.countByName", query="SELECT COUNT(run) FROM Run run WHERE run.name = :runName AND run.instrument.name = :instName"),
+        @NamedQuery(name="Run.findNamesByInstrument", query="SELECT run.name FROM Run run WHERE run.instrument.name = :instName")
+})
 public class Run {
 
     @Transient
     private static final Logger LOGGER = LogManager.getLogger(Run.class);
 
-    /** read-only iMonDB primary key; generated by JPA */
+    /** read-only iMonDB primary key; generated by JPA from a pooled id range */
     @Id
     @Column(name="id", nullable=false)
-    @GeneratedValue(strategy=GenerationType.IDENTITY)
+    @TableGenerator(name="imon_run_id", table="imon_id_generator", pkColumnName="sequence_name", valueColumnName="next_val",
+            pkColumnValue="imon_run", allocationSize=50)
+    @GeneratedValue(strategy=GenerationType.TABLE, generator="imon_run_id")
     private Long id;
 
     /** the name identifying the run */
@@ -58,6 +66,7 @@ public class Run {
     /** additional {@link Metadata} describing the run */
     @OneToMany(cascade=CascadeType.ALL, fetch=FetchType.EAGER, mappedBy="run")
     @MapKey(name="name")
+    @BatchSize(size=100)
     private Map<String, Metadata> metadata;
 
     /** all {@link Value}s for the run */
@@ -67,7 +76,7 @@ public class Run {
     private Map<Property, Value> runValues;
 
     /** inverse part of the bi-directional relationship with {@link Instrument} */
-    @ManyToOne(cascade={CascadeType.PERSIST, CascadeType.MERGE}, fetch=FetchType.LAZY)
+    @ManyToOne(fetch=FetchType.LAZY)
     @JoinColumn(name="l_imon_instrument_id", nullable=false, referencedColumnName="id")
     private Instrument instrument;
 
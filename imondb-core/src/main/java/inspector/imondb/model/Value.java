@@ -24,6 +24,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.persistence.*;
+import java.sql.Timestamp;
 import java.util.Objects;
 
 /**
@@ -33,16 +34,22 @@ import java.util.Objects;
  */
 @Entity
 @Access(AccessType.FIELD)
-@Table(name = "imon_value")
+@Table(name = "imon_value", uniqueConstraints=@UniqueConstraint(name="imon_value_property_run", columnNames={"l_imon_property_id", "l_imon_run_id"}))
+@NamedQuery(name="Value.findPropertySeries",
+        query="SELECT val.originatingRun.sampleDate, val.min, val.q1, val.median, val.q3, val.max, val.mean, val.sd FROM Value val " +
+                "WHERE val.originatingRun.instrument.name = :instName AND val.definingProperty.accession = :accession " +
+                "ORDER BY val.originatingRun.sampleDate")
 public class Value {
 
     @Transient
     private static final Logger LOGGER = LogManager.getLogger(Value.class);
 
-    /** read-only iMonDB primary key; generated by JPA */
+    /** read-only iMonDB primary key; generated by JPA from a pooled id range to allow batched inserts */
     @Id
     @Column(name="id", nullable=false)
-    @GeneratedValue(strategy=GenerationType.IDENTITY)
+    @TableGenerator(name="imon_value_id", table="imon_id_generator", pkColumnName="sequence_name", valueColumnName="next_val",
+            pkColumnValue="imon_value", allocationSize=1000)
+    @GeneratedValue(strategy=GenerationType.TABLE, generator="imon_value_id")
     private Long id;
 
     /** the first observation */
@@ -75,6 +82,9 @@ public class Value {
     /** the third quartile */
     @Column(name="q3")
     private Double q3;
+    /** the sample date of the originating {@link Run}, denormalized so the values can be partitioned and pruned by date */
+    @Column(name="sampledate", nullable=false)
+    private Timestamp sampleDate;
 
     /** inverse part of the bi-directional relationship with {@link Property} */
     @ManyToOne(cascade={CascadeType.PERSIST, CascadeType.MERGE}, fetch=FetchType.LAZY)
@@ -128,6 +138,7 @@ public class Value {
 
         setDefiningProperty(property);
         setOriginatingRun(run);
+        this.sampleDate = run.getSampleDate();
         property.assignValue(this);
         run.addValue(this);
     }
@@ -162,6 +173,10 @@ public class Value {
         }
     }
 
+    public Timestamp getSampleDate() {
+        return new Timestamp(sampleDate.getTime());
+    }
+
     public String getFirstValue() {
         return firstValue;
     }
@@ -0,0 +1,20 @@
+--
+-- iMonDB schema migration 10: value blobs
+--
+-- As an alternative to the individual value rows, all values of a run can be stored as a single compressed columnar blob
+-- (see IMonDBBulkLoader.Mode.VALUE_BLOB). The number of values is stored alongside the blob for monitoring the storage usage.
+--
+
+--
+-- Table structure for table `imon_value_blob`
+--
+
+CREATE TABLE imon_value_blob (
+  l_imon_run_id bigint(20) NOT NULL,
+  value_count int(11) NOT NULL,
+  data mediumblob NOT NULL,
+  PRIMARY KEY (l_imon_run_id),
+  FOREIGN KEY (l_imon_run_id) REFERENCES imon_run (id)
+) DEFAULT CHARACTER SET utf8;
+
+INSERT INTO imon_schema_version (version, description) VALUES (10, 'value blobs');
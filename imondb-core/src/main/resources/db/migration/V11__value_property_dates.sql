@@ -0,0 +1,13 @@
+--
+-- iMonDB schema migration 11: value property dates
+--
+-- The values of a property are browsed in chronological order using keyset pagination (see IMonDBReader.getValues).
+-- The (property, sample date, id) index resolves the position of a page and returns the values in order,
+-- so the values of the property don't have to be sorted for each page.
+-- The index doesn't contain a unique key, so it can be retained when the values are partitioned by date (see IMonDBPartitionManager).
+--
+
+ALTER TABLE imon_value
+  ADD KEY imon_value_property_date (l_imon_property_id,sampledate,id);
+
+INSERT INTO imon_schema_version (version, description) VALUES (11, 'value property dates');
@@ -0,0 +1,21 @@
+--
+-- iMonDB schema migration 12: latest value runs
+--
+-- The snapshot keeps the id of the run from which each entry originates,
+-- so runs with identical sample dates are resolved in favor of the highest id, the same as when the snapshot was initialized (see V7).
+-- Entries of runs that are no longer present keep id 0, so they are replaced by any run with the same sample date.
+--
+
+ALTER TABLE imon_latest_run
+  ADD COLUMN l_imon_run_id bigint(20) NOT NULL AFTER l_imon_instrument_id;
+
+ALTER TABLE imon_latest_value
+  ADD COLUMN l_imon_run_id bigint(20) NOT NULL AFTER l_imon_property_id;
+
+UPDATE imon_latest_run latest JOIN imon_run run ON run.l_imon_instrument_id = latest.l_imon_instrument_id AND run.name = latest.run_name
+  SET latest.l_imon_run_id = run.id;
+
+UPDATE imon_latest_value latest JOIN imon_run run ON run.l_imon_instrument_id = latest.l_imon_instrument_id AND run.name = latest.run_name
+  SET latest.l_imon_run_id = run.id;
+
+INSERT INTO imon_schema_version (version, description) VALUES (12, 'latest value runs');
@@ -0,0 +1,40 @@
+--
+-- iMonDB schema migration 2: pooled identifier generation
+--
+-- Runs, values, and metadata receive their id's from the imon_id_generator table instead of from AUTO_INCREMENT,
+-- which allows their inserts to be batched.
+-- The AUTO_INCREMENT columns are retained, explicitly assigned id's simply take precedence.
+--
+-- Attention: all iMonDB applications writing to the database have to be upgraded at the same time,
+-- otherwise id's generated by AUTO_INCREMENT and by the id generator might collide.
+--
+
+--
+-- Table structure for table `imon_schema_version`
+--
+
+CREATE TABLE IF NOT EXISTS imon_schema_version (
+  version int(11) NOT NULL,
+  description varchar(200) NOT NULL,
+  installed_on timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (version)
+) DEFAULT CHARACTER SET utf8;
+
+INSERT IGNORE INTO imon_schema_version (version, description) VALUES (1, 'initial schema');
+
+--
+-- Table structure for table `imon_id_generator`
+--
+
+CREATE TABLE imon_id_generator (
+  sequence_name varchar(64) NOT NULL,
+  next_val bigint(20) NOT NULL,
+  PRIMARY KEY (sequence_name)
+) DEFAULT CHARACTER SET utf8;
+
+-- continue after the highest id's that were generated by AUTO_INCREMENT
+INSERT INTO imon_id_generator (sequence_name, next_val) SELECT 'imon_run', COALESCE(MAX(id), 0) + 1 FROM imon_run;
+INSERT INTO imon_id_generator (sequence_name, next_val) SELECT 'imon_metadata', COALESCE(MAX(id), 0) + 1 FROM imon_metadata;
+INSERT INTO imon_id_generator (sequence_name, next_val) SELECT 'imon_value', COALESCE(MAX(id), 0) + 1 FROM imon_value;
+
+INSERT INTO imon_schema_version (version, description) VALUES (2, 'pooled id generators');
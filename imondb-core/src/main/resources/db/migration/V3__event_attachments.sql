@@ -0,0 +1,32 @@
+--
+-- iMonDB schema migration 3: event attachments
+--
+-- The attachment content is moved from imon_event to a separate table,
+-- so the (potentially large) attachments are only retrieved when they are explicitly requested.
+--
+
+--
+-- Table structure for table `imon_event_attachment`
+--
+
+CREATE TABLE imon_event_attachment (
+  id bigint(20) NOT NULL AUTO_INCREMENT,
+  content longblob NOT NULL,
+  l_imon_event_id bigint(20) NOT NULL,
+  PRIMARY KEY (id)
+) DEFAULT CHARACTER SET utf8;
+
+-- move the existing attachments (temporarily keeping track of the originating event)
+INSERT INTO imon_event_attachment (content, l_imon_event_id) SELECT attachment, id FROM imon_event WHERE attachment IS NOT NULL;
+
+ALTER TABLE imon_event
+  ADD COLUMN l_imon_attachment_id bigint(20) DEFAULT NULL,
+  ADD UNIQUE KEY (l_imon_attachment_id),
+  ADD FOREIGN KEY (l_imon_attachment_id) REFERENCES imon_event_attachment (id);
+
+UPDATE imon_event event JOIN imon_event_attachment attachment ON attachment.l_imon_event_id = event.id SET event.l_imon_attachment_id = attachment.id;
+
+ALTER TABLE imon_event DROP COLUMN attachment;
+ALTER TABLE imon_event_attachment DROP COLUMN l_imon_event_id;
+
+INSERT INTO imon_schema_version (version, description) VALUES (3, 'event attachments');
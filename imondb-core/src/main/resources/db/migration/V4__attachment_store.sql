@@ -0,0 +1,54 @@
+--
+-- iMonDB schema migration 4: content-addressed attachment store
+--
+-- Identical attachments are stored only once, identified by the SHA-256 hash of their content,
+-- and events with the same attachment refer to the same imon_event_attachment row.
+-- The content is compressed (zlib) and split in chunks that are stored in imon_event_attachment_chunk.
+--
+-- Attention: requires MySQL 5.5 or higher (SHA2).
+--
+
+ALTER TABLE imon_event_attachment
+  ADD COLUMN sha256 char(64) DEFAULT NULL,
+  ADD COLUMN size bigint(20) DEFAULT NULL;
+
+UPDATE imon_event_attachment SET sha256 = SHA2(content, 256), size = LENGTH(content);
+
+-- multiple events can refer to the same attachment
+ALTER TABLE imon_event
+  ADD KEY l_imon_attachment_fk (l_imon_attachment_id),
+  DROP KEY l_imon_attachment_id;
+
+-- merge duplicate attachments
+UPDATE imon_event event
+  JOIN imon_event_attachment attachment ON attachment.id = event.l_imon_attachment_id
+  JOIN (SELECT sha256, MIN(id) AS id FROM imon_event_attachment GROUP BY sha256) original ON original.sha256 = attachment.sha256
+  SET event.l_imon_attachment_id = original.id;
+
+DELETE attachment FROM imon_event_attachment attachment
+  LEFT JOIN imon_event event ON event.l_imon_attachment_id = attachment.id
+  WHERE event.id IS NULL;
+
+--
+-- Table structure for table `imon_event_attachment_chunk`
+--
+
+CREATE TABLE imon_event_attachment_chunk (
+  l_imon_attachment_id bigint(20) NOT NULL,
+  chunk_index int(11) NOT NULL,
+  data longblob NOT NULL,
+  PRIMARY KEY (l_imon_attachment_id,chunk_index),
+  FOREIGN KEY (l_imon_attachment_id) REFERENCES imon_event_attachment (id)
+) DEFAULT CHARACTER SET utf8;
+
+-- COMPRESS() prefixes the zlib stream with the uncompressed length (4 bytes); empty content is stored without chunks
+INSERT INTO imon_event_attachment_chunk (l_imon_attachment_id, chunk_index, data)
+  SELECT id, 0, SUBSTRING(COMPRESS(content), 5) FROM imon_event_attachment WHERE LENGTH(content) > 0;
+
+ALTER TABLE imon_event_attachment
+  DROP COLUMN content,
+  MODIFY sha256 char(64) NOT NULL,
+  MODIFY size bigint(20) NOT NULL,
+  ADD UNIQUE KEY (sha256);
+
+INSERT INTO imon_schema_version (version, description) VALUES (4, 'attachment store');
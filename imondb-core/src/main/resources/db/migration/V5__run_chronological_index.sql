@@ -0,0 +1,11 @@
+--
+-- iMonDB schema migration 5: chronological run index
+--
+-- Runs are browsed per instrument in chronological order, using (sampledate, id) as the position within the pages.
+-- This index allows both the filtering and the ordering to be resolved without scanning or sorting all runs of the instrument.
+--
+
+ALTER TABLE imon_run
+  ADD KEY (l_imon_instrument_id,sampledate,id);
+
+INSERT INTO imon_schema_version (version, description) VALUES (5, 'chronological run index');
@@ -0,0 +1,32 @@
+--
+-- iMonDB schema migration 6: value rollups
+--
+-- The numerical values are rolled up per instrument, property and period (day or week) when new runs are written,
+-- so long time ranges can be queried without scanning imon_value.
+-- The primary key groups the rollups that are updated together by a single run, the secondary key serves the chronological reads per property.
+-- The rollups of pre-existing runs are computed by running IMonDBWriter#rebuildRollups (or the --rebuild-rollups command-line option) after this migration.
+--
+
+--
+-- Table structure for table `imon_value_rollup`
+--
+
+CREATE TABLE imon_value_rollup (
+  l_imon_instrument_id bigint(20) NOT NULL,
+  l_imon_property_id bigint(20) NOT NULL,
+  period varchar(5) NOT NULL,
+  period_start datetime NOT NULL,
+  value_count bigint(20) NOT NULL,
+  min_value double DEFAULT NULL,
+  max_value double DEFAULT NULL,
+  sum_value double NOT NULL,
+  sumsq_value double NOT NULL,
+  median_sum double NOT NULL,
+  median_count bigint(20) NOT NULL,
+  PRIMARY KEY (l_imon_instrument_id,period,period_start,l_imon_property_id),
+  KEY (l_imon_property_id,l_imon_instrument_id,period,period_start),
+  FOREIGN KEY (l_imon_instrument_id) REFERENCES imon_instrument (id),
+  FOREIGN KEY (l_imon_property_id) REFERENCES imon_property (id)
+) DEFAULT CHARACTER SET utf8;
+
+INSERT INTO imon_schema_version (version, description) VALUES (6, 'value rollups');
@@ -0,0 +1,59 @@
+--
+-- iMonDB schema migration 7: latest value snapshot
+--
+-- The most recent run per instrument and the most recent value per instrument and property are kept in separate tables,
+-- which are updated when new runs are written, so the current status of all instruments can be retrieved with a single indexed read.
+-- The snapshot is initialized from the runs and values that are already present.
+--
+
+--
+-- Table structure for table `imon_latest_run`
+--
+
+CREATE TABLE imon_latest_run (
+  l_imon_instrument_id bigint(20) NOT NULL,
+  run_name varchar(100) NOT NULL,
+  sampledate datetime NOT NULL,
+  PRIMARY KEY (l_imon_instrument_id),
+  FOREIGN KEY (l_imon_instrument_id) REFERENCES imon_instrument (id)
+) DEFAULT CHARACTER SET utf8;
+
+--
+-- Table structure for table `imon_latest_value`
+--
+
+CREATE TABLE imon_latest_value (
+  l_imon_instrument_id bigint(20) NOT NULL,
+  l_imon_property_id bigint(20) NOT NULL,
+  run_name varchar(100) NOT NULL,
+  sampledate datetime NOT NULL,
+  firstvalue varchar(200) DEFAULT NULL,
+  n int(11) DEFAULT NULL,
+  n_diffvalues int(11) DEFAULT NULL,
+  min double DEFAULT NULL,
+  q1 double DEFAULT NULL,
+  median double DEFAULT NULL,
+  q3 double DEFAULT NULL,
+  max double DEFAULT NULL,
+  mean double DEFAULT NULL,
+  sd double DEFAULT NULL,
+  PRIMARY KEY (l_imon_instrument_id,l_imon_property_id),
+  FOREIGN KEY (l_imon_instrument_id) REFERENCES imon_instrument (id),
+  FOREIGN KEY (l_imon_property_id) REFERENCES imon_property (id)
+) DEFAULT CHARACTER SET utf8;
+
+-- initialize the snapshot with the most recent run per instrument (the highest id in case of identical sample dates)
+INSERT INTO imon_latest_run (l_imon_instrument_id, run_name, sampledate)
+  SELECT run.l_imon_instrument_id, run.name, run.sampledate FROM imon_run run
+  WHERE NOT EXISTS (SELECT 1 FROM imon_run later WHERE later.l_imon_instrument_id = run.l_imon_instrument_id
+    AND (later.sampledate > run.sampledate OR (later.sampledate = run.sampledate AND later.id > run.id)));
+
+-- initialize the snapshot with the most recent value per instrument and property
+INSERT INTO imon_latest_value (l_imon_instrument_id, l_imon_property_id, run_name, sampledate, firstvalue, n, n_diffvalues, min, q1, median, q3, max, mean, sd)
+  SELECT run.l_imon_instrument_id, val.l_imon_property_id, run.name, run.sampledate, val.firstvalue, val.n, val.n_diffvalues, val.min, val.q1, val.median, val.q3, val.max, val.mean, val.sd
+  FROM imon_value val JOIN imon_run run ON val.l_imon_run_id = run.id
+  WHERE NOT EXISTS (SELECT 1 FROM imon_value laterval JOIN imon_run later ON laterval.l_imon_run_id = later.id
+    WHERE laterval.l_imon_property_id = val.l_imon_property_id AND later.l_imon_instrument_id = run.l_imon_instrument_id
+    AND (later.sampledate > run.sampledate OR (later.sampledate = run.sampledate AND later.id > run.id)));
+
+INSERT INTO imon_schema_version (version, description) VALUES (7, 'latest value snapshot');
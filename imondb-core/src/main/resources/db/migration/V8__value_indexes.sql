@@ -0,0 +1,22 @@
+--
+-- iMonDB schema migration 8: value indexes
+--
+-- A run contains at most a single value per property, which is now enforced by a unique (property, run) constraint.
+-- The time series of a property are read by scanning the runs of an instrument in chronological order (see migration 5)
+-- and looking up the value of the property for each run; the covering (run, property) index contains all summary statistics,
+-- so these lookups don't need to access the value rows themselves.
+-- The sample date of the runs is indexed for date range queries across all instruments.
+--
+
+-- remove duplicate values (retaining the oldest value) which would violate the unique constraint
+DELETE val FROM imon_value val
+  JOIN imon_value original ON original.l_imon_property_id = val.l_imon_property_id AND original.l_imon_run_id = val.l_imon_run_id AND original.id < val.id;
+
+ALTER TABLE imon_value
+  ADD UNIQUE KEY (l_imon_property_id,l_imon_run_id),
+  ADD KEY imon_value_series (l_imon_run_id,l_imon_property_id,min,q1,median,q3,max,mean,sd);
+
+ALTER TABLE imon_run
+  ADD KEY (sampledate);
+
+INSERT INTO imon_schema_version (version, description) VALUES (8, 'value indexes');
@@ -0,0 +1,36 @@
+--
+-- iMonDB schema migration 9: value sample dates
+--
+-- The sample date of the originating run is denormalized into the values, so that the values can be partitioned by date
+-- (see IMonDBPartitionManager) and date range queries only have to read the partitions that overlap with the range.
+-- The sample date is added to the covering series index (see migration 8), so the date bounds can be checked without accessing the value rows.
+-- The unique (property, run) key of migration 8 is renamed, so it can be rebuilt reliably when the values are partitioned.
+-- Migration 8 didn't name this key, so its generated name is looked up instead of assuming the name MySQL usually chooses.
+--
+
+ALTER TABLE imon_value
+  ADD COLUMN sampledate datetime DEFAULT NULL;
+
+UPDATE imon_value val
+  JOIN imon_run run ON run.id = val.l_imon_run_id
+  SET val.sampledate = run.sampledate;
+
+SET @property_run_key = (SELECT prop_col.INDEX_NAME FROM information_schema.STATISTICS prop_col
+  JOIN information_schema.STATISTICS run_col ON run_col.TABLE_SCHEMA = prop_col.TABLE_SCHEMA AND run_col.TABLE_NAME = prop_col.TABLE_NAME AND run_col.INDEX_NAME = prop_col.INDEX_NAME
+  WHERE prop_col.TABLE_SCHEMA = DATABASE() AND prop_col.TABLE_NAME = 'imon_value' AND prop_col.NON_UNIQUE = 0 AND prop_col.INDEX_NAME <> 'PRIMARY'
+    AND prop_col.SEQ_IN_INDEX = 1 AND prop_col.COLUMN_NAME = 'l_imon_property_id'
+    AND run_col.SEQ_IN_INDEX = 2 AND run_col.COLUMN_NAME = 'l_imon_run_id'
+  LIMIT 1);
+
+SET @alter_value = CONCAT('ALTER TABLE imon_value ',
+  'MODIFY sampledate datetime NOT NULL, ',
+  'DROP KEY imon_value_series, ',
+  'ADD KEY imon_value_series (l_imon_run_id,l_imon_property_id,sampledate,min,q1,median,q3,max,mean,sd), ',
+  IFNULL(CONCAT('DROP KEY `', @property_run_key, '`, '), ''),
+  'ADD UNIQUE KEY imon_value_property_run (l_imon_property_id,l_imon_run_id)');
+
+PREPARE alter_value FROM @alter_value;
+EXECUTE alter_value;
+DEALLOCATE PREPARE alter_value;
+
+INSERT INTO imon_schema_version (version, description) VALUES (9, 'value sample dates');
@@ -22,6 +22,8 @@ package inspector.imondb.io;
 
 import com.google.common.collect.ImmutableMap;
 import inspector.imondb.model.*;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -30,6 +32,12 @@ import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -93,11 +101,17 @@ public class IMonDBWriterReaderIT {
 		// clear all existing data
 		em.getTransaction().begin();
 		em.createNativeQuery("SET FOREIGN_KEY_CHECKS = 0").executeUpdate();
+		em.createNativeQuery("TRUNCATE TABLE imon_latest_value").executeUpdate();
+		em.createNativeQuery("TRUNCATE TABLE imon_latest_run").executeUpdate();
+		em.createNativeQuery("TRUNCATE TABLE imon_value_rollup").executeUpdate();
+		em.createNativeQuery("TRUNCATE TABLE imon_value_blob").executeUpdate();
 		em.createNativeQuery("TRUNCATE TABLE imon_value").executeUpdate();
 		em.createNativeQuery("TRUNCATE TABLE imon_property").executeUpdate();
 		em.createNativeQuery("TRUNCATE TABLE imon_metadata").executeUpdate();
 		em.createNativeQuery("TRUNCATE TABLE imon_run").executeUpdate();
 		em.createNativeQuery("TRUNCATE TABLE imon_event").executeUpdate();
+		em.createNativeQuery("TRUNCATE TABLE imon_event_attachment_chunk").executeUpdate();
+		em.createNativeQuery("TRUNCATE TABLE imon_event_attachment").executeUpdate();
 		em.createNativeQuery("TRUNCATE TABLE imon_instrument_properties").executeUpdate();
 		em.createNativeQuery("TRUNCATE TABLE imon_instrument").executeUpdate();
 		em.createNativeQuery("TRUNCATE TABLE imon_cv").executeUpdate();
@@ -204,6 +218,43 @@ public class IMonDBWriterReaderIT {
 		assertEquals(eventNew.getExtra(), instr.getEvent(eventOld.getDate()).getExtra());
 	}
 
+	@Test(expected = NullPointerException.class)
+	public void writeEvents_null() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeOrUpdateEvents(null);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void writeEvents_noInstrument() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		List<Event> events = new ArrayList<>();
+		for(Iterator<Event> eventIt = instruments.get(0).getEventIterator(); eventIt.hasNext(); )
+			events.add(eventIt.next());
+		writer.writeOrUpdateEvents(events);
+	}
+
+	@Test
+	public void writeEvents_newAndDuplicate() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		Iterator<Event> eventIt = instruments.get(0).getEventIterator();
+		Event eventOld = eventIt.next();
+		writer.writeOrUpdateEvent(eventOld);
+
+		List<Event> events = new ArrayList<>();
+		while(eventIt.hasNext())
+			events.add(eventIt.next());
+		Event eventNew = new Event(instruments.get(0), eventOld.getDate(), EventType.INCIDENT, "a new problem", "a new solution", "some extra text");
+		events.add(eventNew);
+		writer.writeOrUpdateEvents(events);
+
+		IMonDBReader reader = new IMonDBReader(emf);
+		Instrument instr = reader.getInstrument(instruments.get(0).getName(), true, false);
+		for(Event event : events)
+			assertEquals(event, instr.getEvent(event.getDate()));
+		assertEquals(eventNew.getProblem(), instr.getEvent(eventOld.getDate()).getProblem());
+	}
+
 	@Test(expected = NullPointerException.class)
 	public void writeRun_null() {
 		IMonDBWriter writer = new IMonDBWriter(emf);
@@ -251,6 +302,315 @@ public class IMonDBWriterReaderIT {
 		writer.writeRun(instruments.get(0).getRunIterator().next());
 	}
 
+	@Test(expected = NullPointerException.class)
+	public void writeRuns_null() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeRuns(null);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void writeRuns_noInstrument() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		List<Run> runs = new ArrayList<>();
+		for(Iterator<Run> runIt = instruments.get(0).getRunIterator(); runIt.hasNext(); )
+			runs.add(runIt.next());
+		writer.writeRuns(runs);
+	}
+
+	@Test
+	public void writeRuns_new() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		List<Run> runs = new ArrayList<>();
+		for(Instrument inst : instruments) {
+			writer.writeInstrument(inst);
+			for(Iterator<Run> runIt = inst.getRunIterator(); runIt.hasNext(); )
+				runs.add(runIt.next());
+		}
+		writer.writeRuns(runs);
+
+		IMonDBReader reader = new IMonDBReader(emf);
+		for(Run runOld : runs) {
+			Run runNew = reader.getRun(runOld.getName(), runOld.getInstrument().getName());
+			assertEquals(runOld, runNew);
+			for(Iterator<Value> valIt = runOld.getValueIterator(); valIt.hasNext(); ) {
+				Value value = valIt.next();
+				assertEquals(value, runNew.getValue(value.getDefiningProperty()));
+			}
+		}
+	}
+
+	@Test
+	public void writeRuns_duplicate() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		Iterator<Run> runIt = instruments.get(0).getRunIterator();
+		Run runExisting = runIt.next();
+		Run runNew = runIt.next();
+		writer.writeRun(runExisting);
+
+		try {
+			writer.writeRuns(Arrays.asList(runNew, runExisting));
+			fail("Writing a duplicate run should fail");
+		} catch(IllegalArgumentException e) {
+			// the whole batch is rejected
+			IMonDBReader reader = new IMonDBReader(emf);
+			assertNull(reader.getRun(runNew.getName(), runNew.getInstrument().getName()));
+		}
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void insertRuns_null() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.insertRuns(null);
+	}
+
+	@Test
+	public void insertRuns_new() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		List<Run> runs = new ArrayList<>();
+		for(Instrument inst : instruments) {
+			writer.writeInstrument(inst);
+			for(Iterator<Run> runIt = inst.getRunIterator(); runIt.hasNext(); )
+				runs.add(runIt.next());
+		}
+		writer.insertRuns(runs);
+
+		IMonDBReader reader = new IMonDBReader(emf);
+		for(Run runOld : runs) {
+			Run runNew = reader.getRun(runOld.getName(), runOld.getInstrument().getName());
+			assertEquals(runOld, runNew);
+			for(Iterator<Metadata> metaIt = runNew.getMetadataIterator(); metaIt.hasNext(); ) {
+				Metadata md = metaIt.next();
+				assertEquals(runOld.getMetadata(md.getName()), md);
+			}
+			for(Iterator<Value> valIt = runOld.getValueIterator(); valIt.hasNext(); ) {
+				Value value = valIt.next();
+				assertEquals(value, runNew.getValue(value.getDefiningProperty()));
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void insertRun_duplicate() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		writer.insertRun(instruments.get(0).getRunIterator().next());
+		writer.insertRun(instruments.get(0).getRunIterator().next());
+	}
+
+	@Test
+	public void writeRun_concurrent() throws InterruptedException, ExecutionException {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		List<Run> runs = new ArrayList<>();
+		for(Instrument inst : instruments) {
+			writer.writeInstrument(inst);
+			for(Iterator<Run> runIt = inst.getRunIterator(); runIt.hasNext(); )
+				runs.add(runIt.next());
+		}
+
+		ExecutorService threadPool = Executors.newFixedThreadPool(4);
+		List<Future<?>> futures = new ArrayList<>();
+		for(Run run : runs)
+			futures.add(threadPool.submit(() -> writer.writeRun(run)));
+		for(Future<?> future : futures)
+			future.get();
+		threadPool.shutdown();
+
+		IMonDBReader reader = new IMonDBReader(emf);
+		for(Run runOld : runs) {
+			Run runNew = reader.getRun(runOld.getName(), runOld.getInstrument().getName());
+			assertEquals(runOld, runNew);
+		}
+	}
+
+	@Test
+	public void submitRun_new() throws InterruptedException, ExecutionException {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		List<CompletableFuture<Run>> futures = new ArrayList<>();
+		for(Instrument inst : instruments)
+			writer.writeInstrument(inst);
+		try(AsyncIMonDBWriter asyncWriter = new AsyncIMonDBWriter(writer, 4, 3, true)) {
+			for(Instrument inst : instruments) {
+				for(Iterator<Run> runIt = inst.getRunIterator(); runIt.hasNext(); )
+					futures.add(asyncWriter.submitRun(runIt.next()));
+			}
+		}
+
+		IMonDBReader reader = new IMonDBReader(emf);
+		for(CompletableFuture<Run> future : futures) {
+			assertTrue(future.isDone());
+			Run runOld = future.get();
+			assertEquals(runOld, reader.getRun(runOld.getName(), runOld.getInstrument().getName()));
+		}
+	}
+
+	@Test
+	public void submitRun_duplicate() throws InterruptedException, ExecutionException {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		Iterator<Run> runIt = instruments.get(0).getRunIterator();
+		Run runExisting = runIt.next();
+		Run runNew = runIt.next();
+		writer.writeRun(runExisting);
+
+		CompletableFuture<Run> futureExisting;
+		CompletableFuture<Run> futureNew;
+		try(AsyncIMonDBWriter asyncWriter = new AsyncIMonDBWriter(writer)) {
+			futureExisting = asyncWriter.submitRun(runExisting);
+			futureNew = asyncWriter.submitRun(runNew);
+		}
+
+		// only the duplicate run fails
+		assertTrue(futureExisting.isCompletedExceptionally());
+		assertEquals(runNew, futureNew.get());
+		IMonDBReader reader = new IMonDBReader(emf);
+		assertEquals(runNew, reader.getRun(runNew.getName(), runNew.getInstrument().getName()));
+	}
+
+	@Test
+	public void submitRun_multipleWriters() throws InterruptedException, ExecutionException {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		List<CompletableFuture<Run>> futures = new ArrayList<>();
+		for(Instrument inst : instruments)
+			writer.writeInstrument(inst);
+		try(AsyncIMonDBWriter asyncWriter = new AsyncIMonDBWriter(writer, 4, 2, false, 3)) {
+			for(Instrument inst : instruments) {
+				for(Iterator<Run> runIt = inst.getRunIterator(); runIt.hasNext(); )
+					futures.add(asyncWriter.submitRun(runIt.next()));
+			}
+		}
+
+		IMonDBReader reader = new IMonDBReader(emf);
+		for(CompletableFuture<Run> future : futures) {
+			assertTrue(future.isDone());
+			Run runOld = future.get();
+			assertEquals(runOld, reader.getRun(runOld.getName(), runOld.getInstrument().getName()));
+		}
+	}
+
+	@Test
+	public void submitRun_error() {
+		IMonDBWriter writer = new IMonDBWriter(emf) {
+			@Override
+			public void writeRuns(Collection<Run> runs) {
+				throw new OutOfMemoryError("Simulated error");
+			}
+		};
+
+		CompletableFuture<Run> future;
+		try(AsyncIMonDBWriter asyncWriter = new AsyncIMonDBWriter(writer)) {
+			future = asyncWriter.submitRun(instruments.get(0).getRunIterator().next());
+		}
+
+		// the writer thread survives the error and completes the future
+		assertTrue(future.isCompletedExceptionally());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void asyncWriter_invalidWriterCount() {
+		new AsyncIMonDBWriter(new IMonDBWriter(emf), 4, 2, false, 0);
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void loadRuns_null() {
+		IMonDBBulkLoader loader = new IMonDBBulkLoader(emf);
+		loader.loadRuns(null);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void loadRun_noInstrument() {
+		IMonDBBulkLoader loader = new IMonDBBulkLoader(emf);
+		loader.loadRun(instruments.get(0).getRunIterator().next());
+	}
+
+	@Test
+	public void loadRuns_new() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		List<Run> runs = new ArrayList<>();
+		for(Instrument inst : instruments) {
+			writer.writeInstrument(inst);
+			for(Iterator<Run> runIt = inst.getRunIterator(); runIt.hasNext(); )
+				runs.add(runIt.next());
+		}
+		IMonDBBulkLoader loader = new IMonDBBulkLoader(emf);
+		loader.loadRuns(runs);
+
+		IMonDBReader reader = new IMonDBReader(emf);
+		for(Run runOld : runs) {
+			Run runNew = reader.getRun(runOld.getName(), runOld.getInstrument().getName());
+			assertEquals(runOld, runNew);
+			for(Iterator<Metadata> metaIt = runNew.getMetadataIterator(); metaIt.hasNext(); ) {
+				Metadata md = metaIt.next();
+				assertEquals(runOld.getMetadata(md.getName()), md);
+			}
+			for(Iterator<Value> valIt = runOld.getValueIterator(); valIt.hasNext(); ) {
+				Value value = valIt.next();
+				assertEquals(value, runNew.getValue(value.getDefiningProperty()));
+			}
+		}
+	}
+
+	@Test
+	public void loadRuns_valueBlob() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		List<Run> runs = new ArrayList<>();
+		instruments.get(0).getRunIterator().forEachRemaining(runs::add);
+		// store half of the runs as value rows and the other half as value blobs
+		writer.writeRuns(runs.subList(0, runs.size() / 2));
+		IMonDBBulkLoader loader = new IMonDBBulkLoader(emf, IMonDBBulkLoader.Mode.VALUE_BLOB);
+		loader.loadRuns(runs.subList(runs.size() / 2, runs.size()));
+
+		IMonDBReader reader = new IMonDBReader(emf);
+		for(Run runOld : runs) {
+			Run runNew = reader.getRun(runOld.getName(), runOld.getInstrument().getName());
+			assertEquals(runOld, runNew);
+			for(Iterator<Value> valIt = runOld.getValueIterator(); valIt.hasNext(); ) {
+				Value value = valIt.next();
+				assertEquals(value, runNew.getValue(value.getDefiningProperty()));
+			}
+		}
+
+		// the series contain the values of both storage modes in chronological order
+		Property property = runs.get(0).getValueIterator().next().getDefiningProperty();
+		SortedMap<Timestamp, Value> expected = new TreeMap<>();
+		for(Run run : runs) {
+			Value value = run.getValue(property);
+			if(value != null) {
+				expected.put(run.getSampleDate(), value);
+			}
+		}
+		PropertySeries series = reader.getPropertySeries(instruments.get(0).getName(), property.getAccession(), null, null);
+		assertEquals(expected.size(), series.size());
+		int i = 0;
+		for(Map.Entry<Timestamp, Value> entry : expected.entrySet()) {
+			assertEquals(entry.getKey().getTime(), series.getTimes()[i]);
+			assertEquals(entry.getValue().getMean() != null ? entry.getValue().getMean() : Double.NaN, series.getMean()[i], 0.0001);
+			i++;
+		}
+		PropertySeries multiple = reader.getPropertySeries(instruments.get(0).getName(), Collections.singletonList(property.getAccession()), null, null).get(property.getAccession());
+		assertArrayEquals(series.getTimes(), multiple.getTimes());
+		assertArrayEquals(series.getMean(), multiple.getMean(), 0.0001);
+
+		// the rollups include the values stored as blobs when they are rebuilt
+		PropertyRollupSeries rollups = reader.getPropertyRollups(instruments.get(0).getName(), property.getAccession(), TimeBucket.DAY, null, null);
+		writer.rebuildRollups();
+		PropertyRollupSeries rebuilt = reader.getPropertyRollups(instruments.get(0).getName(), property.getAccession(), TimeBucket.DAY, null, null);
+		assertArrayEquals(rollups.getTimes(), rebuilt.getTimes());
+		assertArrayEquals(rollups.getCount(), rebuilt.getCount());
+		assertArrayEquals(rollups.getSum(), rebuilt.getSum(), 0.0001);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void loadRun_duplicate() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		writer.writeRun(instruments.get(0).getRunIterator().next());
+
+		IMonDBBulkLoader loader = new IMonDBBulkLoader(emf);
+		loader.loadRun(instruments.get(0).getRunIterator().next());
+	}
+
 	@Test(expected = NullPointerException.class)
 	public void writeProperty_null() {
 		IMonDBWriter writer = new IMonDBWriter(emf);
@@ -412,6 +772,120 @@ public class IMonDBWriterReaderIT {
 		assertNull(reader.getInstrument(event.getInstrument().getName(), true, false).getEvent(event.getDate()));
 	}
 
+	@Test(expected = NullPointerException.class)
+	public void removeEvents_nullDates() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.removeEvents(instruments.get(0).getName(), null);
+	}
+
+	@Test
+	public void removeEvents() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		List<Timestamp> dates = new ArrayList<>();
+		for(Iterator<Event> it = instruments.get(0).getEventIterator(); it.hasNext(); ) {
+			Event event = it.next();
+			writer.writeOrUpdateEvent(event);
+			dates.add(event.getDate());
+		}
+		Timestamp dateRetained = dates.remove(0);
+		dates.add(new Timestamp(0));
+
+		writer.removeEvents(instruments.get(0).getName(), dates);
+
+		IMonDBReader reader = new IMonDBReader(emf);
+		Instrument instr = reader.getInstrument(instruments.get(0).getName(), true, false);
+		int nrOfEvents = 0;
+		for(Iterator<Event> it = instr.getEventIterator(); it.hasNext(); ) {
+			assertEquals(dateRetained, it.next().getDate());
+			nrOfEvents++;
+		}
+		assertEquals(1, nrOfEvents);
+	}
+
+	@Test
+	public void removeEvents_attachment() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		List<Timestamp> dates = new ArrayList<>();
+		for(Iterator<Event> it = instruments.get(0).getEventIterator(); it.hasNext(); ) {
+			Event event = it.next();
+			event.setAttachmentName("attachment.txt");
+			event.setAttachmentContent("shared attachment content".getBytes());
+			writer.writeOrUpdateEvent(event);
+			dates.add(event.getDate());
+		}
+		Timestamp dateRetained = dates.remove(0);
+
+		// the attachment is retained as long as it's used by an event
+		writer.removeEvents(instruments.get(0).getName(), dates);
+		IMonDBReader reader = new IMonDBReader(emf);
+		assertEquals(Long.valueOf(1), reader.getFromCustomQuery("SELECT COUNT(attachment) FROM EventAttachment attachment", Long.class).get(0));
+		assertArrayEquals("shared attachment content".getBytes(), reader.getEventAttachmentContent(instruments.get(0).getName(), dateRetained));
+
+		writer.removeEvent(instruments.get(0).getName(), dateRetained);
+		assertEquals(Long.valueOf(0), reader.getFromCustomQuery("SELECT COUNT(attachment) FROM EventAttachment attachment", Long.class).get(0));
+	}
+
+	@Test
+	public void getEventAttachmentContent() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		Event event = instruments.get(0).getEventIterator().next();
+		byte[] content = "attachment content".getBytes();
+		event.setAttachmentName("attachment.txt");
+		event.setAttachmentContent(content);
+		writer.writeOrUpdateEvent(event);
+
+		// the attachment content isn't retrieved together with the event
+		IMonDBReader reader = new IMonDBReader(emf);
+		Event eventDb = reader.getInstrument(instruments.get(0).getName(), true, false).getEvent(event.getDate());
+		assertEquals("attachment.txt", eventDb.getAttachmentName());
+		assertFalse(eventDb.isAttachmentContentLoaded());
+		assertNull(eventDb.getAttachmentContent());
+
+		assertArrayEquals(content, reader.getEventAttachmentContent(instruments.get(0).getName(), event.getDate()));
+		assertNull(reader.getEventAttachmentContent(instruments.get(0).getName(), new Timestamp(0)));
+
+		// updating the event retains the attachment
+		eventDb.setProblem("updated problem");
+		writer.writeOrUpdateEvent(eventDb);
+		assertArrayEquals(content, reader.getEventAttachmentContent(instruments.get(0).getName(), event.getDate()));
+
+		// replacing the attachment removes the previous content
+		eventDb.setAttachmentContent("new attachment content".getBytes());
+		writer.writeOrUpdateEvent(eventDb);
+		assertArrayEquals("new attachment content".getBytes(), reader.getEventAttachmentContent(instruments.get(0).getName(), event.getDate()));
+		assertEquals(Long.valueOf(1), reader.getFromCustomQuery("SELECT COUNT(attachment) FROM EventAttachment attachment", Long.class).get(0));
+	}
+
+	@Test
+	public void writeEvents_attachmentDeduplicated() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		instruments.forEach(writer::writeInstrument);
+
+		// large attachment which is stored in multiple chunks
+		byte[] content = new byte[3 * 1024 * 1024];
+		new Random().nextBytes(content);
+
+		List<Event> events = new ArrayList<>();
+		for(Instrument instrument : instruments) {
+			Event event = instrument.getEventIterator().next();
+			event.setAttachmentName("report.bin");
+			event.setAttachmentContent(content);
+			events.add(event);
+		}
+		writer.writeOrUpdateEvents(events);
+
+		IMonDBReader reader = new IMonDBReader(emf);
+		assertEquals(Long.valueOf(1), reader.getFromCustomQuery("SELECT COUNT(attachment) FROM EventAttachment attachment", Long.class).get(0));
+		for(Event event : events) {
+			assertFalse(event.isAttachmentContentLoaded());
+			assertEquals(events.get(0).getStoredAttachment().getId(), event.getStoredAttachment().getId());
+			assertArrayEquals(content, reader.getEventAttachmentContent(event.getInstrument().getName(), event.getDate()));
+		}
+	}
+
 	@Test
 	public void getInstrument_null() {
 		IMonDBWriter writer = new IMonDBWriter(emf);
@@ -526,6 +1000,99 @@ public class IMonDBWriterReaderIT {
 			assertNotNull(instrument.getProperty(it.next().getAccession()));
 	}
 
+	@Test
+	public void getInstrument_fetchPlan() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		List<Run> runs = new ArrayList<>();
+		instruments.get(0).getRunIterator().forEachRemaining(runs::add);
+		writer.writeRuns(runs);
+		for(Iterator<Event> eventIt = instruments.get(0).getEventIterator(); eventIt.hasNext(); )
+			writer.writeOrUpdateEvent(eventIt.next());
+
+		IMonDBReader reader = new IMonDBReader(emf);
+
+		Instrument summary = reader.getInstrument(instruments.get(0).getName(), InstrumentFetchPlan.summary());
+		assertNotNull(summary);
+		assertFalse(summary.getEventIterator().hasNext());
+		assertFalse(summary.getRunIterator().hasNext());
+
+		// the events and the runs are retrieved with a single query each
+		Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+		statistics.setStatisticsEnabled(true);
+		statistics.clear();
+
+		Timestamp from = runs.get(1).getSampleDate();
+		Timestamp to = runs.get(3).getSampleDate();
+		Instrument instrument = reader.getInstrument(instruments.get(0).getName(),
+				InstrumentFetchPlan.withEventsNoAttachments().andRuns(from, to));
+		assertTrue(statistics.getPrepareStatementCount() <= 3);
+
+		for(Iterator<Event> eventIt = instruments.get(0).getEventIterator(); eventIt.hasNext(); )
+			assertNotNull(instrument.getEvent(eventIt.next().getDate()));
+		List<Run> fetchedRuns = new ArrayList<>();
+		instrument.getRunIterator().forEachRemaining(fetchedRuns::add);
+		assertEquals(3, fetchedRuns.size());
+		for(Run run : fetchedRuns) {
+			assertFalse(run.getSampleDate().before(from));
+			assertFalse(run.getSampleDate().after(to));
+			assertTrue(run.getMetadataIterator().hasNext());
+		}
+
+		Instrument withProperties = reader.getInstrument(instruments.get(0).getName(), InstrumentFetchPlan.withPropertiesOnly());
+		assertTrue(withProperties.getPropertyIterator().hasNext());
+		assertFalse(withProperties.getEventIterator().hasNext());
+	}
+
+	@Test
+	public void getInstrument_fetchPlanEmptyRange() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		List<Run> runs = new ArrayList<>();
+		instruments.get(0).getRunIterator().forEachRemaining(runs::add);
+		writer.writeRuns(runs);
+
+		// no runs were performed before the first run
+		Timestamp to = new Timestamp(runs.get(0).getSampleDate().getTime() - 1);
+		Instrument instrument = new IMonDBReader(emf).getInstrument(instruments.get(0).getName(),
+				InstrumentFetchPlan.summary().andRuns(new Timestamp(0), to));
+		assertNotNull(instrument);
+		assertFalse(instrument.getRunIterator().hasNext());
+		assertTrue(instrument.getRunRange(new Timestamp(0), to).isEmpty());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void getInstrument_nullFetchPlan() {
+		new IMonDBReader(emf).getInstrument(instruments.get(0).getName(), (InstrumentFetchPlan) null);
+	}
+
+	@Test
+	public void getInstrument_cached() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+
+		IMonDBReader reader = new IMonDBReader(emf);
+		Instrument instrument = reader.getInstrument(instruments.get(0).getName(), false, true);
+		assertNotNull(instrument);
+		assertNull(instrument.getProperty("IMon:new"));
+		assertTrue(emf.getCache().contains(Instrument.class, instrument.getId()));
+		assertTrue(emf.getCache().contains(CV.class, instrument.getCv().getId()));
+
+		// assigning a new property invalidates the cached instrument
+		Property property = new Property("property_new", "test", "IMon:new", cvImon, true);
+		Run run = new Run("run_new", "path/to/run/new", new Timestamp(1234567890000L), instruments.get(0));
+		new Value("1", 1, 1, 1.0, 1.0, 1.0, 1.0, 0.0, 1.0, 1.0, property, run);
+		writer.writeRun(run);
+
+		// only the cached property assignments are evicted, not the unrelated cached entities
+		assertTrue(emf.getCache().contains(Instrument.class, instrument.getId()));
+		assertTrue(emf.getCache().contains(CV.class, instrument.getCv().getId()));
+
+		instrument = reader.getInstrument(instruments.get(0).getName(), false, true);
+		assertNotNull(instrument.getProperty("IMon:new"));
+		assertTrue(emf.getCache().contains(Property.class, instrument.getProperty("IMon:new").getId()));
+	}
+
 	@Test
 	public void getRun_nullRun() {
 		IMonDBWriter writer = new IMonDBWriter(emf);
@@ -590,6 +1157,478 @@ public class IMonDBWriterReaderIT {
 		}
 	}
 
+	@Test
+	public void getPropertySeries() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		List<Run> runs = new ArrayList<>();
+		instruments.get(0).getRunIterator().forEachRemaining(runs::add);
+		writer.writeRuns(runs);
+
+		// expected values in chronological order
+		Property property = runs.get(0).getValueIterator().next().getDefiningProperty();
+		SortedMap<Timestamp, Value> expected = new TreeMap<>();
+		for(Run run : runs) {
+			Value value = run.getValue(property);
+			if(value != null) {
+				expected.put(run.getSampleDate(), value);
+			}
+		}
+
+		IMonDBReader reader = new IMonDBReader(emf);
+		PropertySeries series = reader.getPropertySeries(instruments.get(0).getName(), property.getAccession(), null, null);
+		assertEquals(expected.size(), series.size());
+		int i = 0;
+		for(Map.Entry<Timestamp, Value> entry : expected.entrySet()) {
+			assertEquals(entry.getKey().getTime(), series.getTimes()[i]);
+			assertEquals(entry.getValue().getMin(), series.getMin()[i], 0.0001);
+			assertEquals(entry.getValue().getQ1(), series.getQ1()[i], 0.0001);
+			assertEquals(entry.getValue().getMedian(), series.getMedian()[i], 0.0001);
+			assertEquals(entry.getValue().getQ3(), series.getQ3()[i], 0.0001);
+			assertEquals(entry.getValue().getMax(), series.getMax()[i], 0.0001);
+			assertEquals(entry.getValue().getMean(), series.getMean()[i], 0.0001);
+			assertEquals(entry.getValue().getSd(), series.getSd()[i], 0.0001);
+			i++;
+		}
+
+		// restrict the time range
+		Timestamp from = expected.firstKey();
+		PropertySeries seriesFrom = reader.getPropertySeries(instruments.get(0).getName(), property.getAccession(), from, from);
+		assertEquals(1, seriesFrom.size());
+		assertEquals(from.getTime(), seriesFrom.getTimes()[0]);
+
+		assertTrue(reader.getPropertySeries(instruments.get(1).getName(), property.getAccession(), null, null).isEmpty());
+	}
+
+	@Test
+	public void getPropertySeries_multiple() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		List<Run> runs = new ArrayList<>();
+		instruments.get(0).getRunIterator().forEachRemaining(runs::add);
+		writer.writeRuns(runs);
+
+		List<String> accessions = new ArrayList<>();
+		for(Iterator<Property> it = instruments.get(0).getPropertyIterator(); it.hasNext() && accessions.size() < 3; ) {
+			accessions.add(it.next().getAccession());
+		}
+		accessions.add("IMon:unknown");
+
+		IMonDBReader reader = new IMonDBReader(emf);
+		Map<String, PropertySeries> seriesMap = reader.getPropertySeries(instruments.get(0).getName(), accessions, null, null);
+		assertEquals(accessions, new ArrayList<>(seriesMap.keySet()));
+		for(String accession : accessions) {
+			PropertySeries expected = reader.getPropertySeries(instruments.get(0).getName(), accession, null, null);
+			PropertySeries series = seriesMap.get(accession);
+			assertArrayEquals(expected.getTimes(), series.getTimes());
+			assertArrayEquals(expected.getMedian(), series.getMedian(), 0.0001);
+			assertArrayEquals(expected.getSd(), series.getSd(), 0.0001);
+		}
+		assertTrue(seriesMap.get("IMon:unknown").isEmpty());
+
+		assertTrue(reader.getPropertySeries(instruments.get(0).getName(), Collections.<String>emptyList(), null, null).isEmpty());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void getPropertySeries_nullAccessions() {
+		IMonDBReader reader = new IMonDBReader(emf);
+		reader.getPropertySeries(instruments.get(0).getName(), (Collection<String>) null, null, null);
+	}
+
+	@Test
+	public void getPropertySeries_range() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		List<Run> runs = new ArrayList<>();
+		instruments.get(0).getRunIterator().forEachRemaining(runs::add);
+		writer.writeRuns(runs);
+
+		String accession = runs.get(0).getValueIterator().next().getDefiningProperty().getAccession();
+		IMonDBReader reader = new IMonDBReader(emf);
+		long[] times = reader.getPropertySeries(instruments.get(0).getName(), accession, null, null).getTimes();
+		Timestamp from = new Timestamp(times[times.length / 4]);
+		Timestamp to = new Timestamp(times[times.length * 3 / 4]);
+
+		long[] expected = Arrays.stream(times).filter(time -> time >= from.getTime() && time <= to.getTime()).toArray();
+		assertArrayEquals(expected, reader.getPropertySeries(instruments.get(0).getName(), accession, from, to).getTimes());
+		assertArrayEquals(expected, reader.getPropertySeries(instruments.get(0).getName(), Collections.singletonList(accession), from, to).get(accession).getTimes());
+	}
+
+	@Test
+	public void getAggregatedPropertySeries() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		List<Run> runs = new ArrayList<>();
+		instruments.get(0).getRunIterator().forEachRemaining(runs::add);
+		writer.writeRuns(runs);
+
+		String instName = instruments.get(0).getName();
+		String accession = runs.get(0).getValueIterator().next().getDefiningProperty().getAccession();
+		IMonDBReader reader = new IMonDBReader(emf);
+		PropertySeries series = reader.getPropertySeries(instName, accession, null, null);
+
+		for(TimeBucket bucket : TimeBucket.values()) {
+			// aggregate the individual values per period
+			SortedMap<Long, List<Integer>> expected = new TreeMap<>();
+			for(int i = 0; i < series.size(); i++) {
+				expected.computeIfAbsent(bucket.truncate(series.getTimes()[i]), k -> new ArrayList<>()).add(i);
+			}
+
+			AggregatedPropertySeries aggregated = reader.getAggregatedPropertySeries(instName, accession, null, null, bucket);
+			assertEquals(bucket, aggregated.getBucket());
+			assertEquals(expected.size(), aggregated.size());
+			int i = 0;
+			for(Map.Entry<Long, List<Integer>> entry : expected.entrySet()) {
+				assertEquals(entry.getKey().longValue(), aggregated.getTimes()[i]);
+				assertEquals(entry.getValue().size(), aggregated.getCount()[i]);
+				double min = Double.POSITIVE_INFINITY;
+				double max = Double.NEGATIVE_INFINITY;
+				double median = 0;
+				for(int index : entry.getValue()) {
+					min = Math.min(min, series.getMin()[index]);
+					max = Math.max(max, series.getMax()[index]);
+					median += series.getMedian()[index];
+				}
+				assertEquals(min, aggregated.getMin()[i], 0.0001);
+				assertEquals(max, aggregated.getMax()[i], 0.0001);
+				assertEquals(median / entry.getValue().size(), aggregated.getMedian()[i], 0.0001);
+				i++;
+			}
+		}
+
+		// automatic bucket size
+		Timestamp from = new Timestamp(series.getTimes()[0]);
+		Timestamp to = new Timestamp(series.getTimes()[series.size() - 1]);
+		assertEquals(TimeBucket.DAY, reader.getAggregatedPropertySeries(instName, accession, from, from, 1).getBucket());
+		assertEquals(TimeBucket.forRange(from.getTime(), to.getTime(), 10), reader.getAggregatedPropertySeries(instName, accession, from, to, 10).getBucket());
+		assertTrue(reader.getAggregatedPropertySeries(instruments.get(1).getName(), accession, from, to, 10).isEmpty());
+	}
+
+	@Test
+	public void getPropertyRollups() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		List<Run> runs = new ArrayList<>();
+		instruments.get(0).getRunIterator().forEachRemaining(runs::add);
+		// write the runs in separate transactions to update existing rollups
+		writer.writeRuns(runs.subList(0, runs.size() / 2));
+		writer.writeRuns(runs.subList(runs.size() / 2, runs.size()));
+
+		String instName = instruments.get(0).getName();
+		String accession = runs.get(0).getValueIterator().next().getDefiningProperty().getAccession();
+		IMonDBReader reader = new IMonDBReader(emf);
+		PropertySeries series = reader.getPropertySeries(instName, accession, null, null);
+
+		Map<TimeBucket, PropertyRollupSeries> rollups = new EnumMap<>(TimeBucket.class);
+		for(TimeBucket period : EnumSet.of(TimeBucket.DAY, TimeBucket.WEEK)) {
+			// roll up the numerical values per period
+			SortedMap<Long, List<Integer>> expected = new TreeMap<>();
+			for(int i = 0; i < series.size(); i++) {
+				if(!Double.isNaN(series.getMean()[i])) {
+					expected.computeIfAbsent(period.truncate(series.getTimes()[i]), k -> new ArrayList<>()).add(i);
+				}
+			}
+
+			PropertyRollupSeries rollup = reader.getPropertyRollups(instName, accession, period, null, null);
+			assertEquals(period, rollup.getPeriod());
+			assertEquals(expected.size(), rollup.size());
+			int i = 0;
+			for(Map.Entry<Long, List<Integer>> entry : expected.entrySet()) {
+				assertEquals(entry.getKey().longValue(), rollup.getTimes()[i]);
+				assertEquals(entry.getValue().size(), rollup.getCount()[i]);
+				double min = Double.POSITIVE_INFINITY;
+				double max = Double.NEGATIVE_INFINITY;
+				double sum = 0;
+				double sumOfSquares = 0;
+				for(int index : entry.getValue()) {
+					min = Math.min(min, series.getMin()[index]);
+					max = Math.max(max, series.getMax()[index]);
+					sum += series.getMean()[index];
+					sumOfSquares += series.getMean()[index] * series.getMean()[index];
+				}
+				assertEquals(min, rollup.getMin()[i], 0.0001);
+				assertEquals(max, rollup.getMax()[i], 0.0001);
+				assertEquals(sum, rollup.getSum()[i], 0.0001);
+				assertEquals(sumOfSquares, rollup.getSumOfSquares()[i], 0.0001);
+				i++;
+			}
+			rollups.put(period, rollup);
+		}
+
+		// the rebuilt rollups are identical
+		writer.rebuildRollups();
+		for(Map.Entry<TimeBucket, PropertyRollupSeries> entry : rollups.entrySet()) {
+			PropertyRollupSeries rebuilt = reader.getPropertyRollups(instName, accession, entry.getKey(), null, null);
+			assertArrayEquals(entry.getValue().getTimes(), rebuilt.getTimes());
+			assertArrayEquals(entry.getValue().getCount(), rebuilt.getCount());
+			assertArrayEquals(entry.getValue().getMin(), rebuilt.getMin(), 0.0001);
+			assertArrayEquals(entry.getValue().getSum(), rebuilt.getSum(), 0.0001);
+			assertArrayEquals(entry.getValue().getMedian(), rebuilt.getMedian(), 0.0001);
+		}
+
+		// restrict the time range
+		Timestamp from = new Timestamp(series.getTimes()[series.size() - 1]);
+		assertEquals(1, reader.getPropertyRollups(instName, accession, TimeBucket.DAY, from, null).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void getPropertyRollups_invalidPeriod() {
+		IMonDBReader reader = new IMonDBReader(emf);
+		reader.getPropertyRollups(instruments.get(0).getName(), "accession", TimeBucket.MONTH, null, null);
+	}
+
+	@Test
+	public void getLatestValues() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		List<Run> runs = new ArrayList<>();
+		instruments.get(0).getRunIterator().forEachRemaining(runs::add);
+		runs.sort(Comparator.comparing(Run::getSampleDate));
+
+		// write the most recent run first, the older runs don't affect the snapshot
+		Run latest = runs.get(runs.size() - 1);
+		writer.writeRun(latest);
+		writer.writeRuns(runs.subList(0, runs.size() - 1));
+
+		IMonDBReader reader = new IMonDBReader(emf);
+		assertEquals(latest.getSampleDate(), reader.getLatestRunDates().get(instruments.get(0).getName()));
+		assertFalse(reader.getLatestRunDates().containsKey(instruments.get(1).getName()));
+
+		Map<String, LatestValue> latestValues = reader.getLatestValues(instruments.get(0).getName());
+		for(Run run : runs) {
+			for(Iterator<Value> it = run.getValueIterator(); it.hasNext(); ) {
+				Value value = it.next();
+				LatestValue latestValue = latestValues.get(value.getDefiningProperty().getAccession());
+				assertNotNull(latestValue);
+				assertFalse(latestValue.getSampleDate().before(run.getSampleDate()));
+			}
+		}
+		for(Iterator<Value> it = latest.getValueIterator(); it.hasNext(); ) {
+			Value value = it.next();
+			LatestValue latestValue = latestValues.get(value.getDefiningProperty().getAccession());
+			assertEquals(latest.getName(), latestValue.getRunName());
+			assertEquals(latest.getSampleDate(), latestValue.getSampleDate());
+			assertEquals(value.getFirstValue(), latestValue.getFirstValue());
+			assertEquals(value.getN(), latestValue.getN());
+			assertEquals(value.getMedian(), latestValue.getMedian());
+			assertEquals(value.getSd(), latestValue.getSd());
+		}
+
+		assertTrue(reader.getLatestValues(instruments.get(1).getName()).isEmpty());
+	}
+
+	@Test
+	public void getLatestValues_identicalSampleDate() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		IMonDBReader reader = new IMonDBReader(emf);
+		Instrument instrument = reader.getInstrument(instruments.get(0).getName(), false, false);
+		Property property = new Property("property", "test", "accession", cvImon, true);
+
+		// of runs with the same sample date the run that was stored last (with the highest id) is retained
+		Timestamp sampleDate = new Timestamp((new Date().getTime() / 1000 + 100) * 1000);
+		Run first = new Run("first", "path", sampleDate, instrument);
+		new ValueBuilder().setFirstValue("first").setDefiningProperty(property).setOriginatingRun(first).createValue();
+		Run second = new Run("second", "path", sampleDate, instrument);
+		new ValueBuilder().setFirstValue("second").setDefiningProperty(property).setOriginatingRun(second).createValue();
+		writer.writeRun(first);
+		writer.writeRun(second);
+
+		assertEquals("second", reader.getLatestValues(instrument.getName()).get("accession").getRunName());
+		assertEquals("second", reader.getLatestValues(instrument.getName()).get("accession").getFirstValue());
+
+		// the same applies within a batch
+		Timestamp laterDate = new Timestamp(sampleDate.getTime() + 1000);
+		Run third = new Run("third", "path", laterDate, instrument);
+		new ValueBuilder().setFirstValue("third").setDefiningProperty(property).setOriginatingRun(third).createValue();
+		Run fourth = new Run("fourth", "path", laterDate, instrument);
+		new ValueBuilder().setFirstValue("fourth").setDefiningProperty(property).setOriginatingRun(fourth).createValue();
+		writer.writeRuns(Arrays.asList(third, fourth));
+
+		assertEquals("fourth", reader.getLatestValues(instrument.getName()).get("accession").getRunName());
+		assertEquals(laterDate, reader.getLatestRunDates().get(instrument.getName()));
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void iMonDBSchemaManager_null() {
+		new IMonDBSchemaManager(null);
+	}
+
+	@Test
+	public void schemaManager_upToDate() {
+		IMonDBSchemaManager schemaManager = new IMonDBSchemaManager(emf);
+		assertEquals(schemaManager.getLatestVersion(), schemaManager.getCurrentVersion());
+		assertEquals(0, schemaManager.migrate());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void iMonDBPartitionManager_null() {
+		new IMonDBPartitionManager(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void partitionByYear_invalidRange() {
+		new IMonDBPartitionManager(emf).partitionByYear(2015, 2014);
+	}
+
+	@Test
+	public void timeBucket_forRange() {
+		long day = 24L * 60 * 60 * 1000;
+		assertEquals(TimeBucket.DAY, TimeBucket.forRange(0, 30 * day, 100));
+		assertEquals(TimeBucket.WEEK, TimeBucket.forRange(0, 365 * day, 100));
+		assertEquals(TimeBucket.MONTH, TimeBucket.forRange(0, 5 * 365 * day, 100));
+		assertEquals(TimeBucket.MONTH, TimeBucket.forRange(0, 50 * 365 * day, 100));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void getAggregatedPropertySeries_invalidRange() {
+		IMonDBReader reader = new IMonDBReader(emf);
+		reader.getAggregatedPropertySeries("instrument", "accession", new Timestamp(1000), new Timestamp(0), 10);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void getAggregatedPropertySeries_invalidTargetPoints() {
+		IMonDBReader reader = new IMonDBReader(emf);
+		reader.getAggregatedPropertySeries("instrument", "accession", new Timestamp(0), new Timestamp(1000), 0);
+	}
+
+	@Test
+	public void getRuns() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		List<Run> runs = new ArrayList<>();
+		instruments.get(0).getRunIterator().forEachRemaining(runs::add);
+		writer.writeRuns(runs);
+		runs.sort(Comparator.comparing(Run::getSampleDate));
+
+		IMonDBReader reader = new IMonDBReader(emf);
+		List<Run> paged = new ArrayList<>();
+		PageKey key = null;
+		do {
+			Page<Run> page = reader.getRuns(instruments.get(0).getName(), key, 3);
+			assertTrue(page.getItems().size() <= 3);
+			paged.addAll(page.getItems());
+			key = page.getNextKey();
+		} while(key != null);
+
+		assertEquals(runs.size(), paged.size());
+		for(int i = 0; i < runs.size(); i++) {
+			assertEquals(runs.get(i).getName(), paged.get(i).getName());
+			assertEquals(instruments.get(0).getName(), paged.get(i).getInstrument().getName());
+		}
+
+		Page<Run> empty = reader.getRuns(instruments.get(1).getName(), null, 3);
+		assertTrue(empty.getItems().isEmpty());
+		assertFalse(empty.hasNext());
+	}
+
+	@Test
+	public void getValues() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		List<Run> runs = new ArrayList<>();
+		instruments.get(0).getRunIterator().forEachRemaining(runs::add);
+		writer.writeRuns(runs);
+
+		// expected values in chronological order
+		Property property = runs.get(0).getValueIterator().next().getDefiningProperty();
+		SortedMap<Timestamp, Value> expected = new TreeMap<>();
+		for(Run run : runs) {
+			Value value = run.getValue(property);
+			if(value != null) {
+				expected.put(run.getSampleDate(), value);
+			}
+		}
+
+		IMonDBReader reader = new IMonDBReader(emf);
+		List<Value> paged = new ArrayList<>();
+		PageKey key = null;
+		do {
+			Page<Value> page = reader.getValues(instruments.get(0).getName(), property.getAccession(), key, 2);
+			paged.addAll(page.getItems());
+			key = page.getNextKey();
+		} while(key != null);
+
+		assertEquals(expected.size(), paged.size());
+		int i = 0;
+		for(Map.Entry<Timestamp, Value> entry : expected.entrySet()) {
+			assertEquals(entry.getKey(), paged.get(i).getOriginatingRun().getSampleDate());
+			assertEquals(entry.getKey(), paged.get(i).getSampleDate());
+			assertEquals(property.getAccession(), paged.get(i).getDefiningProperty().getAccession());
+			assertEquals(entry.getValue().getMean(), paged.get(i).getMean());
+			i++;
+		}
+	}
+
+	@Test
+	public void getValues_index() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		List<Run> runs = new ArrayList<>();
+		instruments.get(0).getRunIterator().forEachRemaining(runs::add);
+		writer.writeRuns(runs);
+
+		// the keyset pages of the values should be read from the (property, sample date, id) index, without sorting all values of the property
+		EntityManager em = emf.createEntityManager();
+		try {
+			@SuppressWarnings("unchecked")
+			List<Object[]> plan = em.createNativeQuery("EXPLAIN SELECT val.id FROM imon_value val " +
+					"WHERE val.l_imon_property_id = 1 AND (val.sampledate > '2015-01-01' OR (val.sampledate = '2015-01-01' AND val.id > 1)) " +
+					"ORDER BY val.sampledate, val.id LIMIT 3").getResultList();
+			assertEquals(1, plan.size());
+			List<Object> columns = Arrays.asList(plan.get(0));
+			assertTrue(columns.contains("imon_value_property_date"));
+			Object extra = columns.get(columns.size() - 1);
+			assertTrue(extra == null || !extra.toString().contains("filesort"));
+		} finally {
+			em.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void getRuns_invalidPageSize() {
+		new IMonDBReader(emf).getRuns(instruments.get(0).getName(), null, 0);
+	}
+
+	@Test
+	public void streamFromCustomQuery() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		List<Run> runs = new ArrayList<>();
+		instruments.get(0).getRunIterator().forEachRemaining(runs::add);
+		writer.writeRuns(runs);
+
+		int expected = 0;
+		for(Run run : runs) {
+			for(Iterator<Value> it = run.getValueIterator(); it.hasNext(); it.next()) {
+				expected++;
+			}
+		}
+
+		IMonDBReader reader = new IMonDBReader(emf);
+		Map<String, String> parameters = new HashMap<>();
+		parameters.put("name", instruments.get(0).getName());
+		String from = "FROM Value val WHERE val.originatingRun.instrument.name = :name";
+
+		// small fetch size to clear the persistence context multiple times
+		try(Stream<Value> values = reader.streamFromCustomQuery("SELECT val " + from, Value.class, parameters, 7)) {
+			assertEquals(expected, values.filter(value -> value.getDefiningProperty() != null).count());
+		}
+
+		try(Stream<Object[]> values = reader.streamFromCustomQuery("SELECT val.id, val.mean " + from, Object[].class, parameters)) {
+			assertEquals(expected, values.filter(value -> value.length == 2).count());
+		}
+
+		try(Stream<Value> values = reader.streamFromCustomQuery(null, Value.class, parameters)) {
+			assertEquals(0, values.count());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void streamFromCustomQuery_invalidFetchSize() {
+		new IMonDBReader(emf).streamFromCustomQuery("SELECT val FROM Value val", Value.class, null, 0);
+	}
+
 	@Test
 	public void getProperty_null() {
 		IMonDBWriter writer = new IMonDBWriter(emf);
@@ -636,6 +1675,56 @@ public class IMonDBWriterReaderIT {
 		}
 	}
 
+	@Test
+	public void getProperty_range() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		writer.writeInstrument(instruments.get(0));
+		List<Run> runs = new ArrayList<>();
+		instruments.get(0).getRunIterator().forEachRemaining(runs::add);
+		writer.writeRuns(runs);
+
+		// property with the most values
+		Map<Property, Integer> counts = new HashMap<>();
+		for(Run run : runs) {
+			for(Iterator<Value> it = run.getValueIterator(); it.hasNext(); ) {
+				counts.merge(it.next().getDefiningProperty(), 1, Integer::sum);
+			}
+		}
+		Property oldProp = Collections.max(counts.entrySet(), Map.Entry.comparingByValue()).getKey();
+
+		// the number of queries doesn't depend on the number of values
+		Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+		statistics.setStatisticsEnabled(true);
+		statistics.clear();
+
+		IMonDBReader reader = new IMonDBReader(emf);
+		Property property = reader.getProperty(oldProp.getAccession());
+		assertTrue(statistics.getPrepareStatementCount() <= 5);
+		int count = 0;
+		for(Iterator<Value> it = property.getValueIterator(); it.hasNext(); ) {
+			Value value = it.next();
+			assertEquals(instruments.get(0).getName(), value.getOriginatingRun().getInstrument().getName());
+			assertTrue(value.getOriginatingRun().getMetadataIterator().hasNext());
+			count++;
+		}
+		assertEquals(counts.get(oldProp).intValue(), count);
+
+		// restrict the time range to a single run
+		Run run = property.getValueIterator().next().getOriginatingRun();
+		Property rangeProperty = reader.getProperty(oldProp.getAccession(), run.getSampleDate(), run.getSampleDate());
+		Iterator<Value> it = rangeProperty.getValueIterator();
+		assertTrue(it.hasNext());
+		assertEquals(run, it.next().getOriginatingRun());
+		assertFalse(it.hasNext());
+
+		// no values in the time range
+		Property emptyProperty = reader.getProperty(oldProp.getAccession(), new Timestamp(0), new Timestamp(1000));
+		assertEquals(oldProp, emptyProperty);
+		assertFalse(emptyProperty.getValueIterator().hasNext());
+
+		assertNull(reader.getProperty("non-existing", null, null));
+	}
+
 	@Test
 	public void getFromCustomQuery_nullQuery() {
 		IMonDBWriter writer = new IMonDBWriter(emf);
@@ -705,4 +1794,51 @@ public class IMonDBWriterReaderIT {
 		assertFalse(instrument.getEventIterator().hasNext());
 		assertFalse(instrument.getPropertyIterator().hasNext());
 	}
+
+	@Test
+	public void getFromNamedQuery() {
+		IMonDBWriter writer = new IMonDBWriter(emf);
+		for(Instrument instrument : instruments) {
+			writer.writeInstrument(instrument);
+		}
+		Run run = instruments.get(0).getRunIterator().next();
+		writer.writeRun(run);
+
+		IMonDBReader reader = new IMonDBReader(emf);
+		assertEquals(Long.valueOf(1), reader.getFromNamedQuery(IMonDBQuery.INSTRUMENT_COUNT_BY_NAME, ImmutableMap.of("name", instruments.get(0).getName())).get(0));
+		assertEquals(Long.valueOf(0), reader.getFromNamedQuery(IMonDBQuery.INSTRUMENT_COUNT_BY_NAME, ImmutableMap.of("name", "non-existing")).get(0));
+		assertEquals(Long.valueOf(1), reader.getFromNamedQuery(IMonDBQuery.RUN_COUNT_BY_NAME,
+				ImmutableMap.of("runName", run.getName(), "instName", instruments.get(0).getName())).get(0));
+		assertEquals(Collections.singletonList(run.getName()), reader.getFromNamedQuery(IMonDBQuery.RUN_NAMES_BY_INSTRUMENT, ImmutableMap.of("instName", instruments.get(0).getName())));
+		assertTrue(reader.getFromNamedQuery(IMonDBQuery.RUN_NAMES_BY_INSTRUMENT, ImmutableMap.of("instName", instruments.get(1).getName())).isEmpty());
+
+		List<String> names = reader.getFromNamedQuery(IMonDBQuery.INSTRUMENT_NAMES, null);
+		assertEquals(instruments.size(), names.size());
+		assertEquals(instruments.get(0).getName(), names.get(0));
+		assertEquals(1, reader.getFromNamedQuery(IMonDBQuery.INSTRUMENT_NAMES, null, 1, 1000).size());
+		// sub-second timeouts are rounded up to a second instead of disabling the timeout
+		assertEquals(1, reader.getFromNamedQuery(IMonDBQuery.INSTRUMENT_NAMES, null, 1, 1).size());
+
+		List<Metadata> metadata = reader.getFromNamedQuery(IMonDBQuery.METADATA_BY_INSTRUMENT, ImmutableMap.of("instName", instruments.get(0).getName()));
+		int expected = 0;
+		for(Iterator<Metadata> it = run.getMetadataIterator(); it.hasNext(); it.next()) {
+			expected++;
+		}
+		assertEquals(expected, metadata.size());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void getFromNamedQuery_null() {
+		new IMonDBReader(emf).getFromNamedQuery(null, null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void getFromNamedQuery_missingParameter() {
+		new IMonDBReader(emf).getFromNamedQuery(IMonDBQuery.RUN_COUNT_BY_NAME, ImmutableMap.of("runName", "run"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void getFromNamedQuery_invalidParameterType() {
+		new IMonDBReader(emf).getFromNamedQuery(IMonDBQuery.INSTRUMENT_COUNT_BY_NAME, ImmutableMap.of("name", 1L));
+	}
 }
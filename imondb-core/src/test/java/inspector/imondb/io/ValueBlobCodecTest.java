@@ -0,0 +1,146 @@
+package inspector.imondb.io;
+
+/*
+ * #%L
+ * iMonDB Core
+ * %%
+ * Copyright (C) 2014 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import inspector.imondb.io.ValueBlobCodec.ValueColumns;
+import inspector.imondb.model.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ValueBlobCodecTest {
+
+    private final CV cv = new CV("testCv", "Dummy CV to run the unit tests", "https://bitbucket.org/proteinspector/imondb/", "1");
+    private final Instrument instrument = new Instrument("name", InstrumentModel.UNKNOWN_MODEL, cv);
+    private final Run run = new Run("run", "path/to/run/", new Timestamp(1420070400000L), instrument);
+
+    private List<Property> properties;
+    private List<Value> values;
+
+    @Before
+    public void setUp() {
+        properties = new ArrayList<>();
+        values = new ArrayList<>();
+        // property id's in a different order than the values
+        long[] ids = { 42, 7, 1000000, 8 };
+        for(int i = 0; i < ids.length; i++) {
+            Property property = new Property("property " + i, "test", "accession" + i, cv, i % 2 == 0);
+            property.setId(ids[i]);
+            properties.add(property);
+        }
+
+        values.add(new Value("1.5", 10, 8, 0.5, 3.25, 1.75, 1.5, 0.8, 1.0, 2.0, properties.get(0), run));
+        values.add(new Value("text éè", 3, 2, null, null, null, null, null, null, null, properties.get(1), run));
+        values.add(new Value(null, null, null, -Double.MAX_VALUE, Double.MAX_VALUE, Double.NaN, Double.MIN_VALUE, 0.0, -0.0, Double.POSITIVE_INFINITY, properties.get(2), run));
+        values.add(new Value("0", 1, 1, 0.0, 0.0, 0.0, 0.0, null, 0.0, 0.0, properties.get(3), run));
+    }
+
+    @Test
+    public void roundTrip() {
+        ValueColumns columns = ValueBlobCodec.decode(ValueBlobCodec.encode(values));
+        assertEquals(values.size(), columns.size());
+
+        // the columns are ordered by property id
+        for(int i = 1; i < columns.size(); i++) {
+            assertTrue(columns.getPropertyId(i - 1) < columns.getPropertyId(i));
+        }
+
+        Run decodedRun = new Run("decoded run", "path/to/run/", run.getSampleDate(), instrument);
+        for(Value value : values) {
+            int index = columns.indexOf(value.getDefiningProperty().getId());
+            assertTrue(index >= 0);
+
+            Value decoded = columns.toValue(index, value.getDefiningProperty(), decodedRun);
+            assertEquals(value.getFirstValue(), decoded.getFirstValue());
+            assertEquals(value.getN(), decoded.getN());
+            assertEquals(value.getNDiffValues(), decoded.getNDiffValues());
+            assertEquals(value.getMin(), decoded.getMin());
+            assertEquals(value.getMax(), decoded.getMax());
+            assertEquals(value.getMean(), decoded.getMean());
+            assertEquals(value.getMedian(), decoded.getMedian());
+            assertEquals(value.getSd(), decoded.getSd());
+            assertEquals(value.getQ1(), decoded.getQ1());
+            assertEquals(value.getQ3(), decoded.getQ3());
+            assertEquals(decoded, decodedRun.getValue(value.getDefiningProperty()));
+        }
+
+        assertTrue(columns.indexOf(9) < 0);
+    }
+
+    @Test
+    public void roundTrip_empty() {
+        ValueColumns columns = ValueBlobCodec.decode(ValueBlobCodec.encode(Collections.<Value>emptyList()));
+        assertEquals(0, columns.size());
+        assertTrue(columns.indexOf(42) < 0);
+    }
+
+    @Test
+    public void addTo() {
+        ValueColumns columns = ValueBlobCodec.decode(ValueBlobCodec.encode(values));
+
+        PropertySeries series = new PropertySeries();
+        columns.addTo(series, 1000L, columns.indexOf(42));
+        columns.addTo(series, 2000L, columns.indexOf(7));
+        series.trim();
+
+        assertArrayEquals(new long[] { 1000L, 2000L }, series.getTimes());
+        assertEquals(0.5, series.getMin()[0], 0);
+        assertEquals(1.0, series.getQ1()[0], 0);
+        assertEquals(1.5, series.getMedian()[0], 0);
+        assertEquals(2.0, series.getQ3()[0], 0);
+        assertEquals(3.25, series.getMax()[0], 0);
+        assertEquals(1.75, series.getMean()[0], 0);
+        assertEquals(0.8, series.getSd()[0], 0);
+        assertTrue(Double.isNaN(series.getMedian()[1]));
+    }
+
+    @Test
+    public void encode_compressed() {
+        List<Value> many = new ArrayList<>();
+        for(int i = 0; i < 500; i++) {
+            Property property = new Property("property " + i, "test", "many" + i, cv, true);
+            property.setId(1000L + i);
+            many.add(new Value(Integer.toString(i % 10), 100, 10, 1.0, 10.0, 5.0, 5.0, 1.0, 2.5, 7.5, property, run));
+        }
+
+        byte[] blob = ValueBlobCodec.encode(many);
+        // the uncompressed columns take 500 * (8 + 2 * 4 + 7 * 8 + 3) bytes
+        assertTrue(blob.length < 500 * 75 / 4);
+        assertEquals(500, ValueBlobCodec.decode(blob).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encode_noPropertyId() {
+        Property property = new Property("no id", "test", "noId", cv, true);
+        ValueBlobCodec.encode(Collections.singletonList(new Value("1", 1, 1, 1., 1., 1., 1., 1., 1., 1., property, run)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_corrupt() {
+        ValueBlobCodec.decode(new byte[] { 1, 2, 3, 4, 5 });
+    }
+}
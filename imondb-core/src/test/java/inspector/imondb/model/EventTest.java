@@ -21,10 +21,12 @@ package inspector.imondb.model;
  */
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.sql.Timestamp;
 import java.util.Date;
@@ -95,6 +97,24 @@ public class EventTest {
         assertNull(event.getAttachmentContent());
     }
 
+    @Test
+    public void openAttachmentContent() {
+        Event event = new Event(instrument, new Timestamp(new Date().getTime()), EventType.UNDEFINED);
+        File attachment = loadResource("/attachment.jpg");
+
+        try {
+            assertNull(event.openAttachmentContent());
+
+            event.setAttachment(attachment);
+            assertTrue(event.isAttachmentContentLoaded());
+            try(InputStream in = event.openAttachmentContent()) {
+                assertArrayEquals(FileUtils.readFileToByteArray(attachment), IOUtils.toByteArray(in));
+            }
+        } catch(IOException e) {
+            fail();
+        }
+    }
+
     @Test
     public void equals_null() {
         Timestamp date = new Timestamp(new Date().getTime());
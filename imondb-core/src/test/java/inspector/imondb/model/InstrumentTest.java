@@ -27,6 +27,7 @@ import java.sql.Timestamp;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.SortedMap;
 
@@ -164,6 +165,23 @@ public class InstrumentTest {
 		assertNotNull(instrument.getRun(time));
 	}
 
+	@Test(expected=NullPointerException.class)
+	public void initializeRuns_null() {
+		instrument.initializeRuns(null);
+	}
+
+	@Test
+	public void initializeRuns() {
+		Run run = instrument.getRun(runDates.get(0));
+		instrument.initializeRuns(Collections.singletonList(run));
+
+		assertEquals(run, instrument.getRun(runDates.get(0)));
+		assertNull(instrument.getRun(runDates.get(1)));
+
+		instrument.initializeRuns(Collections.emptyList());
+		assertFalse(instrument.getRunIterator().hasNext());
+	}
+
 	@Test
 	public void getEvent_null() {
 		assertNull(instrument.getEvent(null));
@@ -2,14 +2,22 @@
 
 USE root;
 
+DROP TABLE IF EXISTS imon_latest_value;
+DROP TABLE IF EXISTS imon_latest_run;
+DROP TABLE IF EXISTS imon_value_rollup;
+DROP TABLE IF EXISTS imon_value_blob;
 DROP TABLE IF EXISTS imon_value;
 DROP TABLE IF EXISTS imon_metadata;
 DROP TABLE IF EXISTS imon_run;
 DROP TABLE IF EXISTS imon_instrument_properties;
 DROP TABLE IF EXISTS imon_property;
 DROP TABLE IF EXISTS imon_event;
+DROP TABLE IF EXISTS imon_event_attachment_chunk;
+DROP TABLE IF EXISTS imon_event_attachment;
 DROP TABLE IF EXISTS imon_instrument;
 DROP TABLE IF EXISTS imon_cv;
+DROP TABLE IF EXISTS imon_id_generator;
+DROP TABLE IF EXISTS imon_schema_version;
 
 --
 -- Table structure for table `imon_cv`
@@ -40,13 +48,36 @@ CREATE TABLE imon_instrument (
   CONSTRAINT FOREIGN KEY (l_imon_cv_id) REFERENCES imon_cv (id)
 ) DEFAULT CHARACTER SET utf8; 
 
+--
+-- Table structure for table `imon_event_attachment`
+--
+
+CREATE TABLE imon_event_attachment (
+  id bigint(20) NOT NULL AUTO_INCREMENT,
+  sha256 char(64) NOT NULL,
+  size bigint(20) NOT NULL,
+  PRIMARY KEY (id),
+  UNIQUE KEY (sha256)
+) DEFAULT CHARACTER SET utf8;
+
+--
+-- Table structure for table `imon_event_attachment_chunk`
+--
+
+CREATE TABLE imon_event_attachment_chunk (
+  l_imon_attachment_id bigint(20) NOT NULL,
+  chunk_index int(11) NOT NULL,
+  data longblob NOT NULL,
+  PRIMARY KEY (l_imon_attachment_id,chunk_index),
+  FOREIGN KEY (l_imon_attachment_id) REFERENCES imon_event_attachment (id)
+) DEFAULT CHARACTER SET utf8;
+
 --
 -- Table structure for table `imon_event`
 --
 
 CREATE TABLE imon_event (
   id bigint(20) NOT NULL AUTO_INCREMENT,
-  attachment longblob,
   attachment_name varchar(255) DEFAULT NULL,
   eventdate datetime NOT NULL,
   extra text,
@@ -54,9 +85,12 @@ CREATE TABLE imon_event (
   solution text,
   type varchar(255) NOT NULL,
   l_imon_instrument_id bigint(20) NOT NULL,
+  l_imon_attachment_id bigint(20) DEFAULT NULL,
   PRIMARY KEY (id),
   UNIQUE KEY (l_imon_instrument_id,eventdate),
-  FOREIGN KEY (l_imon_instrument_id) REFERENCES imon_instrument (id)
+  KEY (l_imon_attachment_id),
+  FOREIGN KEY (l_imon_instrument_id) REFERENCES imon_instrument (id),
+  FOREIGN KEY (l_imon_attachment_id) REFERENCES imon_event_attachment (id)
 ) DEFAULT CHARACTER SET utf8;
 
 --
@@ -101,6 +135,8 @@ CREATE TABLE imon_run (
   l_imon_instrument_id bigint(20) NOT NULL,
   PRIMARY KEY (id),
   UNIQUE KEY (l_imon_instrument_id,name),
+  KEY (l_imon_instrument_id,sampledate,id),
+  KEY (sampledate),
   FOREIGN KEY (l_imon_instrument_id) REFERENCES imon_instrument (id)
 ) DEFAULT CHARACTER SET utf8;
 
@@ -136,8 +172,122 @@ CREATE TABLE imon_value (
   sd double DEFAULT NULL,
   l_imon_property_id bigint(20) NOT NULL,
   l_imon_run_id bigint(20) NOT NULL,
+  sampledate datetime NOT NULL,
   PRIMARY KEY (id),
+  UNIQUE KEY imon_value_property_run (l_imon_property_id,l_imon_run_id),
+  KEY imon_value_series (l_imon_run_id,l_imon_property_id,sampledate,min,q1,median,q3,max,mean,sd),
+  KEY imon_value_property_date (l_imon_property_id,sampledate,id),
   FOREIGN KEY (l_imon_run_id) REFERENCES imon_run (id),
   FOREIGN KEY (l_imon_property_id) REFERENCES imon_property (id)
 ) DEFAULT CHARACTER SET utf8;
 
+
+--
+-- Table structure for table `imon_value_blob`
+--
+
+CREATE TABLE imon_value_blob (
+  l_imon_run_id bigint(20) NOT NULL,
+  value_count int(11) NOT NULL,
+  data mediumblob NOT NULL,
+  PRIMARY KEY (l_imon_run_id),
+  FOREIGN KEY (l_imon_run_id) REFERENCES imon_run (id)
+) DEFAULT CHARACTER SET utf8;
+
+
+--
+-- Table structure for table `imon_value_rollup`
+--
+
+CREATE TABLE imon_value_rollup (
+  l_imon_instrument_id bigint(20) NOT NULL,
+  l_imon_property_id bigint(20) NOT NULL,
+  period varchar(5) NOT NULL,
+  period_start datetime NOT NULL,
+  value_count bigint(20) NOT NULL,
+  min_value double DEFAULT NULL,
+  max_value double DEFAULT NULL,
+  sum_value double NOT NULL,
+  sumsq_value double NOT NULL,
+  median_sum double NOT NULL,
+  median_count bigint(20) NOT NULL,
+  PRIMARY KEY (l_imon_instrument_id,period,period_start,l_imon_property_id),
+  KEY (l_imon_property_id,l_imon_instrument_id,period,period_start),
+  FOREIGN KEY (l_imon_instrument_id) REFERENCES imon_instrument (id),
+  FOREIGN KEY (l_imon_property_id) REFERENCES imon_property (id)
+) DEFAULT CHARACTER SET utf8;
+
+
+--
+-- Table structure for table `imon_latest_run`
+--
+
+CREATE TABLE imon_latest_run (
+  l_imon_instrument_id bigint(20) NOT NULL,
+  l_imon_run_id bigint(20) NOT NULL,
+  run_name varchar(100) NOT NULL,
+  sampledate datetime NOT NULL,
+  PRIMARY KEY (l_imon_instrument_id),
+  FOREIGN KEY (l_imon_instrument_id) REFERENCES imon_instrument (id)
+) DEFAULT CHARACTER SET utf8;
+
+--
+-- Table structure for table `imon_latest_value`
+--
+
+CREATE TABLE imon_latest_value (
+  l_imon_instrument_id bigint(20) NOT NULL,
+  l_imon_property_id bigint(20) NOT NULL,
+  l_imon_run_id bigint(20) NOT NULL,
+  run_name varchar(100) NOT NULL,
+  sampledate datetime NOT NULL,
+  firstvalue varchar(200) DEFAULT NULL,
+  n int(11) DEFAULT NULL,
+  n_diffvalues int(11) DEFAULT NULL,
+  min double DEFAULT NULL,
+  q1 double DEFAULT NULL,
+  median double DEFAULT NULL,
+  q3 double DEFAULT NULL,
+  max double DEFAULT NULL,
+  mean double DEFAULT NULL,
+  sd double DEFAULT NULL,
+  PRIMARY KEY (l_imon_instrument_id,l_imon_property_id),
+  FOREIGN KEY (l_imon_instrument_id) REFERENCES imon_instrument (id),
+  FOREIGN KEY (l_imon_property_id) REFERENCES imon_property (id)
+) DEFAULT CHARACTER SET utf8;
+
+
+--
+-- Table structure for table `imon_id_generator`
+--
+
+CREATE TABLE imon_id_generator (
+  sequence_name varchar(64) NOT NULL,
+  next_val bigint(20) NOT NULL,
+  PRIMARY KEY (sequence_name)
+) DEFAULT CHARACTER SET utf8;
+
+
+--
+-- Table structure for table `imon_schema_version`
+--
+
+CREATE TABLE imon_schema_version (
+  version int(11) NOT NULL,
+  description varchar(200) NOT NULL,
+  installed_on timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (version)
+) DEFAULT CHARACTER SET utf8;
+
+INSERT INTO imon_schema_version (version, description) VALUES (1, 'initial schema');
+INSERT INTO imon_schema_version (version, description) VALUES (2, 'pooled id generators');
+INSERT INTO imon_schema_version (version, description) VALUES (3, 'event attachments');
+INSERT INTO imon_schema_version (version, description) VALUES (4, 'attachment store');
+INSERT INTO imon_schema_version (version, description) VALUES (5, 'chronological run index');
+INSERT INTO imon_schema_version (version, description) VALUES (6, 'value rollups');
+INSERT INTO imon_schema_version (version, description) VALUES (7, 'latest value snapshot');
+INSERT INTO imon_schema_version (version, description) VALUES (8, 'value indexes');
+INSERT INTO imon_schema_version (version, description) VALUES (9, 'value sample dates');
+INSERT INTO imon_schema_version (version, description) VALUES (10, 'value blobs');
+INSERT INTO imon_schema_version (version, description) VALUES (11, 'value property dates');
+INSERT INTO imon_schema_version (version, description) VALUES (12, 'latest value runs');
@@ -20,6 +20,7 @@ package inspector.imondb.viewer.controller;
  * #L%
  */
 
+import inspector.imondb.io.InstrumentFetchPlan;
 import inspector.imondb.model.Event;
 import inspector.imondb.model.EventType;
 import inspector.imondb.model.Instrument;
@@ -52,7 +53,7 @@ public class EventController {
         if(DatabaseConnection.getConnection().isActive()) {
             // add new events to the application
             Instrument instrument = DatabaseConnection.getConnection().getReader().getInstrument(
-                    instrumentsViewModel.getActiveInstrument(), true, false);
+                    instrumentsViewModel.getActiveInstrument(), InstrumentFetchPlan.withEventsNoAttachments());
             for(Iterator<Event> it = instrument.getEventIterator(); it.hasNext(); ) {
                 addEvent(it.next());
             }
@@ -60,15 +61,14 @@ public class EventController {
     }
 
     public void createEvent(String instrumentName, Timestamp date, EventType type, String problem, String solution,
-                            String extra, String attachmentName, byte[] attachmentContent) {
+                            String extra, File attachmentFile) {
         if(DatabaseConnection.getConnection().isActive()) {
             // create the new event
             Instrument instrument = DatabaseConnection.getConnection().getReader().getInstrument(
-                    instrumentName, true, false);
+                    instrumentName, InstrumentFetchPlan.withEventsNoAttachments());
             Event event = new Event(instrument, date, type, problem, solution, extra);
-            if(attachmentName != null && attachmentContent != null) {
-                event.setAttachmentName(attachmentName);
-                event.setAttachmentContent(attachmentContent);
+            if(attachmentFile != null) {
+                event.setAttachment(attachmentFile);
             }
 
             // write the event to the database
@@ -84,7 +84,7 @@ public class EventController {
     }
 
     public void editEvent(Event event, String problem, String solution, String extra,
-                          String attachmentName, byte[] attachmentContent) {
+                          String attachmentName, File attachmentFile) {
         if(DatabaseConnection.getConnection().isActive()) {
             boolean isChanged = false;
 
@@ -100,12 +100,9 @@ public class EventController {
                 event.setExtra(extra);
                 isChanged = true;
             }
-            if(event.getAttachmentName() != null && event.getAttachmentContent() != null ?
-                    !event.getAttachmentName().equals(attachmentName) ||
-                            !Arrays.equals(event.getAttachmentContent(), attachmentContent) :
-                    attachmentName != null || attachmentContent != null) {
-                event.setAttachmentName(attachmentName);
-                event.setAttachmentContent(attachmentContent);
+            // the attachment is changed if a new file is added or if the previous attachment is removed
+            if(attachmentFile != null || attachmentName == null && event.getAttachmentName() != null) {
+                event.setAttachment(attachmentFile);
                 isChanged = true;
             }
 
@@ -134,10 +131,12 @@ public class EventController {
         if(DatabaseConnection.getConnection().isActive()) {
             // remove from the database
             List<Event> events = eventsViewModel.getAll();
+            List<Timestamp> dates = new ArrayList<>(events.size());
             for(Event event : events) {
-                DatabaseConnection.getConnection().getWriter().removeEvent(
-                        instrumentsViewModel.getActiveInstrument(), event.getDate());
+                dates.add(event.getDate());
             }
+            DatabaseConnection.getConnection().getWriter().removeEvents(
+                    instrumentsViewModel.getActiveInstrument(), dates);
 
             clearEvents();
         }
@@ -146,19 +145,18 @@ public class EventController {
     public void importEvents(File file) {
         if(DatabaseConnection.getConnection().isActive()) {
             Instrument instrument = DatabaseConnection.getConnection().getReader().getInstrument(
-                    instrumentsViewModel.getActiveInstrument(), true, false);
+                    instrumentsViewModel.getActiveInstrument(), InstrumentFetchPlan.withEventsNoAttachments());
 
             // read the events from the file
             List<Event> events = null;
             try {
                 events = new EventsCsvImporter(file, instrument).read();
-                for(Event event : events) {
-                    // write the event to the database
-                    DatabaseConnection.getConnection().getWriter().writeOrUpdateEvent(event);
 
-                    // add the event to the application
-                    eventsViewModel.add(event);
-                }
+                // write the events to the database
+                DatabaseConnection.getConnection().getWriter().writeOrUpdateEvents(events);
+
+                // add the events to the application
+                events.forEach(eventsViewModel::add);
             } catch(IOException e) {
                 throw new IllegalStateException(e);
             }
@@ -169,7 +167,7 @@ public class EventController {
         if(DatabaseConnection.getConnection().isActive()) {
             // get all events in chronological order
             Instrument instrument = DatabaseConnection.getConnection().getReader().getInstrument(
-                    instrumentsViewModel.getActiveInstrument(), true, false);
+                    instrumentsViewModel.getActiveInstrument(), InstrumentFetchPlan.withEventsNoAttachments());
             List<Event> events = new ArrayList<>();
             for(Iterator<Event> it = instrument.getEventIterator(); it.hasNext(); ) {
                 events.add(it.next());
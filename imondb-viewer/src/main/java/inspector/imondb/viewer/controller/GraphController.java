@@ -20,6 +20,8 @@ package inspector.imondb.viewer.controller;
  * #L%
  */
 
+import inspector.imondb.io.IMonDBReader;
+import inspector.imondb.io.PropertySeries;
 import inspector.imondb.model.EventType;
 import inspector.imondb.viewer.model.DatabaseConnection;
 import inspector.imondb.viewer.view.gui.GraphPanel;
@@ -35,7 +37,6 @@ import org.jfree.ui.Layer;
 
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 public class GraphController {
@@ -57,11 +58,17 @@ public class GraphController {
         this.metadataViewModel = metadataViewModel;
     }
 
-    public List<Object[]> queryValues() {
+    public PropertySeries queryValues() {
         if(DatabaseConnection.getConnection().isActive() && propertiesViewModel.hasValidProperty()) {
-            // load all values for the property and instrument
+            if(metadataViewModel.getMetadataFilter() == null) {
+                // load the summary statistics of all values for the property and instrument
+                return DatabaseConnection.getConnection().getReader().getPropertySeries(
+                        instrumentsViewModel.getActiveInstrument(), propertiesViewModel.getActivePropertyAccession(), null, null);
+            }
+
+            // load the summary statistics of the values for the property and instrument that match the metadata filter
             StringBuilder querySelectFrom = new StringBuilder(
-                    "SELECT val, val.originatingRun.sampleDate FROM Value val");
+                    IMonDBReader.PROPERTY_SERIES_SELECT + " FROM Value val");
             StringBuilder queryWhere = new StringBuilder(
                     "WHERE val.originatingRun.instrument.name = :instName AND " +
                             "val.definingProperty.accession = :propAccession");
@@ -70,14 +77,12 @@ public class GraphController {
             parameters.put("propAccession", propertiesViewModel.getActivePropertyAccession());
 
             // add metadata filters
-            if(metadataViewModel.getMetadataFilter() != null) {
-                metadataViewModel.getMetadataFilter().toQuery(querySelectFrom, queryWhere, parameters);
-            }
+            metadataViewModel.getMetadataFilter().toQuery(querySelectFrom, queryWhere, parameters);
 
             String query = querySelectFrom.toString() + " " + queryWhere.toString() +
                     " ORDER BY val.originatingRun.sampleDate";
 
-            return DatabaseConnection.getConnection().getReader().getFromCustomQuery(query, Object[].class, parameters);
+            return DatabaseConnection.getConnection().getReader().getPropertySeriesFromCustomQuery(query, parameters);
         } else {
             return null;
         }
@@ -21,6 +21,8 @@ package inspector.imondb.viewer.controller;
  */
 
 import com.google.common.collect.ImmutableMap;
+import inspector.imondb.io.IMonDBQuery;
+import inspector.imondb.io.InstrumentFetchPlan;
 import inspector.imondb.model.Instrument;
 import inspector.imondb.model.Metadata;
 import inspector.imondb.model.Property;
@@ -76,8 +78,8 @@ public class SearchSettingsController {
 
         if(DatabaseConnection.getConnection().isActive()) {
             // retrieve all instrument names from the database
-            List<String> instruments = DatabaseConnection.getConnection().getReader().getFromCustomQuery(
-                    "SELECT inst.name FROM Instrument inst ORDER BY inst.name", String.class);
+            List<String> instruments = DatabaseConnection.getConnection().getReader().getFromNamedQuery(
+                    IMonDBQuery.INSTRUMENT_NAMES, null);
             instruments.forEach(instrumentsViewModel::add);
         }
     }
@@ -93,7 +95,7 @@ public class SearchSettingsController {
         if(DatabaseConnection.getConnection().isActive()) {
             // load the given instrument and all its properties
             Instrument instrument = DatabaseConnection.getConnection().getReader().getInstrument(
-                    instrumentName, false, true);
+                    instrumentName, InstrumentFetchPlan.withPropertiesOnly());
 
             // alphabetically sort all (numeric) properties
             List<Property> properties = new ArrayList<>();
@@ -132,9 +134,8 @@ public class SearchSettingsController {
     public void setMetadataOptionsForActiveInstrument() {
         // add new metadata for the active instrument
         if(DatabaseConnection.getConnection().isActive()) {
-            List<Metadata> metadata = DatabaseConnection.getConnection().getReader().getFromCustomQuery(
-                    "SELECT md FROM Metadata md WHERE md.run.instrument.name = :instName", Metadata.class,
-                    ImmutableMap.of("instName", instrumentsViewModel.getActiveInstrument()));
+            List<Metadata> metadata = DatabaseConnection.getConnection().getReader().getFromNamedQuery(
+                    IMonDBQuery.METADATA_BY_INSTRUMENT, ImmutableMap.of("instName", instrumentsViewModel.getActiveInstrument()));
             metadata.forEach(metadataViewModel::addMetadataOption);
         }
     }
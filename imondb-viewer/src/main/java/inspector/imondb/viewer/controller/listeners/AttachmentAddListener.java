@@ -21,13 +21,11 @@ package inspector.imondb.viewer.controller.listeners;
  */
 
 import inspector.imondb.viewer.view.gui.EventDialog;
-import org.apache.commons.io.FileUtils;
 
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
-import java.io.IOException;
 
 public class AttachmentAddListener implements ActionListener {
 
@@ -45,22 +43,17 @@ public class AttachmentAddListener implements ActionListener {
         if(returnVal == JFileChooser.APPROVE_OPTION) {
             File attachment = fileChooser.getSelectedFile();
 
-            Thread attachmentReader = new Thread() {
-                public void run() {
-                    try {
-                        // file name
-                        eventDialog.setAttachmentName(attachment.getName());
-                        // file content
-                        eventDialog.setAttachmentContent(FileUtils.readFileToByteArray(attachment));
-                        // set the icon according to the file type
-                        eventDialog.setAttachmentIconFileType();
-                    } catch(IOException ex) {
-                        JOptionPane.showMessageDialog(eventDialog.getPanel(), ex.getMessage(),
-                                "Error", JOptionPane.ERROR_MESSAGE);
-                    }
-                }
-            };
-            attachmentReader.start();
+            if(attachment.isFile() && attachment.canRead()) {
+                // file name
+                eventDialog.setAttachmentName(attachment.getName());
+                // file (the content is only read when the event is stored)
+                eventDialog.setAttachmentFile(attachment);
+                // set the icon according to the file type
+                eventDialog.setAttachmentIconFileType();
+            } else {
+                JOptionPane.showMessageDialog(eventDialog.getPanel(), "Could not read file " + attachment.getName(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
         }
     }
 }
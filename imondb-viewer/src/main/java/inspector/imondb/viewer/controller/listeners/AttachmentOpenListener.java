@@ -21,7 +21,6 @@ package inspector.imondb.viewer.controller.listeners;
  */
 
 import inspector.imondb.viewer.view.gui.EventDialog;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 
 import javax.swing.*;
@@ -42,8 +41,7 @@ public class AttachmentOpenListener extends MouseAdapter {
     @Override
     public void mouseClicked(MouseEvent e) {
         if(e.getClickCount() == 2) {
-            byte[] attachmentContent = eventDialog.getAttachmentContent();
-            if(eventDialog.getAttachmentName() != null && attachmentContent != null) {
+            if(eventDialog.hasAttachment()) {
                 Thread opener = new Thread() {
                     public void run() {
                         try {
@@ -52,7 +50,7 @@ public class AttachmentOpenListener extends MouseAdapter {
                             String suffix = "." + FilenameUtils.getExtension(eventDialog.getAttachmentName());
                             File temp = File.createTempFile(prefix, suffix);
                             temp.deleteOnExit();
-                            FileUtils.writeByteArrayToFile(temp, attachmentContent);
+                            eventDialog.saveAttachment(temp);
 
                             // open the attachment in the default application
                             Desktop.getDesktop().open(temp);
@@ -35,9 +35,9 @@ public class AttachmentRemoveListener implements ActionListener {
 
     @Override
     public void actionPerformed(ActionEvent e) {
-        if(eventDialog.getAttachmentName() != null || eventDialog.getAttachmentContent() != null) {
+        if(eventDialog.getAttachmentName() != null || eventDialog.getAttachmentFile() != null) {
             eventDialog.setAttachmentName("No attachment added");
-            eventDialog.setAttachmentContent(null);
+            eventDialog.setAttachmentFile(null);
             eventDialog.setAttachmentIconFileType();    // no-file icon
         }
     }
@@ -21,7 +21,6 @@ package inspector.imondb.viewer.controller.listeners;
  */
 
 import inspector.imondb.viewer.view.gui.EventDialog;
-import org.apache.commons.io.FileUtils;
 
 import javax.swing.*;
 import java.awt.event.ActionEvent;
@@ -39,8 +38,7 @@ public class AttachmentSaveListener implements ActionListener {
 
     @Override
     public void actionPerformed(ActionEvent e) {
-        byte[] attachmentContent = eventDialog.getAttachmentContent();
-        if(eventDialog.getAttachmentName() != null && attachmentContent != null) {
+        if(eventDialog.hasAttachment()) {
             // show save dialog
             JFileChooser fileChooser = new JFileChooser();
             fileChooser.setSelectedFile(new File(eventDialog.getAttachmentName()));
@@ -51,7 +49,7 @@ public class AttachmentSaveListener implements ActionListener {
                 Thread attachmentSaver = new Thread() {
                     public void run() {
                         try {
-                            FileUtils.writeByteArrayToFile(fileChooser.getSelectedFile(), attachmentContent);
+                            eventDialog.saveAttachment(fileChooser.getSelectedFile());
                         } catch(IOException ex) {
                             JOptionPane.showMessageDialog(eventDialog.getPanel(), "Could not save the attachment",
                                     "Error", JOptionPane.ERROR_MESSAGE);
@@ -60,8 +60,8 @@ public class EventCreateListener implements ActionListener {
                 try {
                     eventController.createEvent(dialog.getInstrumentName(), dialog.getDate(), dialog.getType(),
                             dialog.getProblem(), dialog.getSolution(), dialog.getExtra(),
-                            dialog.getAttachmentName(), dialog.getAttachmentContent());
-                } catch(NullPointerException ex) {
+                            dialog.getAttachmentFile());
+                } catch(IllegalArgumentException | NullPointerException ex) {
                     JOptionPane.showMessageDialog(viewerFrame.getFrame(), ex.getMessage(),
                             "Error", JOptionPane.ERROR_MESSAGE);
                 }
@@ -58,7 +58,7 @@ public class EventEditListener implements ActionListener {
             if(option == JOptionPane.OK_OPTION) {
                 try {
                     eventController.editEvent(event, dialog.getProblem(), dialog.getSolution(), dialog.getExtra(),
-                            dialog.getAttachmentName(), dialog.getAttachmentContent());
+                            dialog.getAttachmentName(), dialog.getAttachmentFile());
                 } catch(IllegalArgumentException | NullPointerException ex) {
                     JOptionPane.showMessageDialog(viewerFrame.getFrame(), ex.getMessage(),
                             "Error", JOptionPane.ERROR_MESSAGE);
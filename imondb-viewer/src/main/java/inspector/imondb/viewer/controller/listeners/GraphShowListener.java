@@ -20,6 +20,7 @@ package inspector.imondb.viewer.controller.listeners;
  * #L%
  */
 
+import inspector.imondb.io.PropertySeries;
 import inspector.imondb.viewer.controller.GraphController;
 import inspector.imondb.viewer.controller.SearchSettingsController;
 import inspector.imondb.viewer.model.DatabaseConnection;
@@ -30,7 +31,6 @@ import org.jfree.chart.JFreeChart;
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -70,7 +70,7 @@ public class GraphShowListener implements ActionListener, Observer {
     private void showGraph() {
         Thread graphThread = new Thread() {
             public void run() {
-                List<Object[]> values = graphController.queryValues();
+                PropertySeries values = graphController.queryValues();
 
                 if(values != null) {
                     if(values.isEmpty()) {
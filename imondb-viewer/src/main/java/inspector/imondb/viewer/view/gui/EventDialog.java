@@ -26,12 +26,15 @@ import inspector.imondb.viewer.controller.listeners.AttachmentAddListener;
 import inspector.imondb.viewer.controller.listeners.AttachmentOpenListener;
 import inspector.imondb.viewer.controller.listeners.AttachmentRemoveListener;
 import inspector.imondb.viewer.controller.listeners.AttachmentSaveListener;
+import inspector.imondb.viewer.model.DatabaseConnection;
+import org.apache.commons.io.FileUtils;
 import org.apache.tika.Tika;
 import org.jdatepicker.impl.JDatePanelImpl;
 import org.jdatepicker.impl.UtilDateModel;
 
 import javax.swing.*;
 import java.awt.*;
+import java.io.*;
 import java.sql.Timestamp;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -60,7 +63,8 @@ public class EventDialog {
 
     // attachment information
     private JLabel labelAttachmentName;
-    private byte[] attachmentContent;
+    private File attachmentFile;
+    private boolean attachmentStored;
 
     public EventDialog(String instrument) {
         panel = new JPanel(new BorderLayout());
@@ -191,9 +195,10 @@ public class EventDialog {
         textProblem.setText(event.getProblem());
         textSolution.setText(event.getSolution());
         textExtra.setText(event.getExtra());
-        if(event.getAttachmentName() != null && event.getAttachmentContent() != null) {
+        // the attachment content is only retrieved from the database when it is needed
+        if(event.getAttachmentName() != null && event.getStoredAttachment() != null) {
             labelAttachmentName.setText(event.getAttachmentName());
-            attachmentContent = event.getAttachmentContent();
+            attachmentStored = true;
             setAttachmentIconFileType();
         }
     }
@@ -277,17 +282,44 @@ public class EventDialog {
         labelAttachmentName.setText(name);
     }
 
-    public byte[] getAttachmentContent() {
-        return attachmentContent != null ? attachmentContent.clone() : null;
+    public File getAttachmentFile() {
+        return attachmentFile;
     }
 
-    public void setAttachmentContent(byte[] attachment) {
-        attachmentContent = attachment != null ? attachment.clone() : null;
+    public void setAttachmentFile(File attachment) {
+        attachmentFile = attachment;
+        attachmentStored = false;
+    }
+
+    public boolean hasAttachment() {
+        return getAttachmentName() != null && (attachmentFile != null || attachmentStored);
+    }
+
+    public void saveAttachment(File destination) throws IOException {
+        if(attachmentFile != null) {
+            FileUtils.copyFile(attachmentFile, destination);
+        } else if(attachmentStored && DatabaseConnection.getConnection().isActive()) {
+            // stream the attachment content from the database
+            try(OutputStream out = new BufferedOutputStream(new FileOutputStream(destination))) {
+                if(!DatabaseConnection.getConnection().getReader().readEventAttachmentContent(getInstrumentName(), getDate(), out)) {
+                    throw new IOException("Could not retrieve the attachment");
+                }
+            }
+        } else {
+            throw new IOException("No attachment available");
+        }
     }
 
     public void setAttachmentIconFileType() {
-        if(attachmentContent != null) {
-            String type = new Tika().detect(attachmentContent);
+        if(hasAttachment()) {
+            // detect the file type based on the file name if the attachment content is stored in the database
+            Tika tika = new Tika();
+            String type;
+            try {
+                type = attachmentFile != null ? tika.detect(attachmentFile) : tika.detect(getAttachmentName());
+            } catch(IOException e) {
+                type = tika.detect(getAttachmentName());
+            }
 
             if(type.contains("audio")) {
                 labelAttachmentName.setIcon(iconFileTypes.get("audio"));
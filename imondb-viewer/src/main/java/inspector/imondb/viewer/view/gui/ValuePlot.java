@@ -20,7 +20,7 @@ package inspector.imondb.viewer.view.gui;
  * #L%
  */
 
-import inspector.imondb.model.Value;
+import inspector.imondb.io.PropertySeries;
 import org.jfree.chart.axis.DateAxis;
 import org.jfree.chart.axis.NumberAxis;
 import org.jfree.chart.plot.XYPlot;
@@ -32,28 +32,26 @@ import org.jfree.data.xy.XYSeriesCollection;
 
 import java.awt.*;
 import java.awt.geom.Ellipse2D;
-import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 
 public class ValuePlot {
 
     private XYPlot plot;
 
-    public ValuePlot(java.util.List<Object[]> values) {
+    public ValuePlot(PropertySeries values) {
         // add data
-        XYSeries medianSeries = new XYSeries("Median");
-        XYSeries q1Series = new XYSeries("Q1");
-        XYSeries q3Series = new XYSeries("Q3");
-        XYSeries minSeries = new XYSeries("Min");
-        XYSeries maxSeries = new XYSeries("Max");
-        for(Object[] objects : values) {
-            Value value = (Value) objects[0];
-            Timestamp time = (Timestamp) objects[1];
-            medianSeries.add(time.getTime(), value.getMedian());
-            q1Series.add(time.getTime(), value.getQ1());
-            q3Series.add(time.getTime(), value.getQ3());
-            minSeries.add(time.getTime(), value.getMin());
-            maxSeries.add(time.getTime(), value.getMax());
+        XYSeries medianSeries = new XYSeries("Median", false, true);
+        XYSeries q1Series = new XYSeries("Q1", false, true);
+        XYSeries q3Series = new XYSeries("Q3", false, true);
+        XYSeries minSeries = new XYSeries("Min", false, true);
+        XYSeries maxSeries = new XYSeries("Max", false, true);
+        long[] times = values.getTimes();
+        for(int i = 0; i < values.size(); i++) {
+            medianSeries.add(times[i], values.getMedian()[i], false);
+            q1Series.add(times[i], values.getQ1()[i], false);
+            q3Series.add(times[i], values.getQ3()[i], false);
+            minSeries.add(times[i], values.getMin()[i], false);
+            maxSeries.add(times[i], values.getMax()[i], false);
         }
 
         XYSeriesCollection medianCollection = new XYSeriesCollection(medianSeries);